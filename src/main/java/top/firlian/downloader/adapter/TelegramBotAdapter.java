@@ -1,5 +1,7 @@
 package top.firlian.downloader.adapter;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -9,10 +11,13 @@ import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import top.firlian.downloader.application.DownloadService;
 import top.firlian.downloader.domain.error.ContentUnavailableException;
 import top.firlian.downloader.domain.error.DownloadException;
@@ -21,8 +26,10 @@ import top.firlian.downloader.domain.model.MediaContent;
 import top.firlian.downloader.domain.model.MediaType;
 
 import java.io.File;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Адаптер Telegram бота для загрузки медиа контента.
@@ -39,6 +46,15 @@ public class TelegramBotAdapter extends TelegramLongPollingBot {
     /** Максимальный размер файла для прямой отправки в Telegram (в байтах) */
     private final long sizeLimitBytes;
 
+    /**
+     * URL плейлистов и каруселей по токенам из callback данных клавиатуры выбора.
+     * Telegram ограничивает callback данные 64 байтами, поэтому URL в них не передается.
+     */
+    private final Cache<String, String> selectionUrls = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofDays(1))
+            .build();
+
     /**
      * Конструктор адаптера Telegram бота.
      *
@@ -123,7 +139,7 @@ public class TelegramBotAdapter extends TelegramLongPollingBot {
         // Запускаем асинхронную загрузку с обработкой результата
         downloadService.processUrl(url, chatId)
                 .subscribe(
-                        content -> handleDownloadedContent(chatId, content),
+                        content -> handleDownloadedContent(chatId, url, null, content, true),
                         error -> handleDownloadError(chatId, error)
                 );
     }
@@ -133,25 +149,36 @@ public class TelegramBotAdapter extends TelegramLongPollingBot {
      * Используется для выбора конкретного элемента из плейлиста/карусели.
      *
      * @param chatId ID чата
-     * @param callbackData данные callback в формате "item:URL:INDEX"
+     * @param callbackData данные callback в формате "item:TOKEN:INDEX"
      */
     private void handleCallbackQuery(Long chatId, String callbackData) {
         if (callbackData.startsWith("item:")) {
-            String[] parts = callbackData.split(":");
-            if (parts.length == 3) {
-                String url = parts[1];
-                int itemIndex = Integer.parseInt(parts[2]);
-                
-                log.info("Пользователь выбрал элемент {} для URL: {}", itemIndex, url);
-                sendTextMessage(chatId, "Загружаю выбранный элемент...");
-                
-                // Загружаем выбранный элемент
-                downloadService.processUrlWithIndex(url, itemIndex, chatId)
-                        .subscribe(
-                                content -> handleDownloadedContent(chatId, content),
-                                error -> handleDownloadError(chatId, error)
-                        );
+            // Индекс отделяется последним двоеточием
+            int separator = callbackData.lastIndexOf(':');
+            String token = callbackData.substring("item:".length(), Math.max(separator, "item:".length()));
+            int itemIndex;
+            try {
+                itemIndex = Integer.parseInt(callbackData.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                log.warn("Некорректные данные callback: {}", callbackData);
+                return;
+            }
+
+            String url = selectionUrls.getIfPresent(token);
+            if (url == null) {
+                sendTextMessage(chatId, "Список элементов устарел. Отправьте ссылку заново.");
+                return;
             }
+
+            log.info("Пользователь выбрал элемент {} для URL: {}", itemIndex, url);
+            sendTextMessage(chatId, "Загружаю выбранный элемент...");
+
+            // Загружаем выбранный элемент
+            downloadService.processUrlWithIndex(url, itemIndex, chatId)
+                    .subscribe(
+                            content -> handleDownloadedContent(chatId, url, itemIndex, content, true),
+                            error -> handleDownloadError(chatId, error)
+                    );
         }
     }
 
@@ -159,18 +186,23 @@ public class TelegramBotAdapter extends TelegramLongPollingBot {
      * Обрабатывает успешно загруженный контент.
      * В зависимости от типа контента и его размера:
      * - Отправляет inline клавиатуру для выбора элемента (если несколько элементов)
+     * - Отправляет файл по file_id (если он уже загружался в Telegram)
      * - Отправляет путь к файлу (если файл слишком большой)
      * - Отправляет файл напрямую (в остальных случаях)
      *
      * @param chatId ID чата для отправки результата
+     * @param url URL контента
+     * @param itemIndex индекс элемента (null для контента по URL целиком)
      * @param content загруженный медиа контент
+     * @param allowReload разрешена ли повторная попытка с обновленным контентом
      */
-    private void handleDownloadedContent(Long chatId, MediaContent content) {
+    private void handleDownloadedContent(Long chatId, String url, Integer itemIndex,
+                                         MediaContent content, boolean allowReload) {
         try {
             if (content.getItems() != null && !content.getItems().isEmpty()) {
                 // Несколько элементов - показываем клавиатуру выбора
                 sendMediaSelectionKeyboard(chatId, content);
-            } else if (content.getSizeBytes() > sizeLimitBytes) {
+            } else if (content.getTelegramFileId() == null && content.getSizeBytes() > sizeLimitBytes) {
                 // Файл слишком большой - отправляем только путь
                 sendTextMessage(chatId, 
                         "Файл слишком большой для прямой отправки (" + 
@@ -178,9 +210,8 @@ public class TelegramBotAdapter extends TelegramLongPollingBot {
                         "Путь к файлу: " + content.getFilePath());
                 log.info("Файл слишком большой, отправлен путь: {}", content.getFilePath());
             } else {
-                // Отправляем файл напрямую
-                sendMediaFile(chatId, content);
-                log.info("Файл отправлен в чат: {}, путь: {}", chatId, content.getFilePath());
+                // Отправляем файл напрямую или по file_id
+                sendMediaFile(chatId, url, itemIndex, content, allowReload);
             }
         } catch (Exception e) {
             log.error("Ошибка обработки загруженного контента", e);
@@ -214,6 +245,8 @@ public class TelegramBotAdapter extends TelegramLongPollingBot {
     /**
      * Отправляет inline клавиатуру для выбора элемента из плейлиста/карусели.
      * Отображает до 10 первых элементов с их названиями.
+     * Упакованный список из кэша метаданных декодирует только эти элементы.
+     * Кнопки ссылаются на URL по короткому токену, чтобы уложиться в лимит callback данных.
      *
      * @param chatId ID чата
      * @param content медиа контент с несколькими элементами
@@ -225,13 +258,15 @@ public class TelegramBotAdapter extends TelegramLongPollingBot {
 
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+        String token = Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), Character.MAX_RADIX);
+        selectionUrls.put(token, content.getUrl());
 
         // Создаем кнопки для каждого элемента (максимум 10)
         for (int i = 0; i < Math.min(content.getItems().size(), 10); i++) {
             var item = content.getItems().get(i);
             InlineKeyboardButton button = new InlineKeyboardButton();
             button.setText((i + 1) + ". " + item.getTitle());
-            button.setCallbackData("item:" + content.getUrl() + ":" + i);
+            button.setCallbackData("item:" + token + ":" + i);
             
             List<InlineKeyboardButton> row = new ArrayList<>();
             row.add(button);
@@ -254,44 +289,130 @@ public class TelegramBotAdapter extends TelegramLongPollingBot {
      * - SendVideo для видео
      * - SendPhoto для фото
      * - SendDocument для остальных типов
+     * Файл, уже загруженный в Telegram, отправляется по file_id без повторной загрузки.
+     * После первой отправки file_id сохраняется в кэше. Если Telegram отклонил
+     * file_id или локальный файл уже удален, контент запрашивается заново.
      *
      * @param chatId ID чата
+     * @param url URL контента
+     * @param itemIndex индекс элемента (null для контента по URL целиком)
      * @param content медиа контент для отправки
+     * @param allowReload разрешена ли повторная попытка с обновленным контентом
      */
-    private void sendMediaFile(Long chatId, MediaContent content) {
-        File file = new File(content.getFilePath());
-        InputFile inputFile = new InputFile(file);
+    private void sendMediaFile(Long chatId, String url, Integer itemIndex, MediaContent content, boolean allowReload) {
+        String fileId = content.getTelegramFileId();
+        if (fileId == null && (content.getFilePath() == null || !new File(content.getFilePath()).isFile())) {
+            // Файл удален после отправки в другой чат - в кэше уже должен быть file_id
+            if (allowReload) {
+                reloadAndSend(chatId, url, itemIndex, content);
+            } else {
+                sendTextMessage(chatId, "Ошибка при отправке файла.");
+            }
+            return;
+        }
+        InputFile inputFile = fileId != null ? new InputFile(fileId) : new InputFile(new File(content.getFilePath()));
 
         try {
-            switch (content.getType()) {
+            Message sent = switch (content.getType()) {
                 case VIDEO -> {
                     SendVideo sendVideo = new SendVideo();
                     sendVideo.setChatId(chatId.toString());
                     sendVideo.setVideo(inputFile);
                     sendVideo.setCaption(content.getTitle());
-                    execute(sendVideo);
+                    yield execute(sendVideo);
                 }
                 case PHOTO -> {
                     SendPhoto sendPhoto = new SendPhoto();
                     sendPhoto.setChatId(chatId.toString());
                     sendPhoto.setPhoto(inputFile);
                     sendPhoto.setCaption(content.getTitle());
-                    execute(sendPhoto);
+                    yield execute(sendPhoto);
                 }
                 default -> {
                     SendDocument sendDocument = new SendDocument();
                     sendDocument.setChatId(chatId.toString());
                     sendDocument.setDocument(inputFile);
                     sendDocument.setCaption(content.getTitle());
-                    execute(sendDocument);
+                    yield execute(sendDocument);
                 }
+            };
+            if (fileId == null) {
+                rememberSentFile(url, itemIndex, sent);
+                log.info("Файл отправлен в чат: {}, путь: {}", chatId, content.getFilePath());
+            } else {
+                log.info("Файл отправлен в чат: {} по file_id", chatId);
             }
         } catch (TelegramApiException e) {
+            if (allowReload && fileId != null && isRejectedFileId(e)) {
+                log.warn("Telegram отклонил file_id для URL: {}", url);
+                reloadAndSend(chatId, url, itemIndex, content);
+                return;
+            }
             log.error("Ошибка отправки медиа файла", e);
             sendTextMessage(chatId, "Ошибка при отправке файла. Путь: " + content.getFilePath());
         }
     }
 
+    /**
+     * Запрашивает контент заново и отправляет его без дальнейших повторов.
+     *
+     * @param chatId ID чата
+     * @param url URL контента
+     * @param itemIndex индекс элемента (null для контента по URL целиком)
+     * @param failed контент, который не удалось отправить
+     */
+    private void reloadAndSend(Long chatId, String url, Integer itemIndex, MediaContent failed) {
+        downloadService.reloadContent(url, itemIndex, chatId, failed)
+                .subscribe(
+                        content -> handleDownloadedContent(chatId, url, itemIndex, content, false),
+                        error -> handleDownloadError(chatId, error)
+                );
+    }
+
+    /**
+     * Сохраняет file_id файла из ответа Telegram на отправку.
+     * Telegram может вернуть видео как анимацию или документ, поэтому
+     * проверяются все типы вложений.
+     *
+     * @param url URL контента
+     * @param itemIndex индекс элемента (null для контента по URL целиком)
+     * @param sent отправленное сообщение
+     */
+    private void rememberSentFile(String url, Integer itemIndex, Message sent) {
+        if (sent == null) {
+            return;
+        }
+        if (sent.hasVideo()) {
+            downloadService.rememberTelegramFile(url, itemIndex,
+                    sent.getVideo().getFileId(), sent.getVideo().getFileUniqueId());
+        } else if (sent.hasAnimation()) {
+            downloadService.rememberTelegramFile(url, itemIndex,
+                    sent.getAnimation().getFileId(), sent.getAnimation().getFileUniqueId());
+        } else if (sent.hasDocument()) {
+            downloadService.rememberTelegramFile(url, itemIndex,
+                    sent.getDocument().getFileId(), sent.getDocument().getFileUniqueId());
+        } else if (sent.hasAudio()) {
+            downloadService.rememberTelegramFile(url, itemIndex,
+                    sent.getAudio().getFileId(), sent.getAudio().getFileUniqueId());
+        } else if (sent.hasPhoto()) {
+            // Последний размер фото - самый крупный
+            List<PhotoSize> sizes = sent.getPhoto();
+            PhotoSize photo = sizes.get(sizes.size() - 1);
+            downloadService.rememberTelegramFile(url, itemIndex, photo.getFileId(), photo.getFileUniqueId());
+        }
+    }
+
+    /**
+     * Проверяет, отклонил ли Telegram запрос из-за недействительного file_id.
+     *
+     * @param e исключение Telegram API
+     * @return true для ответа 400 Bad Request
+     */
+    private boolean isRejectedFileId(TelegramApiException e) {
+        return e instanceof TelegramApiRequestException requestException
+                && Integer.valueOf(400).equals(requestException.getErrorCode());
+    }
+
     /**
      * Отправляет текстовое сообщение в чат.
      *
@@ -0,0 +1,82 @@
+package top.firlian.downloader.adapter.out;
+
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
+import top.firlian.downloader.domain.error.UnsupportedProviderException;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaItem;
+import top.firlian.downloader.domain.model.Provider;
+import top.firlian.downloader.domain.port.MediaDownloader;
+import top.firlian.downloader.domain.port.ProviderDetector;
+import top.firlian.downloader.util.CircuitBreaker;
+import top.firlian.downloader.util.CircuitBreakerRegistry;
+
+import java.util.function.Supplier;
+
+/**
+ * Загрузчик с автоматическим выключателем для каждого провайдера.
+ * Если сайт провайдера изменился и загрузки с него массово завершаются ошибкой,
+ * выключатель провайдера размыкается и новые загрузки сразу отклоняются, не занимая
+ * обработчики планировщика до таймаута. Загрузки с остальных провайдеров не затрагиваются.
+ * Недоступность отдельного контента (приватное или удаленное видео) ошибкой провайдера
+ * не считается.
+ */
+@RequiredArgsConstructor
+public class CircuitBreakingMediaDownloader implements MediaDownloader {
+
+    private final MediaDownloader delegate;
+    private final ProviderDetector providerDetector;
+    private final CircuitBreakerRegistry circuitBreakers;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<MediaContent> download(String url) {
+        return execute(url, () -> delegate.download(url));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<MediaContent> downloadSpecificItem(String url, int itemIndex) {
+        return execute(url, () -> delegate.downloadSpecificItem(url, itemIndex));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<MediaContent> downloadSpecificItem(String url, MediaItem item) {
+        return execute(url, () -> delegate.downloadSpecificItem(url, item));
+    }
+
+    /**
+     * Возвращает загрузчик, вызовы которого защищает выключатель.
+     *
+     * @return исходный загрузчик
+     */
+    public MediaDownloader delegate() {
+        return delegate;
+    }
+
+    private Mono<MediaContent> execute(String url, Supplier<Mono<MediaContent>> call) {
+        Provider provider = providerDetector.detectProvider(url);
+        CircuitBreaker breaker = circuitBreakers.get("provider " + provider.name().toLowerCase());
+        return breaker.execute(call, CircuitBreakingMediaDownloader::isProviderFailure,
+                () -> new DownloadRejectedException("Загрузки с этого сайта временно недоступны. Попробуйте позже"));
+    }
+
+    /**
+     * Проверяет, указывает ли ошибка на неисправность провайдера или сервиса загрузки,
+     * а не на недоступность конкретного контента или отказ без выполнения.
+     */
+    private static boolean isProviderFailure(Throwable error) {
+        return !(error instanceof ContentUnavailableException
+                || error instanceof DownloadRejectedException
+                || error instanceof UnsupportedProviderException);
+    }
+}
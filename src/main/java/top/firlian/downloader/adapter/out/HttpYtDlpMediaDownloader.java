@@ -1,14 +1,23 @@
 package top.firlian.downloader.adapter.out;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import top.firlian.downloader.domain.error.ContentUnavailableException;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
 import top.firlian.downloader.domain.error.DownloadException;
 import top.firlian.downloader.domain.model.MediaContent;
 import top.firlian.downloader.domain.model.MediaItem;
@@ -16,35 +25,66 @@ import top.firlian.downloader.domain.model.MediaType;
 import top.firlian.downloader.domain.port.MediaDownloader;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Реализация HTTP клиента для сервиса yt-dlp.
  * Взаимодействует с контейнеризованным сервисом yt-dlp через REST API.
+ * Все запросы идут через общий клиент с пулом соединений
+ * (см. {@link top.firlian.downloader.config.WebClientConfig}) к наименее
+ * загруженному экземпляру сервиса (см. {@link YtDlpServicePool}).
+ * Загрузка выполняется заданием сервиса: запрос создания задания сразу
+ * возвращает его идентификатор, а ход и результат загрузки приходят потоком
+ * server-sent events. При обрыве потока клиент переподключается и продолжает
+ * с последнего полученного события, не теряя загрузку.
+ * В режиме передачи {@code stream} готовый файл скачивается из сервиса в локальную
+ * директорию загрузок, поэтому общий с сервисом том не нужен; прерванная передача
+ * продолжается запросом с заголовком Range.
+ * Работа с файлами выполняется в планировщике блокирующих операций, а не в потоках
+ * событий клиента.
  */
 @Slf4j
 @Component("httpYtDlpMediaDownloader")
 @RequiredArgsConstructor
 public class HttpYtDlpMediaDownloader implements MediaDownloader {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final WebClient.Builder webClientBuilder;
+    private static final ParameterizedTypeReference<ServerSentEvent<JobStatus>> JOB_EVENT =
+            new ParameterizedTypeReference<>() {};
 
-    @Value("${downloader.ytdlp.service-url:http://localhost:8090}")
-    private String serviceUrl;
+    /** Сколько передача файла может не получать данных, прежде чем будет продолжена заново */
+    private static final Duration TRANSFER_IDLE_TIMEOUT = Duration.ofSeconds(60);
+
+    private final YtDlpServicePool servicePool;
+
+    /** Планировщик для блокирующей работы с файлами */
+    private final Scheduler blockingScheduler;
 
     @Value("${downloader.download-dir:./downloads}")
     private String downloadDir;
 
-    private WebClient getWebClient() {
-        return webClientBuilder
-                .baseUrl(serviceUrl)
-                .build();
-    }
+    /** Максимальное время выполнения задания загрузки */
+    @Value("${downloader.ytdlp.http.job-timeout-minutes:30}")
+    private long jobTimeoutMinutes;
+
+    /** Сколько раз подряд переподключаться к потоку событий задания и к передаче файла */
+    @Value("${downloader.ytdlp.http.max-reconnects:5}")
+    private int maxReconnects;
+
+    /** Способ получения файла: shared-volume (общий том с сервисом) или stream (передача по HTTP) */
+    @Value("${downloader.ytdlp.http.transfer:shared-volume}")
+    private String transferMode;
 
     /**
      * {@inheritDoc}
@@ -59,22 +99,18 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
                             return handleMultipleItems(url, metadata);
                         } else {
                             // Загрузка одиночного элемента
-                            return downloadSingleItem(url, metadata, 0);
+                            return downloadSingleItem(url, null,
+                                    metadata.has("title") ? metadata.get("title").asText() : null,
+                                    determineMediaType(metadata));
                         }
                     } catch (Exception e) {
                         log.error("Ошибка обработки загрузки для URL: {}", url, e);
-                        if (e.getMessage().contains("Private") || e.getMessage().contains("unavailable")) {
-                            return Mono.error(new ContentUnavailableException("Контент недоступен", e));
-                        }
-                        return Mono.error(new DownloadException("Ошибка загрузки. Попробуйте позже", e));
+                        return Mono.error(YtDlpErrorClassifier.toDomainError(e));
                     }
                 })
                 .onErrorResume(e -> {
                     log.error("Ошибка загрузки с URL: {}", url, e);
-                    if (e instanceof ContentUnavailableException) {
-                        return Mono.error(e);
-                    }
-                    return Mono.error(new DownloadException("Ошибка загрузки. Попробуйте позже", e));
+                    return Mono.error(YtDlpErrorClassifier.toDomainError(e));
                 });
     }
 
@@ -83,36 +119,41 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
      */
     @Override
     public Mono<MediaContent> downloadSpecificItem(String url, int itemIndex) {
-        return getMetadata(url)
-                .flatMap(metadata -> downloadSingleItem(url, metadata, itemIndex))
+        // Сервис возвращает сведения о загруженном элементе, метаданные плейлиста не нужны
+        return downloadSingleItem(url, itemIndex, null, null)
                 .onErrorResume(e -> {
                     log.error("Ошибка загрузки элемента {} с URL: {}", itemIndex, url, e);
-                    return Mono.error(new DownloadException("Ошибка загрузки. Попробуйте позже", e));
+                    return Mono.error(YtDlpErrorClassifier.toDomainError(e));
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<MediaContent> downloadSpecificItem(String url, MediaItem item) {
+        return downloadSingleItem(url, item.getIndex(), item.getTitle(), item.getType())
+                .onErrorResume(e -> {
+                    log.error("Ошибка загрузки элемента {} с URL: {}", item.getIndex(), url, e);
+                    return Mono.error(YtDlpErrorClassifier.toDomainError(e));
                 });
     }
 
     /**
-     * Получает метаданные из сервиса yt-dlp
+     * Получает метаданные из сервиса yt-dlp.
+     * Ответ разбирается в дерево JSON кодеком клиента, без промежуточной строки
      */
     private Mono<JsonNode> getMetadata(String url) {
         Map<String, String> request = new HashMap<>();
         request.put("url", url);
 
-        return getWebClient()
-                .post()
-                .uri("/metadata")
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(String.class)
-                .timeout(Duration.ofSeconds(30))
-                .flatMap(response -> {
-                    try {
-                        return Mono.just(objectMapper.readTree(response));
-                    } catch (Exception e) {
-                        log.error("Ошибка парсинга JSON метаданных", e);
-                        return Mono.error(new DownloadException("Не удалось извлечь метаданные"));
-                    }
-                })
+        return servicePool.execute(client -> client
+                        .post()
+                        .uri("/metadata")
+                        .bodyValue(request)
+                        .retrieve()
+                        .bodyToMono(JsonNode.class)
+                        .timeout(Duration.ofSeconds(30)))
                 .onErrorResume(e -> {
                     log.error("Ошибка получения метаданных для URL: {}", url, e);
                     return Mono.error(new DownloadException("Не удалось извлечь метаданные", e));
@@ -120,11 +161,15 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
     }
 
     /**
-     * Обрабатывает несколько элементов (плейлист/карусель)
+     * Обрабатывает несколько элементов (плейлист/карусель).
+     * Возвращает список элементов без загрузки - элемент загружается после выбора
      */
     private Mono<MediaContent> handleMultipleItems(String url, JsonNode metadata) {
         List<MediaItem> items = new ArrayList<>();
         JsonNode entries = metadata.get("entries");
+        if (entries.isEmpty()) {
+            return Mono.error(new DownloadException("Элементы не найдены"));
+        }
 
         // Создаем список всех доступных элементов
         for (int i = 0; i < entries.size(); i++) {
@@ -138,35 +183,41 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
                     .build());
         }
 
-        // Загружаем первый элемент по умолчанию
-        return downloadSingleItem(url, entries.get(0), 0)
-                .map(firstItem -> MediaContent.builder()
-                        .url(url)
-                        .type(firstItem.getType())
-                        .title(metadata.has("title") ? metadata.get("title").asText() : "Media")
-                        .sizeBytes(firstItem.getSizeBytes())
-                        .filePath(firstItem.getFilePath())
-                        .items(items)
-                        .build());
+        return Mono.just(MediaContent.builder()
+                .url(url)
+                .type(items.get(0).getType())
+                .title(metadata.has("title") ? metadata.get("title").asText() : "Media")
+                .sizeBytes(0)
+                .filePath(null)
+                .items(items)
+                .build());
     }
 
     /**
-     * Загружает одиночный элемент через HTTP сервис
+     * Загружает одиночный элемент через HTTP сервис.
+     * Название и тип берутся из ответа сервиса, а если их там нет - из известных сведений
      */
-    private Mono<MediaContent> downloadSingleItem(String url, JsonNode metadata, int itemIndex) {
+    private Mono<MediaContent> downloadSingleItem(String url, Integer itemIndex,
+                                                  String knownTitle, MediaType knownType) {
         Map<String, Object> request = new HashMap<>();
         request.put("url", url);
-        if (itemIndex > 0) {
+        if (itemIndex != null) {
             request.put("itemIndex", itemIndex);
         }
 
-        return getWebClient()
-                .post()
-                .uri("/download")
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(DownloadResponse.class)
-                .timeout(Duration.ofMinutes(5))
+        // Задание целиком, включая поток событий и передачу файла, выполняется на одном экземпляре
+        return servicePool.execute(client -> client
+                        .post()
+                        .uri("/jobs")
+                        .bodyValue(request)
+                        .retrieve()
+                        .bodyToMono(JobStatus.class)
+                        .timeout(Duration.ofSeconds(30))
+                        .flatMap(job -> awaitJob(client, job.getId())
+                                .flatMap(response -> "stream".equalsIgnoreCase(transferMode)
+                                        ? fetchFile(client, job.getId(), response)
+                                        : Mono.just(response))))
+                .publishOn(blockingScheduler)
                 .map(response -> {
                     // Проверяем существование файла
                     File file = new File(response.getFilePath());
@@ -177,10 +228,15 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
                     log.info("Файл успешно загружен через HTTP сервис: {}, размер: {} байт",
                             response.getFilePath(), response.getSizeBytes());
 
+                    MediaType type = response.getExt() != null
+                            ? determineMediaType(response.getVcodec(), response.getAcodec(), response.getExt())
+                            : knownType;
+                    String title = response.getTitle() != null ? response.getTitle() : knownTitle;
+
                     return MediaContent.builder()
                             .url(url)
-                            .type(determineMediaType(metadata))
-                            .title(metadata.has("title") ? metadata.get("title").asText() : "Media")
+                            .type(type != null ? type : MediaType.DOCUMENT)
+                            .title(title != null ? title : "Media")
                             .sizeBytes(response.getSizeBytes())
                             .filePath(response.getFilePath())
                             .items(null)
@@ -192,21 +248,231 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
                 });
     }
 
+    /**
+     * Следит за заданием по потоку событий до его завершения.
+     * При обрыве потока переподключается с заголовком Last-Event-ID и получает
+     * только более новые состояния. Неизвестное сервису задание и ошибки
+     * запроса не повторяются.
+     *
+     * @param client клиент экземпляра, выполняющего задание
+     * @param jobId идентификатор задания
+     * @return Mono с результатом загрузки
+     */
+    private Mono<DownloadResponse> awaitJob(WebClient client, String jobId) {
+        AtomicReference<String> lastEventId = new AtomicReference<>();
+        return Flux.defer(() -> client
+                        .get()
+                        .uri("/jobs/{id}/events", jobId)
+                        .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                        .headers(headers -> {
+                            if (lastEventId.get() != null) {
+                                headers.set("Last-Event-ID", lastEventId.get());
+                            }
+                        })
+                        .retrieve()
+                        .bodyToFlux(JOB_EVENT))
+                .doOnNext(event -> {
+                    if (event.id() != null) {
+                        lastEventId.set(event.id());
+                    }
+                })
+                .mapNotNull(ServerSentEvent::data)
+                .doOnNext(job -> log.debug("Задание {}: {}, загружено {} из {} байт",
+                        jobId, job.getStatus(), job.getDownloadedBytes(), job.getTotalBytes()))
+                .filter(JobStatus::isFinished)
+                .next()
+                .switchIfEmpty(Mono.error(() -> new DownloadException("Поток событий задания закрыт: " + jobId)))
+                .retryWhen(Retry.backoff(maxReconnects, Duration.ofSeconds(1))
+                        .filter(error -> !(error instanceof WebClientResponseException response
+                                && response.getStatusCode().is4xxClientError()))
+                        .doBeforeRetry(signal -> log.warn("Переподключение к заданию {} после события {}: {}",
+                                jobId, lastEventId.get(), signal.failure().getMessage()))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .timeout(Duration.ofMinutes(jobTimeoutMinutes))
+                .flatMap(job -> job.getResult() != null
+                        ? Mono.just(job.getResult())
+                        : Mono.error(new DownloadException(job.getError() != null
+                                ? job.getError()
+                                : "Задание завершилось без результата: " + jobId)));
+    }
+
+    /**
+     * Скачивает файл завершенного задания в локальную директорию загрузок.
+     * Файл пишется во временный {@code .part} по мере получения, не накапливаясь
+     * в памяти. После обрыва передача продолжается с уже записанного размера,
+     * а готовый файл переименовывается и удаляется из сервиса. Если передать файл
+     * не удалось или она отменена, локальные временные файлы и задание в сервисе удаляются.
+     *
+     * @param client клиент экземпляра, выполнившего задание
+     * @param jobId идентификатор задания
+     * @param response результат задания с путем к файлу в сервисе
+     * @return Mono с результатом, указывающим на локальный файл
+     */
+    private Mono<DownloadResponse> fetchFile(WebClient client, String jobId, DownloadResponse response) {
+        String fileName = Path.of(response.getFileName() != null ? response.getFileName() : response.getFilePath())
+                .getFileName().toString();
+        Path target = Path.of(downloadDir, "task-" + jobId, fileName);
+        Path part = target.resolveSibling(fileName + ".part");
+        AtomicBoolean discarded = new AtomicBoolean();
+
+        return Mono.defer(() -> transferFile(client, jobId, part))
+                .retryWhen(Retry.backoff(maxReconnects, Duration.ofSeconds(1))
+                        .filter(error -> !(error instanceof WebClientResponseException e
+                                && e.getStatusCode().is4xxClientError()))
+                        .doBeforeRetry(signal -> log.warn("Продолжение передачи файла задания {}: {}",
+                                jobId, signal.failure().getMessage()))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .then(Mono.fromCallable(() -> {
+                    long size = Files.size(part);
+                    if (response.getSizeBytes() != null && size != response.getSizeBytes()) {
+                        Files.deleteIfExists(part);
+                        throw new DownloadException("Размер полученного файла " + size
+                                + " не совпадает с ожидаемым " + response.getSizeBytes());
+                    }
+                    Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    log.debug("Файл задания {} получен: {}, {} байт", jobId, target, size);
+                    response.setFilePath(target.toString());
+                    return response;
+                }).subscribeOn(blockingScheduler))
+                .onErrorResume(e -> {
+                    discarded.set(true);
+                    return discardTransfer(client, jobId, part).then(Mono.error(e));
+                })
+                .doFinally(signal -> {
+                    // Повтор запроса пулом отменяет цепочку после ошибки, очистка при этом уже выполнена
+                    if (signal == SignalType.CANCEL && discarded.compareAndSet(false, true)) {
+                        discardTransfer(client, jobId, part).subscribe();
+                    }
+                })
+                .flatMap(local -> deleteJob(client, jobId).thenReturn(local));
+    }
+
+    /**
+     * Удаляет временный файл неудавшейся передачи, его директорию и задание в сервисе.
+     *
+     * @param client клиент экземпляра, выполнившего задание
+     * @param jobId идентификатор задания
+     * @param part временный файл
+     * @return Mono, завершающийся после удаления
+     */
+    private Mono<Void> discardTransfer(WebClient client, String jobId, Path part) {
+        return Mono.fromRunnable(() -> {
+                    try {
+                        Files.deleteIfExists(part);
+                        Files.deleteIfExists(part.getParent());
+                    } catch (IOException e) {
+                        log.warn("Не удалось удалить временные файлы задания {}: {}", jobId, e.getMessage());
+                    }
+                })
+                .subscribeOn(blockingScheduler)
+                .then(deleteJob(client, jobId));
+    }
+
+    /**
+     * Удаляет задание и его файлы в сервисе. Ошибка удаления только записывается в лог.
+     */
+    private Mono<Void> deleteJob(WebClient client, String jobId) {
+        return client
+                .delete()
+                .uri("/jobs/{id}", jobId)
+                .retrieve()
+                .toBodilessEntity()
+                .doOnError(e -> log.warn("Не удалось удалить задание {} в сервисе: {}", jobId, e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * Выполняет одну попытку передачи файла, продолжая с размера {@code .part}.
+     * Сервис, не поддерживающий Range, отдает файл целиком, и запись начинается заново.
+     *
+     * @param client клиент экземпляра, выполнившего задание
+     * @param jobId идентификатор задания
+     * @param part временный файл
+     * @return Mono, завершающийся после записи полученных байт
+     */
+    private Mono<Void> transferFile(WebClient client, String jobId, Path part) {
+        return Mono.fromCallable(() -> {
+                    Files.createDirectories(part.getParent());
+                    return Files.exists(part) ? Files.size(part) : 0L;
+                })
+                .subscribeOn(blockingScheduler)
+                .flatMap(offset -> transferFile(client, jobId, part, offset));
+    }
+
+    private Mono<Void> transferFile(WebClient client, String jobId, Path part, long offset) {
+        return client
+                .get()
+                .uri("/jobs/{id}/file", jobId)
+                .headers(headers -> {
+                    if (offset > 0) {
+                        headers.setRange(List.of(HttpRange.createByteRange(offset)));
+                    }
+                })
+                .exchangeToMono(clientResponse -> {
+                    if (clientResponse.statusCode().value() == HttpStatus.PARTIAL_CONTENT.value()) {
+                        return write(clientResponse.bodyToFlux(DataBuffer.class), part, offset);
+                    }
+                    if (clientResponse.statusCode().is2xxSuccessful()) {
+                        return write(clientResponse.bodyToFlux(DataBuffer.class), part, 0);
+                    }
+                    if (offset > 0 && clientResponse.statusCode().value()
+                            == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                        // Файл уже получен целиком в прошлой попытке
+                        return clientResponse.releaseBody();
+                    }
+                    return clientResponse.createError();
+                });
+    }
+
+    /**
+     * Записывает поток буферов в файл с заданной позиции, освобождая каждый буфер после записи.
+     * Запись с нулевой позиции начинает файл заново.
+     */
+    private Mono<Void> write(Flux<DataBuffer> body, Path part, long position) {
+        return Mono.using(
+                () -> position == 0
+                        ? AsynchronousFileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING)
+                        : AsynchronousFileChannel.open(part, StandardOpenOption.WRITE),
+                channel -> DataBufferUtils.write(body.timeout(TRANSFER_IDLE_TIMEOUT), channel, position)
+                        .map(DataBufferUtils::release)
+                        .then(),
+                channel -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        log.warn("Не удалось закрыть файл {}: {}", part, e.getMessage());
+                    }
+                })
+                .subscribeOn(blockingScheduler);
+    }
+
     /**
      * Определяет тип медиа на основе метаданных
      */
     private MediaType determineMediaType(JsonNode metadata) {
+        return determineMediaType(
+                metadata.has("vcodec") ? metadata.get("vcodec").asText() : null,
+                metadata.has("acodec") ? metadata.get("acodec").asText() : null,
+                metadata.has("ext") ? metadata.get("ext").asText() : null);
+    }
+
+    /**
+     * Определяет тип медиа по кодекам и расширению файла
+     */
+    private MediaType determineMediaType(String vcodec, String acodec, String extension) {
         // Проверяем наличие видео кодека
-        if (metadata.has("vcodec") && !metadata.get("vcodec").asText().equals("none")) {
+        if (vcodec != null && !vcodec.equals("none")) {
             return MediaType.VIDEO;
         }
         // Проверяем наличие аудио кодека
-        if (metadata.has("acodec") && !metadata.get("acodec").asText().equals("none")) {
+        if (acodec != null && !acodec.equals("none")) {
             return MediaType.AUDIO;
         }
         // Определяем по расширению файла
-        if (metadata.has("ext")) {
-            String ext = metadata.get("ext").asText().toLowerCase();
+        if (extension != null) {
+            String ext = extension.toLowerCase();
             if (ext.matches("mp4|webm|mkv|avi|mov")) {
                 return MediaType.VIDEO;
             }
@@ -220,6 +486,70 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
         return MediaType.DOCUMENT;
     }
 
+    /**
+     * DTO для состояния задания загрузки в сервисе yt-dlp
+     */
+    private static class JobStatus {
+        private String id;
+        private String status;
+        private Long downloadedBytes;
+        private Long totalBytes;
+        private DownloadResponse result;
+        private String error;
+
+        public boolean isFinished() {
+            return "completed".equals(status) || "failed".equals(status);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        public Long getDownloadedBytes() {
+            return downloadedBytes;
+        }
+
+        public void setDownloadedBytes(Long downloadedBytes) {
+            this.downloadedBytes = downloadedBytes;
+        }
+
+        public Long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public void setTotalBytes(Long totalBytes) {
+            this.totalBytes = totalBytes;
+        }
+
+        public DownloadResponse getResult() {
+            return result;
+        }
+
+        public void setResult(DownloadResponse result) {
+            this.result = result;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+
     /**
      * DTO для ответа загрузки от сервиса yt-dlp
      */
@@ -227,6 +557,10 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
         private String filePath;
         private String fileName;
         private Long sizeBytes;
+        private String title;
+        private String ext;
+        private String vcodec;
+        private String acodec;
 
         public String getFilePath() {
             return filePath;
@@ -251,5 +585,37 @@ public class HttpYtDlpMediaDownloader implements MediaDownloader {
         public void setSizeBytes(Long sizeBytes) {
             this.sizeBytes = sizeBytes;
         }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public String getExt() {
+            return ext;
+        }
+
+        public void setExt(String ext) {
+            this.ext = ext;
+        }
+
+        public String getVcodec() {
+            return vcodec;
+        }
+
+        public void setVcodec(String vcodec) {
+            this.vcodec = vcodec;
+        }
+
+        public String getAcodec() {
+            return acodec;
+        }
+
+        public void setAcodec(String acodec) {
+            this.acodec = acodec;
+        }
     }
 }
@@ -0,0 +1,119 @@
+package top.firlian.downloader.adapter.out;
+
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.error.ContentUnavailableException.Reason;
+import top.firlian.downloader.domain.error.DownloadException;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Классифицирует ошибки yt-dlp по тексту сообщения.
+ * Ошибки недоступности контента не исчезают при повторе, поэтому
+ * они отделяются от временных ошибок загрузки. Недоступность определяется
+ * только по характерным фразам yt-dlp: общие слова вроде "unavailable"
+ * встречаются и во временных ошибках ("Service Unavailable", "format not available").
+ */
+final class YtDlpErrorClassifier {
+
+    /** Ответ сайта с кодом 5xx - временная ошибка */
+    private static final Pattern SERVER_ERROR = Pattern.compile("http error 5\\d\\d");
+
+    private static final List<String> PRIVATE = List.of(
+            "private video", "video is private", "account is private", "playlist is private");
+
+    private static final List<String> UNAVAILABLE = List.of(
+            "video unavailable", "video is unavailable", "video is not available", "video isn't available",
+            "content is not available", "content isn't available", "content is unavailable");
+
+    private YtDlpErrorClassifier() {
+    }
+
+    /**
+     * Преобразует ошибку загрузки в доменное исключение.
+     *
+     * @param error исходная ошибка
+     * @return ContentUnavailableException для недоступного контента, DownloadRejectedException
+     *         для отклоненной без выполнения загрузки, иначе DownloadException
+     */
+    static RuntimeException toDomainError(Throwable error) {
+        if (error instanceof ContentUnavailableException unavailable) {
+            return unavailable;
+        }
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof DownloadRejectedException rejected) {
+                return rejected;
+            }
+        }
+        return unavailable(error)
+                .<RuntimeException>map(unavailable -> unavailable)
+                .orElseGet(() -> new DownloadException("Ошибка загрузки. Попробуйте позже", error));
+    }
+
+    /**
+     * Преобразует ошибку в исключение недоступности контента, если она на это указывает.
+     *
+     * @param error ошибка загрузки (включая цепочку причин и тело ответа сервиса yt-dlp)
+     * @return исключение недоступности или пустой Optional для прочих ошибок
+     */
+    static Optional<ContentUnavailableException> unavailable(Throwable error) {
+        StringBuilder text = new StringBuilder();
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof WebClientResponseException response
+                    && response.getStatusCode().is5xxServerError()
+                    && response.getStatusCode().value() != 500) {
+                // 502-504 приходят от шлюза или перегруженного сервиса, сервис yt-dlp сообщает ошибки кодом 500
+                return Optional.empty();
+            }
+            text.append(current.getMessage()).append('\n');
+            if (current instanceof WebClientResponseException response) {
+                text.append(response.getResponseBodyAsString()).append('\n');
+            }
+        }
+        return classify(text.toString())
+                .map(reason -> new ContentUnavailableException("Контент недоступен", reason, error));
+    }
+
+    /**
+     * Определяет причину недоступности по сообщению yt-dlp.
+     *
+     * @param message текст ошибки
+     * @return причина недоступности или пустой Optional
+     */
+    static Optional<Reason> classify(String message) {
+        if (message == null) {
+            return Optional.empty();
+        }
+        String text = message.toLowerCase(Locale.ROOT);
+        // Проверка на бота и ошибки 5xx относятся к серверу, а не к контенту
+        if (text.contains("not a bot") || text.contains("service unavailable")
+                || text.contains("temporarily unavailable") || text.contains("bad gateway")
+                || text.contains("gateway timeout") || SERVER_ERROR.matcher(text).find()) {
+            return Optional.empty();
+        }
+        if (text.contains("not available in your country") || text.contains("geo restrict")
+                || text.contains("geo-restrict") || text.contains("in your country")) {
+            return Optional.of(Reason.GEO_BLOCKED);
+        }
+        if (text.contains("sign in to confirm your age") || text.contains("login required")
+                || text.contains("requires authentication") || text.contains("age-restricted")) {
+            return Optional.of(Reason.LOGIN_REQUIRED);
+        }
+        if (PRIVATE.stream().anyMatch(text::contains)) {
+            return Optional.of(Reason.PRIVATE);
+        }
+        if (text.contains("has been removed") || text.contains("been terminated")
+                || text.contains("no longer available") || text.contains("does not exist")
+                || text.contains("http error 404")) {
+            return Optional.of(Reason.REMOVED);
+        }
+        if (UNAVAILABLE.stream().anyMatch(text::contains)) {
+            return Optional.of(Reason.UNAVAILABLE);
+        }
+        return Optional.empty();
+    }
+}
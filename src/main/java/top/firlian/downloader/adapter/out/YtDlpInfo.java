@@ -0,0 +1,54 @@
+package top.firlian.downloader.adapter.out;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Сведения о контенте из JSON-вывода yt-dlp.
+ * Содержит только поля, нужные загрузчику, без списков форматов и прочих
+ * объемных данных, поэтому занимает немного памяти даже для больших плейлистов.
+ */
+@Value
+@Builder
+class YtDlpInfo {
+    /** Пустые сведения для недоступных элементов плейлиста */
+    static final YtDlpInfo EMPTY = YtDlpInfo.builder().build();
+
+    /** Идентификатор контента у провайдера */
+    String id;
+
+    /** URL элемента (для записей плейлиста) */
+    String url;
+
+    /** Название контента */
+    String title;
+
+    /** Расширение файла */
+    String ext;
+
+    /** Видео кодек ("none" если видео нет) */
+    String vcodec;
+
+    /** Аудио кодек ("none" если аудио нет) */
+    String acodec;
+
+    /** Размер файла в байтах по данным провайдера (0 если неизвестен) */
+    long filesize;
+
+    /** Путь к загруженному файлу (null если файл не загружался) */
+    String filepath;
+
+    /** Записи плейлиста/карусели (null для одиночного контента) */
+    List<YtDlpInfo> entries;
+
+    /**
+     * Проверяет, описывают ли сведения плейлист или карусель.
+     *
+     * @return true если есть список записей
+     */
+    boolean isPlaylist() {
+        return entries != null;
+    }
+}
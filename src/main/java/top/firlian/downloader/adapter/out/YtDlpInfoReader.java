@@ -0,0 +1,171 @@
+package top.firlian.downloader.adapter.out;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковый разбор JSON-вывода yt-dlp.
+ * Читает JSON по токенам и сохраняет только нужные поля, пропуская списки форматов,
+ * миниатюр и субтитров без построения дерева. Записи плейлиста обрабатываются
+ * по одной, поэтому расход памяти зависит от числа записей, а не от объема JSON.
+ */
+final class YtDlpInfoReader {
+
+    /** Фабрика потоковых парсеров JSON */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private YtDlpInfoReader() {
+    }
+
+    /**
+     * Читает сведения о контенте из потока вывода yt-dlp.
+     *
+     * @param input поток с JSON-объектом
+     * @return сведения о контенте
+     * @throws IOException если JSON не удалось прочитать
+     */
+    static YtDlpInfo read(InputStream input) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            return readRoot(parser);
+        }
+    }
+
+    /**
+     * Читает сведения о контенте из уже разобранного JSON.
+     *
+     * @param node JSON-объект с информацией yt-dlp
+     * @return сведения о контенте
+     * @throws IOException если JSON не является объектом
+     */
+    static YtDlpInfo read(JsonNode node) throws IOException {
+        try (JsonParser parser = node.traverse()) {
+            return readRoot(parser);
+        }
+    }
+
+    /**
+     * Читает корневой объект.
+     *
+     * @param parser парсер перед первым токеном
+     * @return сведения о контенте
+     * @throws IOException если корень не является объектом
+     */
+    private static YtDlpInfo readRoot(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Ожидался JSON-объект в выводе yt-dlp");
+        }
+        return readInfo(parser);
+    }
+
+    /**
+     * Читает объект с информацией о контенте.
+     *
+     * @param parser парсер на токене START_OBJECT
+     * @return сведения о контенте
+     * @throws IOException если JSON не удалось прочитать
+     */
+    private static YtDlpInfo readInfo(JsonParser parser) throws IOException {
+        YtDlpInfo.YtDlpInfoBuilder info = YtDlpInfo.builder();
+        String filename = null;
+        String requestedPath = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> info.id(text(parser));
+                case "url" -> info.url(text(parser));
+                case "title" -> info.title(text(parser));
+                case "ext" -> info.ext(text(parser));
+                case "vcodec" -> info.vcodec(text(parser));
+                case "acodec" -> info.acodec(text(parser));
+                case "filename" -> filename = text(parser);
+                case "filesize" -> info.filesize(value.isNumeric() ? parser.getValueAsLong() : 0);
+                case "requested_downloads" -> requestedPath = readRequestedPath(parser);
+                case "entries" -> info.entries(readEntries(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        return info.filepath(requestedPath != null ? requestedPath : filename).build();
+    }
+
+    /**
+     * Читает записи плейлиста по одной.
+     * Недоступные записи (null) заменяются пустыми, чтобы сохранить нумерацию элементов.
+     *
+     * @param parser парсер на значении поля entries
+     * @return записи плейлиста
+     * @throws IOException если JSON не удалось прочитать
+     */
+    private static List<YtDlpInfo> readEntries(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<YtDlpInfo> entries = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                entries.add(readInfo(parser));
+            } else {
+                parser.skipChildren();
+                entries.add(YtDlpInfo.EMPTY);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Читает путь к первому загруженному файлу из requested_downloads.
+     *
+     * @param parser парсер на значении поля requested_downloads
+     * @return путь к файлу или null
+     * @throws IOException если JSON не удалось прочитать
+     */
+    private static String readRequestedPath(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        String path = null;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (path == null && "filepath".equals(field)) {
+                    path = text(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Возвращает строковое значение текущего токена.
+     * Для объектов и массивов значение пропускается.
+     *
+     * @param parser парсер на значении поля
+     * @return строка или null
+     * @throws IOException если JSON не удалось прочитать
+     */
+    private static String text(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+}
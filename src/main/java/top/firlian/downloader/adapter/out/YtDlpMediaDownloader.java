@@ -1,13 +1,14 @@
 package top.firlian.downloader.adapter.out;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
 import reactor.core.publisher.Mono;
-import top.firlian.downloader.domain.error.ContentUnavailableException;
+import reactor.core.scheduler.Scheduler;
 import top.firlian.downloader.domain.error.DownloadException;
 import top.firlian.downloader.domain.model.MediaContent;
 import top.firlian.downloader.domain.model.MediaItem;
@@ -17,26 +18,44 @@ import top.firlian.downloader.domain.port.MediaDownloader;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Реализация загрузчика медиа контента с использованием утилиты yt-dlp.
  * yt-dlp - это универсальный инструмент для загрузки видео и аудио
  * с различных платформ (YouTube, VK, Instagram и др.).
+ * Процессы yt-dlp запускаются и ожидаются на планировщике блокирующей работы.
+ * Если включен {@link YtDlpWorkerPool}, задания выполняются долгоживущими обработчиками
+ * вместо запуска нового процесса на каждый вызов.
+ * Каждая загрузка пишет файлы в собственный каталог внутри директории загрузок.
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class YtDlpMediaDownloader implements MediaDownloader {
 
+    /** Число последних строк stderr, сохраняемых для сообщения об ошибке */
+    private static final int MAX_ERROR_LINES = 20;
+
     /** Маппер для парсинга JSON метаданных */
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /** Планировщик для блокирующей работы с процессами yt-dlp */
+    private final Scheduler blockingScheduler;
+
+    /** Пул долгоживущих обработчиков yt-dlp */
+    private final YtDlpWorkerPool workerPool;
+
     /** Путь к исполняемому файлу yt-dlp */
     @Value("${downloader.ytdlp.bin:yt-dlp}")
     private String ytdlpBin;
@@ -51,32 +70,27 @@ public class YtDlpMediaDownloader implements MediaDownloader {
     @Override
     public Mono<MediaContent> download(String url) {
         return Mono.fromCallable(() -> {
+            Path taskDir = null;
             try {
-                // Создаем директорию для загрузок, если её нет
-                Path downloadPath = Paths.get(downloadDir);
-                if (!Files.exists(downloadPath)) {
-                    Files.createDirectories(downloadPath);
-                }
+                // Одиночный элемент загружается за тот же вызов, что и извлечение метаданных,
+                // плейлист/карусель при этом только перечисляется
+                taskDir = createTaskDirectory();
+                YtDlpInfo info = extractInfo(url, null, taskDir);
 
-                // Сначала получаем метаданные для проверки наличия нескольких элементов
-                JsonNode metadata = getMetadata(url);
-                
-                if (metadata.has("entries") && metadata.get("entries").isArray()) {
+                if (info.isPlaylist()) {
                     // Обрабатываем несколько элементов (плейлист/карусель)
-                    return handleMultipleItems(url, metadata);
+                    deleteTaskDirectory(taskDir);
+                    return handleMultipleItems(url, info);
                 } else {
-                    // Загружаем одиночный элемент
-                    return downloadSingleItem(url, metadata, 0);
+                    return toMediaContent(url, info, taskDir);
                 }
             } catch (Exception e) {
                 log.error("Ошибка загрузки с URL: {}", url, e);
+                deleteTaskDirectory(taskDir);
                 // Проверяем специфичные ошибки доступа к контенту
-                if (e.getMessage().contains("Private") || e.getMessage().contains("unavailable")) {
-                    throw new ContentUnavailableException("Контент недоступен", e);
-                }
-                throw new DownloadException("Ошибка загрузки. Попробуйте позже", e);
+                throw YtDlpErrorClassifier.toDomainError(e);
             }
-        });
+        }).subscribeOn(blockingScheduler);
     }
 
     /**
@@ -86,180 +100,245 @@ public class YtDlpMediaDownloader implements MediaDownloader {
     public Mono<MediaContent> downloadSpecificItem(String url, int itemIndex) {
         return Mono.fromCallable(() -> {
             try {
-                JsonNode metadata = getMetadata(url);
-                return downloadSingleItem(url, metadata, itemIndex);
+                return downloadItem(url, itemIndex);
             } catch (Exception e) {
                 log.error("Ошибка загрузки элемента {} с URL: {}", itemIndex, url, e);
-                throw new DownloadException("Ошибка загрузки. Попробуйте позже", e);
+                throw YtDlpErrorClassifier.toDomainError(e);
             }
-        });
+        }).subscribeOn(blockingScheduler);
+    }
+
+    /**
+     * Загружает элемент плейлиста/карусели в отдельный каталог задачи.
+     *
+     * @param url URL контента
+     * @param itemIndex индекс элемента (0 для одиночного файла)
+     * @return загруженный медиа контент
+     * @throws IOException если произошла ошибка ввода-вывода
+     * @throws InterruptedException если процесс был прерван
+     */
+    private MediaContent downloadItem(String url, int itemIndex) throws IOException, InterruptedException {
+        Path taskDir = createTaskDirectory();
+        try {
+            return toMediaContent(url, downloadedEntry(extractInfo(url, itemIndex, taskDir)), taskDir);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            deleteTaskDirectory(taskDir);
+            throw e;
+        }
     }
 
     /**
-     * Получает метаданные контента без загрузки файла.
-     * Использует опцию --dump-json для получения информации о медиа.
+     * Извлекает метаданные и загружает файл за один вызов yt-dlp.
+     * Без индекса элемента одиночный контент загружается, а плейлист/карусель
+     * только перечисляется (--flat-playlist). С индексом загружается указанный элемент.
      *
      * @param url URL контента
-     * @return JSON объект с метаданными
+     * @param itemIndex индекс элемента или null для загрузки по URL целиком
+     * @param taskDir каталог задачи для загружаемого файла
+     * @return метаданные, включая путь к загруженному файлу
      * @throws IOException если произошла ошибка ввода-вывода
      * @throws InterruptedException если процесс был прерван
      */
-    private JsonNode getMetadata(String url) throws IOException, InterruptedException {
-        ProcessBuilder pb = new ProcessBuilder(
+    private YtDlpInfo extractInfo(String url, Integer itemIndex, Path taskDir)
+            throws IOException, InterruptedException {
+        String outputTemplate = taskDir.resolve("%(title)s-%(id)s.%(ext)s").toString();
+        if (workerPool.isEnabled()) {
+            ObjectNode options = objectMapper.createObjectNode().put("outtmpl", outputTemplate);
+            if (itemIndex == null) {
+                options.put("extract_flat", "in_playlist");
+            } else {
+                options.put("playlist_items", String.valueOf(itemIndex + 1));
+            }
+            return YtDlpInfoReader.read(workerPool.extract(url, true, options).get("result"));
+        }
+
+        List<String> command = new ArrayList<>(List.of(
                 ytdlpBin,
-                "--dump-json",
                 "--no-warnings",
-                url
-        );
-        pb.redirectErrorStream(true);
-        Process process = pb.start();
-
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line);
+                "--dump-single-json",
+                "--no-simulate",
+                "-o", outputTemplate
+        ));
+        if (itemIndex == null) {
+            command.add("--flat-playlist");
+        } else {
+            command.add("--playlist-items");
+            command.add(String.valueOf(itemIndex + 1));
+        }
+        command.add(url);
+
+        Process process = new ProcessBuilder(command).start();
+
+        // stderr читаем отдельно, чтобы сообщения yt-dlp не смешивались с JSON,
+        // и храним только последние строки для сообщения об ошибке
+        Deque<String> errors = new ArrayDeque<>();
+        Thread errorReader = Thread.ofVirtual().start(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log.debug("Вывод yt-dlp: {}", line);
+                    if (errors.size() == MAX_ERROR_LINES) {
+                        errors.pollFirst();
+                    }
+                    errors.addLast(line);
+                }
+            } catch (IOException e) {
+                log.debug("Чтение stderr yt-dlp прервано", e);
             }
+        });
+
+        // JSON разбирается потоково по мере вывода, без накопления в памяти
+        YtDlpInfo info = null;
+        IOException parseError = null;
+        try (InputStream output = process.getInputStream()) {
+            info = YtDlpInfoReader.read(output);
+        } catch (IOException e) {
+            parseError = e;
         }
 
         int exitCode = process.waitFor();
+        errorReader.join();
         if (exitCode != 0) {
-            log.error("Ошибка извлечения метаданных yt-dlp с кодом: {}, вывод: {}", exitCode, output);
-            throw new DownloadException("Не удалось извлечь метаданные");
+            String errorOutput = String.join("\n", errors);
+            log.error("Ошибка yt-dlp с кодом: {}, вывод: {}", exitCode, errorOutput);
+            throw new DownloadException("Загрузка не удалась: " + errorOutput);
         }
-
-        return objectMapper.readTree(output.toString());
+        if (parseError != null) {
+            throw parseError;
+        }
+        return info;
     }
 
     /**
      * Обрабатывает контент с несколькими элементами (плейлист, карусель).
-     * Создает список элементов и загружает первый из них по умолчанию.
+     * Создает список элементов по перечислению без загрузки файлов -
+     * элемент загружается, только когда пользователь его выберет.
      *
      * @param url URL контента
      * @param metadata метаданные с информацией о всех элементах
-     * @return медиа контент с первым загруженным элементом и списком всех доступных
+     * @return медиа контент со списком всех доступных элементов без файла
      */
-    private MediaContent handleMultipleItems(String url, JsonNode metadata) {
+    private MediaContent handleMultipleItems(String url, YtDlpInfo metadata) {
         List<MediaItem> items = new ArrayList<>();
-        JsonNode entries = metadata.get("entries");
+        List<YtDlpInfo> entries = metadata.getEntries();
+        if (entries.isEmpty()) {
+            throw new DownloadException("Элементы не найдены");
+        }
         
         // Создаем список всех доступных элементов
         for (int i = 0; i < entries.size(); i++) {
-            JsonNode entry = entries.get(i);
+            YtDlpInfo entry = entries.get(i);
             items.add(MediaItem.builder()
                     .index(i)
-                    .url(entry.has("url") ? entry.get("url").asText() : url)
+                    .url(entry.getUrl() != null ? entry.getUrl() : url)
                     .type(determineMediaType(entry))
-                    .title(entry.has("title") ? entry.get("title").asText() : "Item " + (i + 1))
-                    .sizeBytes(entry.has("filesize") ? entry.get("filesize").asLong() : 0)
+                    .title(entry.getTitle() != null ? entry.getTitle() : "Item " + (i + 1))
+                    .sizeBytes(entry.getFilesize())
                     .build());
         }
 
-        // Загружаем первый элемент по умолчанию
-        MediaContent firstItem = downloadSingleItem(url, entries.get(0), 0);
+        log.info("Найдено элементов: {} для URL: {}", items.size(), url);
 
         return MediaContent.builder()
                 .url(url)
-                .type(firstItem.getType())
-                .title(metadata.has("title") ? metadata.get("title").asText() : "Media")
-                .sizeBytes(firstItem.getSizeBytes())
-                .filePath(firstItem.getFilePath())
+                .type(items.get(0).getType())
+                .title(metadata.getTitle() != null ? metadata.getTitle() : "Media")
+                .sizeBytes(0)
+                .filePath(null)
                 .items(items)
                 .build();
     }
 
     /**
-     * Загружает одиночный медиа файл.
+     * Возвращает метаданные загруженного элемента.
+     * При загрузке элемента плейлиста yt-dlp возвращает плейлист с единственной записью.
      *
-     * @param url URL для загрузки
-     * @param metadata метаданные элемента
-     * @param itemIndex индекс элемента (0 для одиночного файла)
-     * @return загруженный медиа контент
+     * @param info метаданные, полученные при загрузке
+     * @return метаданные загруженного элемента
      */
-    private MediaContent downloadSingleItem(String url, JsonNode metadata, int itemIndex) {
-        try {
-            String outputTemplate = downloadDir + "/%(title)s-%(id)s.%(ext)s";
-            
-            ProcessBuilder pb = new ProcessBuilder(
-                    ytdlpBin,
-                    "--no-warnings",
-                    "--no-playlist",
-                    "-o", outputTemplate,
-                    url
-            );
-            
-            // Если указан индекс элемента, добавляем соответствующую опцию
-            if (itemIndex > 0) {
-                pb.command().add("--playlist-items");
-                pb.command().add(String.valueOf(itemIndex + 1));
-            }
-
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            StringBuilder output = new StringBuilder();
-            String downloadedFile = null;
-            
-            // Читаем вывод процесса и пытаемся извлечь путь к загруженному файлу
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    log.debug("Вывод yt-dlp: {}", line);
-                    output.append(line).append("\n");
-                    
-                    // Извлекаем путь к файлу из вывода yt-dlp
-                    if (line.contains("Destination:") || line.contains("has already been downloaded")) {
-                        String[] parts = line.split(":");
-                        if (parts.length > 1) {
-                            downloadedFile = parts[1].trim();
-                        }
-                    }
+    private YtDlpInfo downloadedEntry(YtDlpInfo info) {
+        if (info.isPlaylist()) {
+            for (YtDlpInfo entry : info.getEntries()) {
+                if (entry != YtDlpInfo.EMPTY) {
+                    return entry;
                 }
             }
+            throw new DownloadException("Элемент не найден");
+        }
+        return info;
+    }
 
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                log.error("Ошибка загрузки yt-dlp с кодом: {}, вывод: {}", exitCode, output);
-                throw new DownloadException("Загрузка не удалась");
-            }
+    /**
+     * Создает медиа контент по метаданным загруженного элемента.
+     * Путь к файлу берется из метаданных yt-dlp, а если он не сообщен -
+     * из каталога задачи, где находятся только файлы этой загрузки.
+     *
+     * @param url URL контента
+     * @param metadata метаданные загруженного элемента
+     * @param taskDir каталог задачи
+     * @return загруженный медиа контент
+     * @throws IOException если каталог задачи не удалось прочитать
+     */
+    private MediaContent toMediaContent(String url, YtDlpInfo metadata, Path taskDir) throws IOException {
+        String downloadedFile = metadata.getFilepath();
 
-            // Если не удалось извлечь путь из вывода, ищем последний измененный файл
-            if (downloadedFile == null) {
-                File dir = new File(downloadDir);
-                File[] files = dir.listFiles((d, name) -> !name.startsWith("."));
-                if (files != null && files.length > 0) {
-                    // Находим самый свежий файл
-                    File latest = files[0];
-                    for (File f : files) {
-                        if (f.lastModified() > latest.lastModified()) {
-                            latest = f;
-                        }
-                    }
-                    downloadedFile = latest.getAbsolutePath();
-                }
+        // Если путь не сообщен yt-dlp, берем файл из каталога задачи
+        if (downloadedFile == null) {
+            try (Stream<Path> files = Files.list(taskDir)) {
+                downloadedFile = files
+                        .filter(Files::isRegularFile)
+                        .filter(file -> !file.getFileName().toString().startsWith("."))
+                        .filter(file -> !file.getFileName().toString().endsWith(".part"))
+                        .findFirst()
+                        .map(file -> file.toAbsolutePath().toString())
+                        .orElse(null);
             }
+        }
 
-            if (downloadedFile == null) {
-                throw new DownloadException("Не удалось определить путь к загруженному файлу");
-            }
+        if (downloadedFile == null) {
+            throw new DownloadException("Не удалось определить путь к загруженному файлу");
+        }
+
+        File file = new File(downloadedFile);
+        long fileSize = file.length();
 
-            File file = new File(downloadedFile);
-            long fileSize = file.length();
+        log.info("Файл успешно загружен: {}, размер: {} байт", downloadedFile, fileSize);
 
-            log.info("Файл успешно загружен: {}, размер: {} байт", downloadedFile, fileSize);
+        return MediaContent.builder()
+                .url(url)
+                .type(determineMediaType(metadata))
+                .title(metadata.getTitle() != null ? metadata.getTitle() : "Media")
+                .sizeBytes(fileSize)
+                .filePath(downloadedFile)
+                .items(null)
+                .build();
+    }
 
-            return MediaContent.builder()
-                    .url(url)
-                    .type(determineMediaType(metadata))
-                    .title(metadata.has("title") ? metadata.get("title").asText() : "Media")
-                    .sizeBytes(fileSize)
-                    .filePath(downloadedFile)
-                    .items(null)
-                    .build();
+    /**
+     * Создает уникальный каталог задачи внутри директории загрузок.
+     * Каждая загрузка пишет файлы в свой каталог, поэтому результаты
+     * одновременных загрузок не смешиваются.
+     *
+     * @return путь к каталогу задачи
+     * @throws IOException если каталог не удалось создать
+     */
+    private Path createTaskDirectory() throws IOException {
+        return Files.createDirectories(Paths.get(downloadDir, UUID.randomUUID().toString()));
+    }
 
-        } catch (IOException | InterruptedException e) {
-            log.error("Ошибка во время загрузки", e);
-            throw new DownloadException("Загрузка не удалась", e);
+    /**
+     * Удаляет каталог задачи вместе с недокачанными файлами.
+     *
+     * @param taskDir каталог задачи (может быть null)
+     */
+    private void deleteTaskDirectory(Path taskDir) {
+        if (taskDir == null) {
+            return;
+        }
+        try {
+            FileSystemUtils.deleteRecursively(taskDir);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить каталог задачи: {}", taskDir, e);
         }
     }
 
@@ -270,18 +349,18 @@ public class YtDlpMediaDownloader implements MediaDownloader {
      * @param metadata метаданные файла
      * @return тип медиа (VIDEO, AUDIO, PHOTO или DOCUMENT)
      */
-    private MediaType determineMediaType(JsonNode metadata) {
+    private MediaType determineMediaType(YtDlpInfo metadata) {
         // Проверяем наличие видео кодека
-        if (metadata.has("vcodec") && !metadata.get("vcodec").asText().equals("none")) {
+        if (metadata.getVcodec() != null && !metadata.getVcodec().equals("none")) {
             return MediaType.VIDEO;
         }
         // Проверяем наличие аудио кодека
-        if (metadata.has("acodec") && !metadata.get("acodec").asText().equals("none")) {
+        if (metadata.getAcodec() != null && !metadata.getAcodec().equals("none")) {
             return MediaType.AUDIO;
         }
         // Определяем по расширению файла
-        if (metadata.has("ext")) {
-            String ext = metadata.get("ext").asText().toLowerCase();
+        if (metadata.getExt() != null) {
+            String ext = metadata.getExt().toLowerCase();
             if (ext.matches("mp4|webm|mkv|avi|mov")) {
                 return MediaType.VIDEO;
             }
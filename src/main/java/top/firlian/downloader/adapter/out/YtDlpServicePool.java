@@ -0,0 +1,357 @@
+package top.firlian.downloader.adapter.out;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
+import top.firlian.downloader.util.CircuitBreaker;
+import top.firlian.downloader.util.CircuitBreakerRegistry;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Пул экземпляров сервиса yt-dlp с балансировкой по числу выполняющихся запросов.
+ * Каждый запрос или задание загрузки целиком отправляется экземпляру с наименьшим
+ * числом выполняющихся запросов. Экземпляры, не прошедшие проверку {@code /health},
+ * исключаются из балансировки. У каждого экземпляра свой автоматический выключатель:
+ * при большой доле ошибок экземпляр не получает запросов, пока пробный запрос
+ * после времени размыкания не пройдет успешно. Вернувшийся экземпляр получает
+ * нагрузку постепенно в течение периода медленного старта.
+ * Если не прошли проверку все экземпляры, запросы распределяются между ними, чтобы
+ * ошибка пришла от сервиса, а если разомкнуты выключатели всех экземпляров,
+ * запрос сразу отклоняется.
+ */
+@Slf4j
+@Component
+public class YtDlpServicePool {
+
+    /** Минимальная доля нагрузки экземпляра в начале медленного старта */
+    private static final double MIN_SLOW_START_WEIGHT = 0.1;
+
+    /** Экземпляры сервиса */
+    private final List<Backend> backends;
+
+    /** Признак проверки работоспособности: только в режиме http */
+    private final boolean healthChecks;
+
+    /** Максимальное время ответа на проверку работоспособности */
+    private final Duration healthTimeout;
+
+    /** Период медленного старта вернувшегося экземпляра */
+    private final long slowStartMillis;
+
+    /** Текущее время в миллисекундах */
+    private final LongSupplier clock;
+
+    /** Признак выполняющейся проверки работоспособности */
+    private final AtomicBoolean healthCheckRunning = new AtomicBoolean();
+
+    /** Смещение обхода для равномерного выбора среди одинаково загруженных экземпляров */
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    /**
+     * Конструктор с настройкой пула.
+     *
+     * @param ytDlpServiceWebClient общий клиент сервиса с пулом соединений
+     * @param mode режим работы yt-dlp (local или http)
+     * @param serviceUrls адреса экземпляров через запятую
+     * @param healthTimeoutMillis максимальное время ответа на проверку работоспособности
+     * @param slowStartSeconds за сколько секунд вернувшийся экземпляр выходит на полную нагрузку
+     * @param circuitBreakers реестр автоматических выключателей
+     * @param meterRegistry реестр метрик
+     */
+    @Autowired
+    public YtDlpServicePool(
+            WebClient ytDlpServiceWebClient,
+            @Value("${downloader.ytdlp.mode:local}") String mode,
+            @Value("${downloader.ytdlp.service-urls:${downloader.ytdlp.service-url:http://localhost:8090}}")
+            String serviceUrls,
+            @Value("${downloader.ytdlp.http.health-timeout-ms:2000}") long healthTimeoutMillis,
+            @Value("${downloader.ytdlp.http.slow-start-seconds:30}") long slowStartSeconds,
+            CircuitBreakerRegistry circuitBreakers,
+            MeterRegistry meterRegistry) {
+        this(ytDlpServiceWebClient, "http".equalsIgnoreCase(mode), serviceUrls, healthTimeoutMillis,
+                slowStartSeconds, circuitBreakers, meterRegistry, System::currentTimeMillis);
+    }
+
+    YtDlpServicePool(WebClient webClient, boolean healthChecks, String serviceUrls, long healthTimeoutMillis,
+                     long slowStartSeconds, CircuitBreakerRegistry circuitBreakers,
+                     MeterRegistry meterRegistry, LongSupplier clock) {
+        this.backends = Arrays.stream(serviceUrls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .distinct()
+                .map(url -> new Backend(url, webClient.mutate().baseUrl(url).build(),
+                        circuitBreakers.get("ytdlp-service " + url)))
+                .toList();
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("Не задан ни один адрес сервиса yt-dlp");
+        }
+        this.healthChecks = healthChecks;
+        this.healthTimeout = Duration.ofMillis(healthTimeoutMillis);
+        this.slowStartMillis = Duration.ofSeconds(slowStartSeconds).toMillis();
+        this.clock = clock;
+
+        for (Backend backend : backends) {
+            Gauge.builder("downloader.ytdlp.backend.outstanding", backend, b -> b.outstanding.get())
+                    .description("Число выполняющихся запросов к экземпляру сервиса yt-dlp")
+                    .tag("backend", backend.url)
+                    .register(meterRegistry);
+            Gauge.builder("downloader.ytdlp.backend.available", backend, b -> b.isAvailable() ? 1 : 0)
+                    .description("Доступен ли экземпляр сервиса yt-dlp для балансировки")
+                    .tag("backend", backend.url)
+                    .register(meterRegistry);
+        }
+        log.info("Экземпляры сервиса yt-dlp: {}", backends.stream().map(b -> b.url).toList());
+    }
+
+    /**
+     * Выполняет запрос на наименее загруженном экземпляре.
+     * Экземпляр считается занятым, пока не завершится возвращенный запросом Mono,
+     * поэтому задание загрузки со всеми своими запросами выполняется на одном экземпляре.
+     * Если соединение с экземпляром не установлено, запрос до сервиса не дошел
+     * и повторяется на другом экземпляре.
+     *
+     * @param request запрос к клиенту выбранного экземпляра
+     * @return Mono с результатом запроса или {@link DownloadRejectedException},
+     *         если выключатели всех экземпляров разомкнуты
+     */
+    public <T> Mono<T> execute(Function<WebClient, Mono<T>> request) {
+        return Mono.defer(() -> {
+            Set<Backend> tried = new HashSet<>();
+            return Mono.defer(() -> {
+                        Backend backend = acquire(tried);
+                        return backend != null
+                                ? attempt(backend, request)
+                                : Mono.<T>error(new DownloadRejectedException(
+                                        "Сервис загрузки временно недоступен. Попробуйте позже"));
+                    })
+                    .retryWhen(Retry.max(backends.size() - 1L)
+                            .filter(YtDlpServicePool::isConnectFailure)
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        });
+    }
+
+    /**
+     * Выполняет запрос на выбранном экземпляре и учитывает его результат.
+     * Экземпляр освобождается до передачи результата, чтобы следующий запрос
+     * вызывающего уже видел его свободным.
+     */
+    private <T> Mono<T> attempt(Backend backend, Function<WebClient, Mono<T>> request) {
+        backend.outstanding.incrementAndGet();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                backend.outstanding.decrementAndGet();
+            }
+        };
+        return request.apply(backend.client)
+                .doOnSuccess(result -> {
+                    release.run();
+                    backend.breaker.onSuccess();
+                })
+                .doOnError(error -> {
+                    release.run();
+                    if (isBackendFailure(error)) {
+                        log.debug("Ошибка экземпляра сервиса yt-dlp {}: {}", backend.url, error.getMessage());
+                        backend.breaker.onFailure();
+                    } else {
+                        // Экземпляр ответил, ошибка относится к самому запросу
+                        backend.breaker.onSuccess();
+                    }
+                })
+                .doOnCancel(() -> {
+                    release.run();
+                    backend.breaker.onIgnored();
+                });
+    }
+
+    /**
+     * Запускает проверку работоспособности всех экземпляров, не блокируя поток планировщика.
+     * Пока предыдущая проверка не завершилась, новая не начинается.
+     * Интервал настраивается через {@code downloader.ytdlp.http.health-interval-ms}.
+     */
+    @Scheduled(fixedDelayString = "${downloader.ytdlp.http.health-interval-ms:10000}")
+    public void checkHealth() {
+        if (!healthChecks || !healthCheckRunning.compareAndSet(false, true)) {
+            return;
+        }
+        probeHealth()
+                .doFinally(signal -> healthCheckRunning.set(false))
+                .subscribe(healthy -> log.debug("Работоспособных экземпляров сервиса yt-dlp: {} из {}",
+                        healthy, backends.size()));
+    }
+
+    /**
+     * Проверяет работоспособность всех экземпляров запросом {@code /health}.
+     * Экземпляры проверяются параллельно, каждый не дольше времени ответа на проверку.
+     * Не ответивший экземпляр исключается из балансировки до успешной проверки,
+     * а после нее проходит медленный старт.
+     *
+     * @return Mono с числом работоспособных экземпляров
+     */
+    Mono<Integer> probeHealth() {
+        return Flux.fromIterable(backends)
+                .flatMap(backend -> backend.client
+                        .get()
+                        .uri("/health")
+                        .retrieve()
+                        .toBodilessEntity()
+                        .timeout(healthTimeout)
+                        .map(response -> true)
+                        .onErrorResume(e -> {
+                            log.debug("Проверка экземпляра {} не пройдена: {}", backend.url, e.getMessage());
+                            return Mono.just(false);
+                        })
+                        .doOnNext(ok -> updateHealth(backend, ok)))
+                .filter(Boolean::booleanValue)
+                .count()
+                .map(Long::intValue);
+    }
+
+    /**
+     * Выбирает экземпляр и занимает разрешение его выключателя.
+     * Экземпляр, выключатель которого готов к пробному запросу, выбирается в первую
+     * очередь, иначе он не вернется в балансировку при малой нагрузке. Остальные
+     * запросы уходят экземпляру с наименьшей нагрузкой: числом выполняющихся запросов
+     * с учетом нового, деленным на долю нагрузки экземпляра. Из одинаково загруженных
+     * экземпляров выбирается следующий по кругу.
+     *
+     * @param tried экземпляры, уже не сумевшие принять этот запрос
+     * @return выбранный экземпляр или null, если выключатели всех экземпляров разомкнуты
+     */
+    Backend acquire(Set<Backend> tried) {
+        while (true) {
+            Backend backend = choose(tried);
+            if (backend == null) {
+                return null;
+            }
+            tried.add(backend);
+            if (backend.breaker.tryAcquire()) {
+                return backend;
+            }
+        }
+    }
+
+    private Backend choose(Set<Backend> excluded) {
+        long now = clock.getAsLong();
+        int start = Math.floorMod(rotation.getAndIncrement(), backends.size());
+        Backend best = null;
+        Backend fallback = null;
+        double bestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < backends.size(); i++) {
+            Backend backend = backends.get((start + i) % backends.size());
+            if (excluded.contains(backend) || !backend.breaker.isCallPermitted()) {
+                continue;
+            }
+            if (fallback == null || backend.outstanding.get() < fallback.outstanding.get()) {
+                fallback = backend;
+            }
+            if (!backend.healthy) {
+                continue;
+            }
+            if (backend.breaker.state() != CircuitBreaker.State.CLOSED) {
+                return backend;
+            }
+            double load = (backend.outstanding.get() + 1) / backend.weight(now, slowStartMillis);
+            if (load < bestLoad) {
+                best = backend;
+                bestLoad = load;
+            }
+        }
+        // Работоспособных экземпляров нет - распределяем между всеми с замкнутым выключателем
+        return best != null ? best : fallback;
+    }
+
+    /**
+     * Обновляет результат проверки работоспособности экземпляра.
+     */
+    private void updateHealth(Backend backend, boolean ok) {
+        synchronized (backend) {
+            if (backend.healthy == ok) {
+                return;
+            }
+            backend.healthy = ok;
+            if (ok) {
+                backend.healthySince = clock.getAsLong();
+            }
+        }
+        if (ok) {
+            log.info("Экземпляр сервиса yt-dlp {} снова работает", backend.url);
+        } else {
+            log.warn("Экземпляр сервиса yt-dlp {} не прошел проверку работоспособности", backend.url);
+        }
+    }
+
+    /**
+     * Проверяет, указывает ли ошибка на неисправность экземпляра, а не на сам запрос:
+     * соединение не установлено или оборвано, либо сервис ответил ошибкой 5xx.
+     */
+    private static boolean isBackendFailure(Throwable error) {
+        return error instanceof WebClientRequestException
+                || error instanceof IOException
+                || error instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError();
+    }
+
+    /**
+     * Проверяет, что запрос не дошел до экземпляра и его можно повторить на другом.
+     */
+    private static boolean isConnectFailure(Throwable error) {
+        return error instanceof WebClientRequestException && error.getCause() instanceof ConnectException;
+    }
+
+    /**
+     * Экземпляр сервиса и его состояние в балансировке.
+     */
+    static final class Backend {
+        private final String url;
+        private final WebClient client;
+        private final CircuitBreaker breaker;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private volatile boolean healthy = true;
+        private volatile long healthySince = Long.MIN_VALUE;
+
+        Backend(String url, WebClient client, CircuitBreaker breaker) {
+            this.url = url;
+            this.client = client;
+            this.breaker = breaker;
+        }
+
+        boolean isAvailable() {
+            return healthy && breaker.isCallPermitted();
+        }
+
+        /**
+         * Доля нагрузки экземпляра: растет линейно в течение медленного старта,
+         * который начинается после проверки работоспособности или замыкания выключателя.
+         */
+        double weight(long now, long slowStartMillis) {
+            long since = Math.max(healthySince, breaker.changedAt());
+            if (slowStartMillis <= 0 || since == Long.MIN_VALUE || now - since >= slowStartMillis) {
+                return 1;
+            }
+            return Math.max(MIN_SLOW_START_WEIGHT, (double) (now - since) / slowStartMillis);
+        }
+    }
+}
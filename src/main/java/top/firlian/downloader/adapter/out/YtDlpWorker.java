@@ -0,0 +1,179 @@
+package top.firlian.downloader.adapter.out;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Долгоживущий процесс-обработчик yt-dlp.
+ * Принимает задания построчно в формате JSON через stdin и отвечает построчно через stdout.
+ * Одновременно обработчик выполняет только одно задание - доступ к нему
+ * разграничивает {@link YtDlpWorkerPool}.
+ */
+@Slf4j
+final class YtDlpWorker {
+
+    /** Процесс обработчика */
+    private final Process process;
+
+    /** Поток заданий обработчику */
+    private final BufferedWriter input;
+
+    /** Поток ответов обработчика */
+    private final BufferedReader output;
+
+    /** Маппер для сериализации заданий и ответов */
+    private final ObjectMapper objectMapper;
+
+    /** Идентификатор последнего отправленного задания */
+    private long lastRequestId;
+
+    /** Число выполненных заданий */
+    private int completedJobs;
+
+    /** Признак принудительной остановки по превышению времени задания */
+    private volatile boolean timedOut;
+
+    private YtDlpWorker(Process process, ObjectMapper objectMapper) {
+        this.process = process;
+        this.objectMapper = objectMapper;
+        this.input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        this.output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Запускает процесс обработчика.
+     * Вывод stderr процесса читается в отдельном виртуальном потоке и пишется в лог.
+     *
+     * @param command команда запуска обработчика
+     * @param objectMapper маппер для сериализации заданий и ответов
+     * @return запущенный обработчик
+     * @throws IOException если процесс не удалось запустить
+     */
+    static YtDlpWorker start(List<String> command, ObjectMapper objectMapper) throws IOException {
+        Process process = new ProcessBuilder(command).start();
+        long pid = process.pid();
+        Thread.ofVirtual().name("ytdlp-worker-stderr-" + pid).start(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log.debug("Обработчик yt-dlp {}: {}", pid, line);
+                }
+            } catch (IOException e) {
+                log.debug("Чтение stderr обработчика yt-dlp {} прервано", pid);
+            }
+        });
+        log.info("Запущен обработчик yt-dlp {}", pid);
+        return new YtDlpWorker(process, objectMapper);
+    }
+
+    /**
+     * Отправляет задание и ожидает ответа на него.
+     * При превышении времени ожидания процесс принудительно завершается.
+     *
+     * @param request задание без идентификатора
+     * @param timeout максимальное время выполнения задания
+     * @param watchdog планировщик для контроля времени выполнения
+     * @return ответ обработчика
+     * @throws InterruptedIOException если превышено время выполнения задания
+     * @throws IOException если процесс завершился или нарушил протокол
+     */
+    JsonNode call(ObjectNode request, Duration timeout, ScheduledExecutorService watchdog) throws IOException {
+        long requestId = ++lastRequestId;
+        ObjectNode message = request.deepCopy().put("id", requestId);
+
+        ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+            timedOut = true;
+            process.destroyForcibly();
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        String line;
+        try {
+            input.write(objectMapper.writeValueAsString(message));
+            input.newLine();
+            input.flush();
+            line = output.readLine();
+        } catch (IOException e) {
+            throw failure(e);
+        } finally {
+            deadline.cancel(false);
+        }
+
+        if (line == null) {
+            throw failure(null);
+        }
+        JsonNode response = objectMapper.readTree(line);
+        if (response.path("id").asLong() != requestId) {
+            throw new IOException("Нарушен протокол обработчика yt-dlp " + pid() + ": " + line);
+        }
+        completedJobs++;
+        return response;
+    }
+
+    /**
+     * Возвращает PID процесса обработчика.
+     *
+     * @return PID процесса
+     */
+    long pid() {
+        return process.pid();
+    }
+
+    /**
+     * Возвращает число выполненных заданий.
+     *
+     * @return число заданий, на которые получен ответ
+     */
+    int completedJobs() {
+        return completedJobs;
+    }
+
+    /**
+     * Проверяет, работает ли процесс обработчика.
+     *
+     * @return true если процесс не завершился
+     */
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Останавливает обработчик: закрывает поток заданий и завершает процесс.
+     */
+    void destroy() {
+        try {
+            input.close();
+        } catch (IOException e) {
+            log.debug("Не удалось закрыть stdin обработчика yt-dlp {}", pid());
+        }
+        process.destroy();
+        log.info("Остановлен обработчик yt-dlp {}, выполнено заданий: {}", pid(), completedJobs);
+    }
+
+    /**
+     * Формирует ошибку обмена с обработчиком.
+     *
+     * @param cause исходная ошибка ввода-вывода (может быть null)
+     * @return ошибка превышения времени или аварийного завершения процесса
+     */
+    private IOException failure(IOException cause) {
+        if (timedOut) {
+            return new InterruptedIOException("Превышено время выполнения задания обработчиком yt-dlp " + pid());
+        }
+        return new IOException("Обработчик yt-dlp " + pid() + " завершился аварийно", cause);
+    }
+}
@@ -0,0 +1,329 @@
+package top.firlian.downloader.adapter.out;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import top.firlian.downloader.domain.error.DownloadException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Пул долгоживущих процессов-обработчиков yt-dlp для локального режима.
+ * Обработчики выполняют задания через Python API yt_dlp, поэтому запуск интерпретатора
+ * и импорт экстракторов оплачиваются один раз на процесс, а не на каждый вызов.
+ * Обработчики создаются по требованию, перезапускаются после заданного числа заданий
+ * и после аварийного завершения, простаивающие периодически проверяются.
+ */
+@Slf4j
+@Component
+public class YtDlpWorkerPool {
+
+    /** Скрипт обработчика, поставляемый вместе с приложением */
+    private static final String BUNDLED_SCRIPT = "ytdlp/worker.py";
+
+    /** Максимальное время ответа на проверку работоспособности */
+    private static final Duration PING_TIMEOUT = Duration.ofSeconds(10);
+
+    /** Маппер для сериализации заданий и ответов */
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** Простаивающие обработчики */
+    private final BlockingQueue<YtDlpWorker> idle = new LinkedBlockingQueue<>();
+
+    /** Все запущенные обработчики */
+    private final Set<YtDlpWorker> workers = ConcurrentHashMap.newKeySet();
+
+    /** Контроль времени выполнения заданий */
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("ytdlp-worker-watchdog").daemon().factory());
+
+    /** Признак использования пула вместо запуска yt-dlp на каждый вызов */
+    private final boolean enabled;
+
+    /** Разрешения на использование обработчиков - не больше размера пула */
+    private final Semaphore permits;
+
+    /** Число заданий, после которого обработчик перезапускается */
+    private final int maxJobsPerWorker;
+
+    /** Максимальное время выполнения одного задания */
+    private final Duration jobTimeout;
+
+    /** Интерпретатор Python для запуска обработчиков */
+    private final String python;
+
+    /** Путь к скрипту обработчика (пустой - использовать поставляемый) */
+    private final String script;
+
+    /** Путь к скрипту обработчика, определяется при первом запуске */
+    private volatile Path scriptPath;
+
+    /**
+     * Конструктор с настройкой пула обработчиков.
+     *
+     * @param enabled использовать пул обработчиков в локальном режиме (по умолчанию false)
+     * @param size максимальное число обработчиков (по умолчанию 4)
+     * @param maxJobsPerWorker число заданий до перезапуска обработчика (по умолчанию 100)
+     * @param jobTimeoutSeconds максимальное время выполнения задания в секундах (по умолчанию 600)
+     * @param python интерпретатор Python (по умолчанию python3)
+     * @param script путь к скрипту обработчика (по умолчанию поставляемый)
+     */
+    public YtDlpWorkerPool(
+            @Value("${downloader.ytdlp.worker-pool.enabled:false}") boolean enabled,
+            @Value("${downloader.ytdlp.worker-pool.size:4}") int size,
+            @Value("${downloader.ytdlp.worker-pool.max-jobs-per-worker:100}") int maxJobsPerWorker,
+            @Value("${downloader.ytdlp.worker-pool.job-timeout-seconds:600}") int jobTimeoutSeconds,
+            @Value("${downloader.ytdlp.worker-pool.python:python3}") String python,
+            @Value("${downloader.ytdlp.worker-pool.script:}") String script) {
+        this.enabled = enabled;
+        this.permits = new Semaphore(size, true);
+        this.maxJobsPerWorker = maxJobsPerWorker;
+        this.jobTimeout = Duration.ofSeconds(jobTimeoutSeconds);
+        this.python = python;
+        this.script = script;
+    }
+
+    /**
+     * Проверяет, включен ли пул обработчиков.
+     *
+     * @return true если задания yt-dlp выполняются в пуле
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Извлекает информацию о контенте и при необходимости загружает его.
+     *
+     * @param url URL контента
+     * @param download загружать ли файл
+     * @param options параметры YoutubeDL в дополнение к базовым
+     * @return ответ обработчика: {@code result} с информацией и {@code filepath} с путем к файлу
+     * @throws DownloadException если yt-dlp завершил задание с ошибкой
+     * @throws IOException если обработчик не смог выполнить задание
+     * @throws InterruptedException если ожидание обработчика было прервано
+     */
+    public JsonNode extract(String url, boolean download, ObjectNode options)
+            throws IOException, InterruptedException {
+        ObjectNode request = objectMapper.createObjectNode()
+                .put("op", "extract")
+                .put("url", url)
+                .put("download", download);
+        request.set("options", options);
+
+        JsonNode response = execute(request);
+        if (!response.path("ok").asBoolean()) {
+            throw new DownloadException(response.path("error").asText("Ошибка обработчика yt-dlp"));
+        }
+        return response;
+    }
+
+    /**
+     * Возвращает число запущенных обработчиков.
+     *
+     * @return число живых процессов пула
+     */
+    public int workerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Проверяет простаивающие обработчики и заменяет неработоспособные.
+     * Обработчики, занятые заданиями, не проверяются.
+     */
+    @Scheduled(fixedDelayString = "${downloader.ytdlp.worker-pool.health-check-interval-ms:30000}")
+    public void checkHealth() {
+        if (!enabled) {
+            return;
+        }
+        int checked = idle.size();
+        for (int i = 0; i < checked && permits.tryAcquire(); i++) {
+            try {
+                YtDlpWorker worker = idle.poll();
+                if (worker == null) {
+                    break;
+                }
+                if (isHealthy(worker)) {
+                    idle.offer(worker);
+                } else {
+                    log.warn("Обработчик yt-dlp {} не отвечает, перезапускаем", worker.pid());
+                    discard(worker);
+                    idle.offer(startWorker());
+                }
+            } catch (IOException e) {
+                log.error("Не удалось перезапустить обработчик yt-dlp", e);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Останавливает все обработчики при завершении приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        workers.forEach(this::discard);
+        idle.clear();
+    }
+
+    /**
+     * Выполняет задание на свободном обработчике.
+     * Если обработчик аварийно завершился, задание один раз повторяется на новом.
+     * Задание, превысившее время выполнения, не повторяется.
+     *
+     * @param request задание без идентификатора
+     * @return ответ обработчика
+     * @throws IOException если задание не удалось выполнить
+     * @throws InterruptedException если ожидание обработчика было прервано
+     */
+    JsonNode execute(ObjectNode request) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                YtDlpWorker worker = takeWorker();
+                try {
+                    JsonNode response = worker.call(request, jobTimeout, watchdog);
+                    returnWorker(worker);
+                    return response;
+                } catch (InterruptedIOException e) {
+                    discard(worker);
+                    throw e;
+                } catch (IOException e) {
+                    discard(worker);
+                    if (attempt > 1) {
+                        throw e;
+                    }
+                    log.warn("Обработчик yt-dlp {} завершился аварийно, повторяем задание на новом", worker.pid());
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Берет простаивающий живой обработчик или запускает новый.
+     * Вызывается только при наличии разрешения.
+     *
+     * @return обработчик для выполнения задания
+     * @throws IOException если новый обработчик не удалось запустить
+     */
+    private YtDlpWorker takeWorker() throws IOException {
+        YtDlpWorker worker;
+        while ((worker = idle.poll()) != null) {
+            if (worker.isAlive()) {
+                return worker;
+            }
+            log.warn("Обработчик yt-dlp {} завершился во время простоя", worker.pid());
+            discard(worker);
+        }
+        return startWorker();
+    }
+
+    /**
+     * Возвращает обработчик в пул или перезапускает его после исчерпания лимита заданий.
+     *
+     * @param worker обработчик, выполнивший задание
+     */
+    private void returnWorker(YtDlpWorker worker) {
+        if (worker.completedJobs() >= maxJobsPerWorker) {
+            log.info("Обработчик yt-dlp {} выполнил {} заданий, перезапускаем", worker.pid(), worker.completedJobs());
+            discard(worker);
+        } else if (worker.isAlive()) {
+            idle.offer(worker);
+        } else {
+            discard(worker);
+        }
+    }
+
+    /**
+     * Проверяет, отвечает ли обработчик на задания.
+     *
+     * @param worker проверяемый обработчик
+     * @return true если обработчик ответил на ping
+     */
+    private boolean isHealthy(YtDlpWorker worker) {
+        if (!worker.isAlive()) {
+            return false;
+        }
+        try {
+            ObjectNode ping = objectMapper.createObjectNode().put("op", "ping");
+            return worker.call(ping, PING_TIMEOUT, watchdog).path("ok").asBoolean();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Запускает новый обработчик.
+     *
+     * @return запущенный обработчик
+     * @throws IOException если процесс не удалось запустить
+     */
+    private YtDlpWorker startWorker() throws IOException {
+        YtDlpWorker worker = YtDlpWorker.start(List.of(python, resolveScript().toString()), objectMapper);
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * Останавливает обработчик и исключает его из пула.
+     *
+     * @param worker обработчик для остановки
+     */
+    private void discard(YtDlpWorker worker) {
+        workers.remove(worker);
+        worker.destroy();
+    }
+
+    /**
+     * Определяет путь к скрипту обработчика.
+     * Поставляемый скрипт извлекается из classpath во временный файл при первом запуске.
+     *
+     * @return путь к скрипту обработчика
+     * @throws IOException если скрипт не удалось извлечь
+     */
+    private Path resolveScript() throws IOException {
+        Path path = scriptPath;
+        if (path != null) {
+            return path;
+        }
+        synchronized (this) {
+            if (scriptPath == null) {
+                if (!script.isBlank()) {
+                    scriptPath = Path.of(script);
+                } else {
+                    Path extracted = Files.createTempFile("ytdlp-worker", ".py");
+                    extracted.toFile().deleteOnExit();
+                    try (InputStream in = new ClassPathResource(BUNDLED_SCRIPT).getInputStream()) {
+                        Files.copy(in, extracted, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    scriptPath = extracted;
+                }
+            }
+            return scriptPath;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package top.firlian.downloader.application;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import top.firlian.downloader.domain.model.AccessRecord;
+import top.firlian.downloader.domain.port.AccessLog;
+import top.firlian.downloader.domain.port.CacheRepository;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Прогрев и упреждающее обновление кэша по журналу обращений.
+ * При запуске заранее загружает самые популярные медиа, которых нет в кэше,
+ * а по расписанию обновляет популярные записи незадолго до их истечения,
+ * чтобы следующий запрос не ждал загрузку заново. Записи с file_id Telegram
+ * не загружаются заново, а продлеваются.
+ * Загрузки выполняются с низким приоритетом после пользовательских,
+ * а число одновременно выполняемых фоновых загрузок ограничено бюджетом.
+ */
+@Slf4j
+@Component
+public class CacheWarmer {
+
+    private final DownloadService downloadService;
+    private final CacheRepository cacheRepository;
+    private final AccessLog accessLog;
+
+    /** Сколько самых популярных медиа загружать при запуске */
+    private final int warmUpTopN;
+
+    /** За сколько до истечения обновлять запись */
+    private final Duration refreshAhead;
+
+    /** Минимальная частота обращений, при которой запись обновляется */
+    private final double refreshMinScore;
+
+    /** Максимальное число одновременных фоновых загрузок */
+    private final int budget;
+
+    /** Ключи выполняющихся фоновых загрузок */
+    private final Set<String> inFlight = new HashSet<>();
+
+    /** Медиа для прогрева, ожидающие свободного места в бюджете */
+    private final Queue<AccessRecord> pending = new ArrayDeque<>();
+
+    /**
+     * Конструктор с настройкой прогрева и обновления.
+     *
+     * @param downloadService сервис загрузки
+     * @param cacheRepository репозиторий кэша
+     * @param accessLog журнал обращений
+     * @param warmUpTopN сколько самых популярных медиа загружать при запуске (0 - не загружать)
+     * @param refreshAheadMinutes за сколько минут до истечения обновлять запись (0 - не обновлять)
+     * @param refreshMinScore минимальная частота обращений для обновления записи
+     * @param budget максимальное число одновременных фоновых загрузок
+     */
+    public CacheWarmer(
+            DownloadService downloadService,
+            CacheRepository cacheRepository,
+            AccessLog accessLog,
+            @Value("${downloader.warmup.top-n:20}") int warmUpTopN,
+            @Value("${downloader.warmup.refresh-ahead-minutes:60}") long refreshAheadMinutes,
+            @Value("${downloader.warmup.refresh-min-score:3}") double refreshMinScore,
+            @Value("${downloader.warmup.budget:2}") int budget) {
+        this.downloadService = downloadService;
+        this.cacheRepository = cacheRepository;
+        this.accessLog = accessLog;
+        this.warmUpTopN = warmUpTopN;
+        this.refreshAhead = Duration.ofMinutes(refreshAheadMinutes);
+        this.refreshMinScore = refreshMinScore;
+        this.budget = budget;
+    }
+
+    /**
+     * Запускает прогрев кэша после запуска приложения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        warmUp();
+    }
+
+    /**
+     * Загружает самые популярные медиа, которых нет в кэше.
+     * Записи, восстановленные из индекса кэша, повторно не загружаются.
+     * Сверх бюджета медиа ждут завершения предыдущих фоновых загрузок.
+     *
+     * @return число медиа, поставленных на прогрев
+     */
+    int warmUp() {
+        int queued = 0;
+        synchronized (this) {
+            for (AccessRecord record : accessLog.top(warmUpTopN)) {
+                if (cacheRepository.expiresIn(record.getKey()).isEmpty()) {
+                    pending.add(record);
+                    queued++;
+                }
+            }
+        }
+        if (queued > 0) {
+            log.info("Прогрев кэша: {} популярных медиа", queued);
+        }
+        drain();
+        return queued;
+    }
+
+    /**
+     * Запускает упреждающее обновление кэша по расписанию.
+     * Интервал настраивается через {@code downloader.warmup.refresh-interval-ms}.
+     */
+    @Scheduled(fixedDelayString = "${downloader.warmup.refresh-interval-ms:300000}")
+    public void onRefreshSchedule() {
+        refreshExpiring();
+    }
+
+    /**
+     * Обновляет популярные записи, истекающие в ближайшее время, в пределах бюджета.
+     * Запись с file_id Telegram не загружается заново: она отправляется по file_id,
+     * поэтому ее срок жизни просто продлевается.
+     *
+     * @return число обновленных записей: запущенных загрузок и продленных записей
+     */
+    int refreshExpiring() {
+        if (refreshAhead.isZero()) {
+            return 0;
+        }
+        List<AccessRecord> selected = new ArrayList<>();
+        int renewed = 0;
+        synchronized (this) {
+            for (AccessRecord record : accessLog.top(budget * 10)) {
+                if (record.getScore() < refreshMinScore) {
+                    break;
+                }
+                Optional<Duration> expiresIn = cacheRepository.expiresIn(record.getKey());
+                if (expiresIn.isEmpty() || expiresIn.get().compareTo(refreshAhead) >= 0) {
+                    continue;
+                }
+                if (hasTelegramFile(record.getKey())) {
+                    if (cacheRepository.renew(record.getKey())) {
+                        renewed++;
+                    }
+                } else if (reserve(record)) {
+                    selected.add(record);
+                }
+            }
+        }
+        if (!selected.isEmpty() || renewed > 0) {
+            log.info("Упреждающее обновление кэша: запущено {} фоновых загрузок, продлено {} записей с file_id",
+                    selected.size(), renewed);
+        }
+        selected.forEach(this::start);
+        return selected.size() + renewed;
+    }
+
+    /**
+     * Проверяет, отправлялась ли запись в Telegram. Загрузка заменила бы такую запись
+     * записью без file_id, и файл пришлось бы загружать в Telegram заново.
+     *
+     * @param key ключ медиа
+     * @return true, если у записи есть file_id Telegram
+     */
+    private boolean hasTelegramFile(String key) {
+        return cacheRepository.peek(key)
+                .map(content -> content.getTelegramFileId() != null)
+                .orElse(false);
+    }
+
+    /**
+     * Запускает ожидающие прогрева загрузки в пределах бюджета.
+     * Медиа, успевшие попасть в кэш по запросу пользователя, пропускаются.
+     */
+    private void drain() {
+        List<AccessRecord> selected = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight.size() < budget && !pending.isEmpty()) {
+                AccessRecord record = pending.poll();
+                if (cacheRepository.expiresIn(record.getKey()).isEmpty() && reserve(record)) {
+                    selected.add(record);
+                }
+            }
+        }
+        selected.forEach(this::start);
+    }
+
+    /**
+     * Занимает место в бюджете, если он не исчерпан и медиа еще не загружается.
+     * Вызывается под блокировкой.
+     *
+     * @param record запись журнала обращений
+     * @return true, если место занято
+     */
+    private boolean reserve(AccessRecord record) {
+        return inFlight.size() < budget && inFlight.add(record.getKey());
+    }
+
+    /**
+     * Запускает фоновую загрузку вне блокировки: загрузка может завершиться
+     * в потоке планировщика загрузок, который держит собственную блокировку.
+     *
+     * @param record запись журнала обращений
+     */
+    private void start(AccessRecord record) {
+        String key = record.getKey();
+        downloadService.prefetch(record.getUrl(), record.getItemIndex())
+                .doFinally(signal -> finish(key))
+                .subscribe(
+                        content -> log.debug("Фоновая загрузка завершена: {}", key),
+                        error -> log.warn("Фоновая загрузка не удалась: {}: {}", key, error.getMessage()));
+    }
+
+    /**
+     * Освобождает место в бюджете после фоновой загрузки и запускает следующую.
+     *
+     * @param key ключ медиа
+     */
+    private void finish(String key) {
+        synchronized (this) {
+            inFlight.remove(key);
+        }
+        drain();
+    }
+}
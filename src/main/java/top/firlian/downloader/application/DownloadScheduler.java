@@ -0,0 +1,283 @@
+package top.firlian.downloader.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.SignalType;
+import top.firlian.downloader.domain.error.DownloadException;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
+import top.firlian.downloader.domain.model.DownloadTask;
+import top.firlian.downloader.domain.model.Provider;
+import top.firlian.downloader.domain.port.TaskQueue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Планировщик загрузок - пул обработчиков очереди задач.
+ * Задачи ставятся в {@link TaskQueue} и забираются обработчиками по приоритету
+ * и порядку поступления. Одновременно выполняется не более заданного числа задач,
+ * дополнительно ограничивая число задач для каждого провайдера.
+ * Публикует метрики глубины очереди и времени ожидания.
+ */
+@Slf4j
+@Component
+public class DownloadScheduler {
+
+    /** Очередь задач загрузки */
+    private final TaskQueue taskQueue;
+
+    /** Число обработчиков - максимальное число одновременных загрузок */
+    private final int maxConcurrent;
+
+    /** Максимальное число загрузок, ожидающих в очереди */
+    private final int maxQueueSize;
+
+    /** Лимиты одновременных загрузок по провайдерам */
+    private final Map<Provider, Integer> providerLimits = new EnumMap<>(Provider.class);
+
+    /** Число выполняющихся загрузок по провайдерам */
+    private final Map<Provider, Integer> activeByProvider = new EnumMap<>(Provider.class);
+
+    /** Заявки, ожидающие допуска, по ключу задачи */
+    private final Map<String, Ticket> waiting = new HashMap<>();
+
+    /** Таймеры времени ожидания в очереди по провайдерам */
+    private final Map<Provider, Timer> waitTimers = new EnumMap<>(Provider.class);
+
+    /** Счетчик загрузок, отклоненных из-за переполнения очереди */
+    private final Counter rejectedCounter;
+
+    /** Общее число выполняющихся загрузок */
+    private int activeTotal;
+
+    /**
+     * Конструктор с настройкой лимитов параллелизма.
+     *
+     * @param taskQueue очередь задач загрузки
+     * @param maxConcurrent число обработчиков - максимальное число одновременных загрузок
+     * @param maxQueueSize максимальное число загрузок в очереди
+     * @param youtubeLimit лимит одновременных загрузок с YouTube
+     * @param vkLimit лимит одновременных загрузок с VK
+     * @param instagramLimit лимит одновременных загрузок с Instagram
+     * @param meterRegistry реестр метрик
+     */
+    public DownloadScheduler(
+            TaskQueue taskQueue,
+            @Value("${downloader.scheduler.max-concurrent:4}") int maxConcurrent,
+            @Value("${downloader.scheduler.max-queue-size:500}") int maxQueueSize,
+            @Value("${downloader.scheduler.provider-limits.youtube:3}") int youtubeLimit,
+            @Value("${downloader.scheduler.provider-limits.vk:2}") int vkLimit,
+            @Value("${downloader.scheduler.provider-limits.instagram:1}") int instagramLimit,
+            MeterRegistry meterRegistry) {
+        this.taskQueue = taskQueue;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueueSize = maxQueueSize;
+        providerLimits.put(Provider.YOUTUBE, youtubeLimit);
+        providerLimits.put(Provider.VK, vkLimit);
+        providerLimits.put(Provider.INSTAGRAM, instagramLimit);
+        providerLimits.put(Provider.UNKNOWN, maxConcurrent);
+
+        for (Provider provider : Provider.values()) {
+            activeByProvider.put(provider, 0);
+            String tag = provider.name().toLowerCase();
+            Gauge.builder("downloader.scheduler.queue.depth", this, s -> s.pendingCount(provider))
+                    .description("Число загрузок, ожидающих в очереди")
+                    .tag("provider", tag)
+                    .register(meterRegistry);
+            Gauge.builder("downloader.scheduler.active", this, s -> s.activeCount(provider))
+                    .description("Число выполняющихся загрузок")
+                    .tag("provider", tag)
+                    .register(meterRegistry);
+            waitTimers.put(provider, Timer.builder("downloader.scheduler.wait")
+                    .description("Время ожидания загрузки в очереди")
+                    .tag("provider", tag)
+                    .register(meterRegistry));
+        }
+        this.rejectedCounter = Counter.builder("downloader.scheduler.rejected")
+                .description("Число загрузок, отклоненных из-за переполнения очереди")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ставит задачу в очередь и выполняет загрузку, когда её заберет обработчик.
+     * Работа запускается только когда свободны и обработчик, и лимит провайдера.
+     * По завершении задача отмечается в очереди как COMPLETED или FAILED,
+     * а обработчик освобождается при завершении, ошибке или отмене загрузки.
+     *
+     * @param task задача загрузки
+     * @param work фабрика загрузки, вызываемая после допуска
+     * @param <T> тип результата загрузки
+     * @return Mono с результатом загрузки
+     */
+    public <T> Mono<T> schedule(DownloadTask task, Supplier<Mono<T>> work) {
+        return Mono.defer(() -> {
+            Ticket ticket = new Ticket(task.getKey(), task.getProvider());
+            return Mono.<Void>create(sink -> enqueue(task, ticket, sink))
+                    .then(Mono.defer(work)
+                            .doOnSuccess(result -> taskQueue.completeTask(ticket.key))
+                            .doOnError(error -> taskQueue.failTask(ticket.key, error.getMessage())))
+                    .doFinally(signal -> release(ticket, signal));
+        });
+    }
+
+    /**
+     * Возвращает число загрузок провайдера, ожидающих в очереди.
+     *
+     * @param provider провайдер контента
+     * @return глубина очереди провайдера
+     */
+    public int pendingCount(Provider provider) {
+        return taskQueue.pendingCount(provider);
+    }
+
+    /**
+     * Возвращает число выполняющихся загрузок провайдера.
+     *
+     * @param provider провайдер контента
+     * @return число активных загрузок провайдера
+     */
+    public synchronized int activeCount(Provider provider) {
+        return activeByProvider.get(provider);
+    }
+
+    /**
+     * Ставит задачу в очередь или отклоняет её при переполнении очереди.
+     *
+     * @param task задача загрузки
+     * @param ticket заявка на допуск
+     * @param sink сигнал допуска заявки к выполнению
+     */
+    private void enqueue(DownloadTask task, Ticket ticket, MonoSink<Void> sink) {
+        DownloadException rejection = null;
+        synchronized (this) {
+            int pendingTotal = totalPending();
+            if (pendingTotal >= maxQueueSize) {
+                rejectedCounter.increment();
+                log.warn("Очередь загрузок переполнена ({}), задача {} отклонена", pendingTotal, task.getKey());
+                rejection = new DownloadRejectedException("Слишком много загрузок. Попробуйте позже");
+            } else if (!taskQueue.addTask(task)) {
+                rejection = new DownloadException("Загрузка уже выполняется");
+            } else {
+                ticket.sink = sink;
+                waiting.put(ticket.key, ticket);
+            }
+        }
+        if (rejection != null) {
+            sink.error(rejection);
+            return;
+        }
+        drain();
+    }
+
+    /**
+     * Освобождает обработчик выполнившейся заявки или убирает из очереди отмененную.
+     *
+     * @param ticket заявка на допуск
+     * @param signal сигнал завершения загрузки
+     */
+    private void release(Ticket ticket, SignalType signal) {
+        boolean cancelled = false;
+        synchronized (this) {
+            if (ticket.admitted) {
+                activeTotal--;
+                activeByProvider.merge(ticket.provider, -1, Integer::sum);
+                cancelled = signal == SignalType.CANCEL;
+            } else if (ticket.sink != null && waiting.remove(ticket.key, ticket)) {
+                cancelled = true;
+            }
+        }
+        if (cancelled) {
+            taskQueue.failTask(ticket.key, "Загрузка отменена");
+        }
+        drain();
+    }
+
+    /**
+     * Раздает задачи из очереди свободным обработчикам, пока позволяют лимиты.
+     * Сигналы допуска отправляются вне блокировки.
+     */
+    private void drain() {
+        List<Admission> admitted = new ArrayList<>();
+        synchronized (this) {
+            while (activeTotal < maxConcurrent) {
+                var next = taskQueue.pollTask(
+                        provider -> activeByProvider.get(provider) < providerLimits.get(provider));
+                if (next.isEmpty()) {
+                    break;
+                }
+                DownloadTask task = next.get();
+                Ticket ticket = waiting.remove(task.getKey());
+                if (ticket == null) {
+                    // Заявка уже отменена - задача не нужна
+                    taskQueue.failTask(task.getKey(), "Загрузка отменена");
+                    continue;
+                }
+                activeTotal++;
+                activeByProvider.merge(ticket.provider, 1, Integer::sum);
+                ticket.admitted = true;
+                admitted.add(new Admission(ticket, task));
+            }
+        }
+
+        for (Admission admission : admitted) {
+            DownloadTask task = admission.task();
+            Duration waited = Duration.between(task.getCreatedAt(), task.getStartedAt());
+            waitTimers.get(task.getProvider()).record(waited);
+            log.debug("Задача {} взята в работу после ожидания {} мс", task.getKey(), waited.toMillis());
+            admission.ticket().sink.success();
+        }
+    }
+
+    /**
+     * Подсчитывает общее число задач, ожидающих в очереди.
+     *
+     * @return число задач в статусе PENDING
+     */
+    private int totalPending() {
+        int total = 0;
+        for (Provider provider : Provider.values()) {
+            total += taskQueue.pendingCount(provider);
+        }
+        return total;
+    }
+
+    /**
+     * Заявка на допуск задачи к выполнению.
+     * Изменяемые поля защищены блокировкой планировщика.
+     */
+    private static final class Ticket {
+        /** Ключ задачи */
+        private final String key;
+        /** Провайдер контента */
+        private final Provider provider;
+        /** Сигнал допуска к выполнению */
+        private MonoSink<Void> sink;
+        /** Признак допуска к выполнению */
+        private boolean admitted;
+
+        private Ticket(String key, Provider provider) {
+            this.key = key;
+            this.provider = provider;
+        }
+    }
+
+    /**
+     * Допуск задачи к выполнению.
+     *
+     * @param ticket заявка на допуск
+     * @param task задача в статусе DOWNLOADING
+     */
+    private record Admission(Ticket ticket, DownloadTask task) {}
+}
@@ -2,21 +2,41 @@ package top.firlian.downloader.application;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 import top.firlian.downloader.domain.error.ContentUnavailableException;
 import top.firlian.downloader.domain.error.DownloadException;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
 import top.firlian.downloader.domain.error.UnsupportedProviderException;
 import top.firlian.downloader.domain.model.*;
+import top.firlian.downloader.domain.port.AccessLog;
 import top.firlian.downloader.domain.port.CacheRepository;
+import top.firlian.downloader.domain.port.ContentStore;
 import top.firlian.downloader.domain.port.MediaDownloader;
+import top.firlian.downloader.domain.port.MetadataRepository;
 import top.firlian.downloader.domain.port.ProviderDetector;
-import top.firlian.downloader.domain.port.TaskQueue;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Сервис обработки загрузки медиа контента.
  * Координирует процесс загрузки: проверяет кэш, определяет провайдера,
  * управляет очередью задач и выполняет загрузку файлов.
+ * Списки элементов плейлистов и отказы для недоступного контента хранятся
+ * в репозитории метаданных, поэтому повторные запросы не запускают извлечение заново.
+ * Кэш и очередь используют канонический ключ медиа, поэтому разные формы
+ * ссылки на одно медиа обслуживаются одной загрузкой и одной записью кэша.
+ * Одновременные запросы одного медиа объединяются в одну загрузку,
+ * а число параллельных загрузок ограничивается планировщиком.
+ * Перед загрузкой менеджер места освобождает директорию загрузок,
+ * если новая загрузка превысит верхнюю отметку заполнения.
+ * Каждый запрос отмечается в журнале обращений, по которому популярный
+ * контент загружается заранее (см. {@link #prefetch}).
  */
 @Slf4j
 @Service
@@ -25,15 +45,26 @@ public class DownloadService {
     private final ProviderDetector providerDetector;
     private final MediaDownloader mediaDownloader;
     private final CacheRepository cacheRepository;
-    private final TaskQueue taskQueue;
+    private final MetadataRepository metadataRepository;
+    private final DownloadScheduler downloadScheduler;
+    private final StorageManager storageManager;
+    private final ContentStore contentStore;
+    private final AccessLog accessLog;
+
+    /** Реестр выполняющихся загрузок: один общий результат на ключ задачи для всех ожидающих чатов */
+    private final Map<String, InFlightDownload> inFlightDownloads = new ConcurrentHashMap<>();
+
+    /** Сохранять ли локальный файл после его загрузки в Telegram */
+    @Value("${downloader.keep-uploaded-files:false}")
+    private boolean keepUploadedFiles;
 
     /**
      * Обрабатывает URL для загрузки медиа контента.
      * Выполняет следующие шаги:
-     * 1. Проверяет наличие контента в кэше
-     * 2. Определяет провайдера контента
-     * 3. Проверяет наличие активной задачи загрузки
-     * 4. Создает новую задачу и выполняет загрузку
+     * 1. Определяет провайдера и канонический ключ медиа
+     * 2. Проверяет наличие контента в кэше, списка элементов и отказа в репозитории метаданных
+     * 3. Присоединяется к уже выполняющейся загрузке этого медиа, если она есть
+     * 4. Иначе ставит новую задачу в очередь и выполняет загрузку
      *
      * @param url URL для загрузки
      * @param chatId ID чата Telegram, запросившего загрузку
@@ -42,58 +73,58 @@ public class DownloadService {
     public Mono<MediaContent> processUrl(String url, Long chatId) {
         log.info("Обработка URL: {} для чата: {}", url, chatId);
 
+        // Определяем провайдера (YouTube, VK, Instagram и т.д.) и ключ медиа
+        MediaKey mediaKey = providerDetector.extractKey(url);
+        String cacheKey = mediaKey.asString();
+        Provider provider = mediaKey.getProvider();
+        if (provider != Provider.UNKNOWN) {
+            accessLog.record(cacheKey, url, null);
+        }
+
         // Сначала проверяем кэш - если контент уже загружен, возвращаем его
-        var cachedContent = cacheRepository.get(url);
+        var cachedContent = cacheRepository.get(cacheKey);
         if (cachedContent.isPresent()) {
-            log.info("Найден кэшированный контент для URL: {}", url);
+            log.info("Найден кэшированный контент для URL: {} ({})", url, cacheKey);
             return Mono.just(cachedContent.get());
         }
 
-        // Определяем провайдера (YouTube, VK, Instagram и т.д.)
-        Provider provider = providerDetector.detectProvider(url);
+        // Плейлист уже перечислен - возвращаем список элементов
+        Optional<MediaMetadata> metadata = metadataRepository.get(cacheKey).filter(MediaMetadata::hasItems);
+        if (metadata.isPresent()) {
+            log.info("Найден кэшированный список элементов для URL: {} ({})", url, cacheKey);
+            return Mono.just(metadata.get().toContent());
+        }
+
+        // Контент недавно оказался недоступен - отказываем без повторного извлечения
+        Optional<ContentUnavailableException> failure = metadataRepository.getFailure(cacheKey);
+        if (failure.isPresent()) {
+            log.info("Найден кэшированный отказ для URL: {} ({})", url, cacheKey);
+            return Mono.error(failure.get());
+        }
+
         if (provider == Provider.UNKNOWN) {
             log.error("Неподдерживаемый провайдер для URL: {}", url);
             throw new UnsupportedProviderException("Источник не поддерживается");
         }
 
-        // Проверяем, не выполняется ли уже загрузка этого URL
-        var existingTask = taskQueue.getTask(url);
-        if (existingTask.isPresent() && existingTask.get().getStatus() == TaskStatus.DOWNLOADING) {
-            log.info("Задача уже выполняется для URL: {}", url);
-            return Mono.error(new DownloadException("Загрузка уже выполняется"));
-        }
-
-        // Создаем новую задачу в очереди
         DownloadTask task = DownloadTask.builder()
                 .url(url)
+                .mediaKey(mediaKey)
                 .provider(provider)
                 .chatId(chatId)
-                .status(TaskStatus.PENDING)
+                .priority(DownloadTask.PRIORITY_NORMAL)
                 .build();
 
-        if (!taskQueue.addTask(task)) {
-            log.warn("Не удалось добавить задачу для URL: {}", url);
-        }
-
-        // Выполняем загрузку и обрабатываем результат
-        return mediaDownloader.download(url)
-                .doOnNext(content -> {
-                    log.info("Загружен контент с URL: {}, размер: {} байт", url, content.getSizeBytes());
-                    // Сохраняем в кэш для повторного использования
-                    cacheRepository.put(url, content);
-                    // Отмечаем задачу как завершенную
-                    taskQueue.completeTask(url);
-                })
-                .doOnError(error -> {
-                    log.error("Ошибка загрузки с URL: {}", url, error);
-                    // Отмечаем задачу как проваленную с сообщением об ошибке
-                    taskQueue.failTask(url, error.getMessage());
-                })
-                .onErrorMap(this::mapError);
+        return submit(task, downloadWork(url, cacheKey));
     }
 
     /**
      * Обрабатывает URL для загрузки конкретного элемента из плейлиста или карусели.
+     * Загруженные элементы кэшируются под ключом медиа с индексом элемента,
+     * одновременные запросы одного элемента объединяются в одну загрузку.
+     * Сведения об элементе берутся из закэшированного списка элементов,
+     * поэтому метаданные плейлиста повторно не извлекаются.
+     * Задача получает повышенный приоритет: пользователь уже дождался списка элементов.
      *
      * @param url URL плейлиста или карусели
      * @param itemIndex индекс элемента для загрузки (начиная с 0)
@@ -103,16 +134,239 @@ public class DownloadService {
     public Mono<MediaContent> processUrlWithIndex(String url, int itemIndex, Long chatId) {
         log.info("Обработка URL: {} с индексом элемента: {} для чата: {}", url, itemIndex, chatId);
 
-        Provider provider = providerDetector.detectProvider(url);
+        MediaKey mediaKey = providerDetector.extractKey(url);
+        Provider provider = mediaKey.getProvider();
         if (provider == Provider.UNKNOWN) {
             throw new UnsupportedProviderException("Источник не поддерживается");
         }
 
-        return mediaDownloader.downloadSpecificItem(url, itemIndex)
-                .doOnNext(content -> {
-                    log.info("Загружен элемент {} с URL: {}", itemIndex, url);
-                })
-                .onErrorMap(this::mapError);
+        DownloadTask task = DownloadTask.builder()
+                .url(url)
+                .itemIndex(itemIndex)
+                .mediaKey(mediaKey.forItem(itemIndex))
+                .provider(provider)
+                .chatId(chatId)
+                .priority(DownloadTask.PRIORITY_HIGH)
+                .build();
+        String cacheKey = task.getKey();
+        accessLog.record(cacheKey, url, itemIndex);
+
+        var cachedContent = cacheRepository.get(cacheKey);
+        if (cachedContent.isPresent()) {
+            log.info("Найден кэшированный элемент: {}", cacheKey);
+            return Mono.just(cachedContent.get());
+        }
+
+        Optional<ContentUnavailableException> failure = metadataRepository.getFailure(cacheKey);
+        if (failure.isPresent()) {
+            log.info("Найден кэшированный отказ для элемента: {}", cacheKey);
+            return Mono.error(failure.get());
+        }
+
+        return submit(task, itemDownloadWork(url, mediaKey, itemIndex));
+    }
+
+    /**
+     * Загружает контент в кэш фоновой задачей с низким приоритетом,
+     * даже если его запись еще не истекла: так популярный контент
+     * обновляется до истечения, а после перезапуска загружается заранее.
+     * Пользовательские запросы этого контента присоединяются к фоновой загрузке.
+     * Контент с недавним отказом не загружается.
+     *
+     * @param url URL контента
+     * @param itemIndex индекс элемента (null для контента по URL целиком)
+     * @return Mono с загруженным контентом, пустой, если загрузка пропущена
+     */
+    public Mono<MediaContent> prefetch(String url, Integer itemIndex) {
+        MediaKey mediaKey = providerDetector.extractKey(url);
+        if (mediaKey.getProvider() == Provider.UNKNOWN) {
+            return Mono.empty();
+        }
+
+        DownloadTask task = DownloadTask.builder()
+                .url(url)
+                .itemIndex(itemIndex)
+                .mediaKey(mediaKey.forItem(itemIndex))
+                .provider(mediaKey.getProvider())
+                .priority(DownloadTask.PRIORITY_LOW)
+                .build();
+        String cacheKey = task.getKey();
+
+        if (metadataRepository.getFailure(cacheKey).isPresent()) {
+            log.debug("Предзагрузка пропущена из-за кэшированного отказа: {}", cacheKey);
+            return Mono.empty();
+        }
+
+        log.info("Предзагрузка контента: {}", cacheKey);
+        return submit(task, itemIndex == null
+                ? downloadWork(url, cacheKey)
+                : itemDownloadWork(url, mediaKey, itemIndex));
+    }
+
+    /**
+     * Создает загрузку контента по URL целиком с сохранением результата.
+     * Сохранение выполняется внутри общей загрузки, поэтому один раз.
+     *
+     * @param url URL контента
+     * @param cacheKey ключ медиа
+     * @return фабрика загрузки
+     */
+    private Supplier<Mono<MediaContent>> downloadWork(String url, String cacheKey) {
+        // Размер известен, если метаданные остались после вытеснения файла из кэша
+        long knownSize = metadataRepository.get(cacheKey).map(MediaMetadata::getSizeBytes).orElse(0L);
+
+        return () -> storageManager.ensureSpace(knownSize)
+                .then(Mono.defer(() -> mediaDownloader.download(url)))
+                .doOnNext(content -> store(cacheKey, content));
+    }
+
+    /**
+     * Создает загрузку элемента плейлиста или карусели с сохранением результата.
+     *
+     * @param url URL плейлиста или карусели
+     * @param mediaKey ключ медиа плейлиста
+     * @param itemIndex индекс элемента
+     * @return фабрика загрузки
+     */
+    private Supplier<Mono<MediaContent>> itemDownloadWork(String url, MediaKey mediaKey, int itemIndex) {
+        String cacheKey = mediaKey.forItem(itemIndex).asString();
+        Optional<MediaItem> knownItem = metadataRepository.get(mediaKey.asString())
+                .map(MediaMetadata::getItems)
+                .flatMap(items -> items.stream().filter(item -> item.getIndex() == itemIndex).findFirst());
+
+        long knownSize = knownItem.map(MediaItem::getSizeBytes).orElse(0L);
+
+        return () -> storageManager.ensureSpace(knownSize)
+                .then(Mono.defer(() -> knownItem
+                        .map(item -> mediaDownloader.downloadSpecificItem(url, item))
+                        .orElseGet(() -> mediaDownloader.downloadSpecificItem(url, itemIndex))))
+                .doOnNext(content -> store(cacheKey, content));
+    }
+
+    /**
+     * Сохраняет результат загрузки: метаданные - в репозиторий метаданных,
+     * загруженный файл - в кэш и в очередь на дедупликацию. Список элементов
+     * без файла хранится только в репозитории метаданных.
+     *
+     * @param key ключ медиа или элемента
+     * @param content загруженный контент
+     */
+    private void store(String key, MediaContent content) {
+        MediaMetadata metadata = MediaMetadata.of(content);
+        metadataRepository.put(key, metadata);
+        if (!metadata.hasItems()) {
+            cacheRepository.put(key, content);
+            contentStore.deduplicate(content.getFilePath());
+        }
+    }
+
+    /**
+     * Запоминает file_id, полученный от Telegram после отправки файла.
+     * Повторные отправки этого контента используют file_id без повторной
+     * загрузки файла в Telegram, поэтому локальный файл удаляется,
+     * если не включено его сохранение.
+     *
+     * @param url URL контента
+     * @param itemIndex индекс элемента (null для контента по URL целиком)
+     * @param fileId file_id отправленного файла
+     * @param fileUniqueId file_unique_id отправленного файла
+     */
+    public void rememberTelegramFile(String url, Integer itemIndex, String fileId, String fileUniqueId) {
+        String cacheKey = providerDetector.extractKey(url).forItem(itemIndex).asString();
+        cacheRepository.get(cacheKey)
+                .filter(content -> content.getTelegramFileId() == null)
+                .ifPresent(content -> {
+                    cacheRepository.put(cacheKey, content.toBuilder()
+                            .telegramFileId(fileId)
+                            .telegramFileUniqueId(fileUniqueId)
+                            .filePath(keepUploadedFiles ? content.getFilePath() : null)
+                            .build());
+                    log.debug("Сохранен file_id для {}: {}", cacheKey, fileUniqueId);
+                });
+    }
+
+    /**
+     * Возвращает контент взамен не удавшегося к отправке: file_id отклонен
+     * Telegram или локальный файл уже удален.
+     * Если в кэше уже есть другая версия контента, возвращается она.
+     * Отклоненный file_id при сохраненном файле забывается, иначе запись
+     * удаляется из кэша и контент загружается заново.
+     *
+     * @param url URL контента
+     * @param itemIndex индекс элемента (null для контента по URL целиком)
+     * @param chatId ID чата Telegram
+     * @param failed контент, который не удалось отправить
+     * @return Mono с контентом для повторной отправки
+     */
+    public Mono<MediaContent> reloadContent(String url, Integer itemIndex, Long chatId, MediaContent failed) {
+        String cacheKey = providerDetector.extractKey(url).forItem(itemIndex).asString();
+        Optional<MediaContent> cachedContent = cacheRepository.get(cacheKey);
+        if (cachedContent.isPresent() && !cachedContent.get().equals(failed)) {
+            return Mono.just(cachedContent.get());
+        }
+
+        if (failed.getTelegramFileId() != null && failed.getFilePath() != null) {
+            log.info("Telegram отклонил file_id, файл будет отправлен заново: {}", cacheKey);
+            MediaContent content = failed.toBuilder()
+                    .telegramFileId(null)
+                    .telegramFileUniqueId(null)
+                    .build();
+            cacheRepository.put(cacheKey, content);
+            return Mono.just(content);
+        }
+
+        log.info("Контент для повторной отправки недоступен, загружаем заново: {}", cacheKey);
+        cacheRepository.remove(cacheKey);
+        return itemIndex == null
+                ? processUrl(url, chatId)
+                : processUrlWithIndex(url, itemIndex, chatId);
+    }
+
+    /**
+     * Присоединяет чат к выполняющейся загрузке с тем же ключом задачи
+     * или атомарно запускает новую.
+     *
+     * @param task задача загрузки
+     * @param work фабрика загрузки, вызываемая обработчиком очереди
+     * @return Mono с общим результатом загрузки
+     */
+    private Mono<MediaContent> submit(DownloadTask task, Supplier<Mono<MediaContent>> work) {
+        InFlightDownload download = inFlightDownloads.computeIfAbsent(task.getKey(),
+                key -> startDownload(task, work));
+        // Фоновые задачи не привязаны к чату
+        if (task.getChatId() == null) {
+            return download.result();
+        }
+        if (download.chatIds().add(task.getChatId()) && download.chatIds().size() > 1) {
+            log.info("Чат {} присоединен к выполняющейся загрузке: {}", task.getChatId(), task.getKey());
+        }
+        return download.result();
+    }
+
+    /**
+     * Создает общую загрузку для задачи.
+     * Результат кэшируется и раздается всем подписчикам, а запись реестра
+     * удаляется после завершения загрузки успехом или ошибкой.
+     *
+     * @param task задача загрузки
+     * @param work фабрика загрузки
+     * @return запись реестра выполняющихся загрузок
+     */
+    private InFlightDownload startDownload(DownloadTask task, Supplier<Mono<MediaContent>> work) {
+        Set<Long> chatIds = ConcurrentHashMap.newKeySet();
+        String key = task.getKey();
+
+        // Ставим задачу в очередь и обрабатываем результат
+        Mono<MediaContent> result = downloadScheduler.schedule(task, work)
+                .doOnNext(content -> log.info("Загружен контент: {}, размер: {} байт, ожидающих чатов: {}",
+                        key, content.getSizeBytes(), chatIds.size()))
+                .doOnError(error -> log.error("Ошибка загрузки: {}", key, error))
+                .doOnError(ContentUnavailableException.class, error -> metadataRepository.putFailure(key, error))
+                .onErrorMap(this::mapError)
+                .doFinally(signal -> inFlightDownloads.remove(key))
+                .cache();
+
+        return new InFlightDownload(result, chatIds);
     }
 
     /**
@@ -129,6 +383,17 @@ public class DownloadService {
         if (error instanceof UnsupportedProviderException) {
             return error;
         }
+        if (error instanceof DownloadRejectedException) {
+            return error;
+        }
         return new DownloadException("Ошибка загрузки. Попробуйте позже", error);
     }
+
+    /**
+     * Выполняющаяся загрузка, общая для всех запросивших её чатов.
+     *
+     * @param result общий кэширующий результат загрузки
+     * @param chatIds ID чатов, ожидающих результат
+     */
+    private record InFlightDownload(Mono<MediaContent> result, Set<Long> chatIds) {}
 }
@@ -0,0 +1,333 @@
+package top.firlian.downloader.application;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import top.firlian.downloader.domain.model.CachedFile;
+import top.firlian.downloader.domain.port.CacheRepository;
+import top.firlian.downloader.domain.port.ContentStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Менеджер места в директории загрузок.
+ * Когда занятое место превышает верхнюю отметку, удаляет файлы, начиная с наименее
+ * ценных, пока занятое место не опустится до нижней отметки. Отметки задаются
+ * в байтах (учитывается размер директории загрузок) или в процентах
+ * (учитывается заполнение файловой системы).
+ * Первыми удаляются давно не изменявшиеся файлы, не принадлежащие кэшу
+ * (остатки прерванных загрузок). Файлы кэша освобождаются через кэш,
+ * поэтому ни одна запись не ссылается на удаленный файл. Жесткие ссылки
+ * на одно содержимое (см. {@link ContentStore}) учитываются один раз.
+ * Проверка выполняется по расписанию и перед каждой загрузкой.
+ */
+@Slf4j
+@Component
+public class StorageManager {
+
+    private static final double MB = 1024.0 * 1024;
+    private static final double HOUR_MILLIS = 60 * 60 * 1000.0;
+
+    private final CacheRepository cacheRepository;
+    private final ContentStore contentStore;
+    private final Path downloadDir;
+    private final Watermark highWatermark;
+    private final Watermark lowWatermark;
+    private final long orphanGraceMillis;
+    private final long expectedDownloadBytes;
+    private final Scheduler blockingScheduler;
+
+    /**
+     * Конструктор с настройкой отметок заполнения.
+     *
+     * @param cacheRepository репозиторий кэша, через который освобождаются файлы записей
+     * @param contentStore хранилище содержимого, блоки которого освобождаются вместе с последней ссылкой
+     * @param downloadDir директория загрузок
+     * @param highWatermark верхняя отметка: размер (например, {@code 50GB}) или процент ({@code 90%})
+     * @param lowWatermark нижняя отметка, до которой освобождается место
+     * @param orphanGraceMinutes возраст файла вне кэша, после которого он считается брошенным
+     * @param expectedDownloadMb ожидаемый размер загрузки, если он неизвестен заранее
+     * @param blockingScheduler планировщик для обхода директории
+     */
+    public StorageManager(
+            CacheRepository cacheRepository,
+            ContentStore contentStore,
+            @Value("${downloader.download-dir:./downloads}") String downloadDir,
+            @Value("${downloader.storage.high-watermark:90%}") String highWatermark,
+            @Value("${downloader.storage.low-watermark:80%}") String lowWatermark,
+            @Value("${downloader.storage.orphan-grace-minutes:60}") long orphanGraceMinutes,
+            @Value("${downloader.storage.expected-download-mb:100}") long expectedDownloadMb,
+            Scheduler blockingScheduler) {
+        this.cacheRepository = cacheRepository;
+        this.contentStore = contentStore;
+        this.downloadDir = Path.of(downloadDir).toAbsolutePath().normalize();
+        this.highWatermark = Watermark.parse(highWatermark);
+        this.lowWatermark = Watermark.parse(lowWatermark);
+        if (this.highWatermark.percent != this.lowWatermark.percent) {
+            throw new IllegalArgumentException("Отметки заполнения должны быть заданы одинаково: в байтах или в процентах");
+        }
+        this.orphanGraceMillis = orphanGraceMinutes * 60 * 1000;
+        this.expectedDownloadBytes = expectedDownloadMb * 1024 * 1024;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    /**
+     * Освобождает место перед загрузкой, если она превысит верхнюю отметку.
+     *
+     * @param knownSizeBytes размер загрузки, если он известен, иначе 0
+     * @return Mono, завершающийся после освобождения места
+     */
+    public Mono<Void> ensureSpace(long knownSizeBytes) {
+        long incoming = knownSizeBytes > 0 ? knownSizeBytes : expectedDownloadBytes;
+        return Mono.<Void>fromRunnable(() -> enforce(incoming))
+                .subscribeOn(blockingScheduler)
+                .onErrorResume(error -> {
+                    log.warn("Не удалось освободить место перед загрузкой: {}", error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Выполняет плановую проверку заполнения директории загрузок.
+     * Интервал выполнения настраивается через свойство
+     * {@code downloader.storage.check-interval-ms} (по умолчанию 5 минут).
+     */
+    @Scheduled(fixedRateString = "${downloader.storage.check-interval-ms:300000}")
+    public void checkUsage() {
+        log.debug("Запуск плановой проверки места в директории загрузок");
+        contentStore.collectGarbage();
+        enforce(0);
+    }
+
+    /**
+     * Освобождает место, если занятое место вместе с ожидаемой загрузкой
+     * превышает верхнюю отметку.
+     *
+     * @param incomingBytes ожидаемый размер новой загрузки
+     * @return число освобожденных байт
+     */
+    synchronized long enforce(long incomingBytes) {
+        if (!Files.isDirectory(downloadDir)) {
+            return 0;
+        }
+        try {
+            // В процентном режиме заполнение известно без обхода директории
+            FileStore store = highWatermark.percent ? Files.getFileStore(downloadDir) : null;
+            long capacity = store != null ? store.getTotalSpace() : 0;
+            long high = highWatermark.bytes(capacity);
+            long used = store != null ? usedSpace(store) : 0;
+            if (store != null && used + incomingBytes <= high) {
+                return 0;
+            }
+            List<Candidate> files = scan();
+            if (store == null) {
+                used = totalSize(files);
+            }
+            if (used + incomingBytes <= high) {
+                return 0;
+            }
+
+            long toFree = used + incomingBytes - lowWatermark.bytes(capacity);
+            log.info("Занято {} МБ при верхней отметке {} МБ, освобождаем {} МБ",
+                    toMb(used + incomingBytes), toMb(high), toMb(toFree));
+            // Место дедуплицированного содержимого освобождается с удалением последней ссылки на него
+            Map<Object, Integer> links = new HashMap<>();
+            files.forEach(file -> links.merge(file.fileKey, 1, Integer::sum));
+            long freed = 0;
+            int deleted = 0;
+            for (Candidate candidate : rank(files)) {
+                if (freed >= toFree) {
+                    break;
+                }
+                if (candidate.cached != null) {
+                    // Сначала отвязываем запись кэша, затем удаляем файл
+                    cacheRepository.evictFile(candidate.cached.getKey());
+                }
+                if (delete(candidate.path)) {
+                    if (links.merge(candidate.fileKey, -1, Integer::sum) == 0) {
+                        freed += candidate.size;
+                    }
+                    deleted++;
+                }
+            }
+            contentStore.collectGarbage();
+            log.info("Удалено файлов: {}, освобождено {} МБ", deleted, toMb(freed));
+            if (freed < toFree) {
+                log.warn("Не удалось освободить место до нижней отметки: не хватает {} МБ", toMb(toFree - freed));
+            }
+            return freed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Собирает файлы директории загрузок и сопоставляет их с записями кэша.
+     * Скрытые файлы и директории (индекс кэша, блоки дедупликации) не рассматриваются.
+     */
+    private List<Candidate> scan() throws IOException {
+        Map<String, CachedFile> cached = new HashMap<>();
+        for (CachedFile file : cacheRepository.files()) {
+            cached.put(taskRelative(Path.of(file.getFilePath())), file);
+        }
+
+        List<Candidate> files = new ArrayList<>();
+        Files.walkFileTree(downloadDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                return !dir.equals(downloadDir) && isHidden(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && !isHidden(file)) {
+                    Object fileKey = attributes.fileKey() != null ? attributes.fileKey() : file;
+                    files.add(new Candidate(file, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                            fileKey, cached.get(taskRelative(file))));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Файл удален во время обхода
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * Упорядочивает файлы по возрастанию ценности. Брошенные файлы идут первыми,
+     * от старых к новым, а недавние файлы вне кэша (выполняющиеся загрузки) пропускаются.
+     * Ценность файла кэша растет с числом попаданий и падает с временем простоя и размером.
+     */
+    private List<Candidate> rank(List<Candidate> files) {
+        long now = Instant.now().toEpochMilli();
+        List<Candidate> orphans = new ArrayList<>();
+        List<Candidate> cachedFiles = new ArrayList<>();
+        for (Candidate file : files) {
+            if (file.cached != null) {
+                cachedFiles.add(file);
+            } else if (now - file.modifiedMillis > orphanGraceMillis) {
+                orphans.add(file);
+            }
+        }
+        orphans.sort(Comparator.comparingLong(Candidate::modifiedMillis));
+        cachedFiles.sort(Comparator.comparingDouble(file -> value(file, now)));
+
+        List<Candidate> ranked = new ArrayList<>(orphans);
+        ranked.addAll(cachedFiles);
+        return ranked;
+    }
+
+    private static double value(Candidate file, long now) {
+        double idleHours = Math.max(0, now - file.cached.getLastAccessMillis()) / HOUR_MILLIS;
+        return (file.cached.getHits() + 1.0) / ((idleHours + 1.0) * (file.size / MB + 1.0));
+    }
+
+    /**
+     * Удаляет файл и его директорию задачи, если она опустела.
+     */
+    private boolean delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            Path taskDir = file.getParent();
+            if (taskDir != null && !taskDir.equals(downloadDir)) {
+                Files.deleteIfExists(taskDir);
+            }
+            return true;
+        } catch (DirectoryNotEmptyException e) {
+            // В директории задачи остались другие файлы
+            return true;
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Путь файла относительно директории загрузок: директория задачи и имя файла.
+     * В режиме HTTP сервис yt-dlp видит ту же директорию под другим корнем,
+     * поэтому файлы сопоставляются по двум последним элементам пути.
+     */
+    private static String taskRelative(Path path) {
+        int count = path.getNameCount();
+        return count >= 2 ? path.subpath(count - 2, count).toString() : path.toString();
+    }
+
+    /**
+     * Суммарный размер файлов: жесткие ссылки на одно содержимое учитываются один раз.
+     */
+    private static long totalSize(List<Candidate> files) {
+        Map<Object, Long> sizes = new HashMap<>();
+        files.forEach(file -> sizes.put(file.fileKey, file.size));
+        return sizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static long usedSpace(FileStore store) throws IOException {
+        return store.getTotalSpace() - store.getUsableSpace();
+    }
+
+    private static long toMb(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    /**
+     * Файл директории загрузок.
+     *
+     * @param path путь к файлу
+     * @param size размер файла в байтах
+     * @param modifiedMillis время последнего изменения
+     * @param fileKey идентификатор содержимого файла, общий для жестких ссылок
+     * @param cached запись кэша, которой принадлежит файл, или null
+     */
+    private record Candidate(Path path, long size, long modifiedMillis, Object fileKey, CachedFile cached) {}
+
+    /**
+     * Отметка заполнения: абсолютный размер или доля файловой системы.
+     *
+     * @param value размер в байтах или процент
+     * @param percent задана ли отметка в процентах
+     */
+    record Watermark(long value, boolean percent) {
+
+        static Watermark parse(String text) {
+            String trimmed = text.trim();
+            if (trimmed.endsWith("%")) {
+                long percent = Long.parseLong(trimmed.substring(0, trimmed.length() - 1).trim());
+                if (percent <= 0 || percent > 100) {
+                    throw new IllegalArgumentException("Некорректная отметка заполнения: " + text);
+                }
+                return new Watermark(percent, true);
+            }
+            return new Watermark(DataSize.parse(trimmed).toBytes(), false);
+        }
+
+        long bytes(long capacity) {
+            return percent ? capacity / 100 * value : value;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package top.firlian.downloader.application;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import top.firlian.downloader.domain.port.TaskQueue;
+
+/**
+ * Планировщик для автоматической очистки завершенных задач загрузки.
+ * Выполняется периодически по расписанию, чтобы очередь задач не росла неограниченно.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskEvictionScheduler {
+
+    private final TaskQueue taskQueue;
+
+    /**
+     * Выполняет периодическую очистку завершенных задач с истекшим сроком хранения.
+     * Интервал выполнения настраивается через свойство
+     * {@code downloader.task-eviction-interval-ms} (по умолчанию 1 минута).
+     */
+    @Scheduled(fixedRateString = "${downloader.task-eviction-interval-ms:60000}")
+    public void evictFinishedTasks() {
+        log.debug("Запуск плановой очистки завершенных задач");
+        taskQueue.evictFinished();
+    }
+}
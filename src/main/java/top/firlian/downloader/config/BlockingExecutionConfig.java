@@ -0,0 +1,45 @@
+package top.firlian.downloader.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Конфигурация выполнения блокирующей работы загрузчиков.
+ * Запуск процессов yt-dlp и ожидание их завершения выполняются на отдельном
+ * планировщике, а не на потоке, подписавшемся на загрузку (например, потоке
+ * long polling обновлений Telegram).
+ */
+@Slf4j
+@Configuration
+public class BlockingExecutionConfig {
+
+    /**
+     * Предоставляет планировщик для блокирующей работы загрузчиков.
+     * В режиме {@code virtual} каждая задача выполняется в своем виртуальном потоке,
+     * в режиме {@code bounded-elastic} - в ограниченном пуле платформенных потоков.
+     *
+     * @param mode режим выполнения: virtual или bounded-elastic
+     * @param maxThreads максимальное число потоков для режима bounded-elastic
+     * @return планировщик для блокирующей работы
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler(
+            @Value("${downloader.blocking.mode:virtual}") String mode,
+            @Value("${downloader.blocking.max-threads:16}") int maxThreads) {
+
+        if ("bounded-elastic".equalsIgnoreCase(mode)) {
+            log.info("Блокирующая работа загрузчиков выполняется в пуле из {} потоков", maxThreads);
+            return Schedulers.newBoundedElastic(maxThreads, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+                    "ytdlp-blocking");
+        }
+
+        log.info("Блокирующая работа загрузчиков выполняется в виртуальных потоках");
+        return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "ytdlp-virtual");
+    }
+}
@@ -5,13 +5,17 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import top.firlian.downloader.adapter.out.CircuitBreakingMediaDownloader;
 import top.firlian.downloader.adapter.out.HttpYtDlpMediaDownloader;
 import top.firlian.downloader.adapter.out.YtDlpMediaDownloader;
 import top.firlian.downloader.domain.port.MediaDownloader;
+import top.firlian.downloader.domain.port.ProviderDetector;
+import top.firlian.downloader.util.CircuitBreakerRegistry;
 
 /**
  * Класс конфигурации для выбора подходящей реализации MediaDownloader
  * на основе настройки ytdlp.mode.
+ * Выбранная реализация оборачивается автоматическими выключателями провайдеров.
  */
 @Slf4j
 @Configuration
@@ -25,20 +29,26 @@ public class MediaDownloaderConfig {
      * 
      * @param localDownloader Реализация с локальным бинарным файлом
      * @param httpDownloader Реализация HTTP сервиса
+     * @param providerDetector Определитель провайдера по URL
+     * @param circuitBreakers Реестр автоматических выключателей
      * @return Выбранная реализация MediaDownloader
      */
     @Bean
     @Primary
     public MediaDownloader mediaDownloader(
             YtDlpMediaDownloader localDownloader,
-            HttpYtDlpMediaDownloader httpDownloader) {
+            HttpYtDlpMediaDownloader httpDownloader,
+            ProviderDetector providerDetector,
+            CircuitBreakerRegistry circuitBreakers) {
         
+        MediaDownloader downloader;
         if ("http".equalsIgnoreCase(ytdlpMode)) {
             log.info("Используется режим HTTP сервиса yt-dlp");
-            return httpDownloader;
+            downloader = httpDownloader;
         } else {
             log.info("Используется режим локального бинарного файла yt-dlp");
-            return localDownloader;
+            downloader = localDownloader;
         }
+        return new CircuitBreakingMediaDownloader(downloader, providerDetector, circuitBreakers);
     }
 }
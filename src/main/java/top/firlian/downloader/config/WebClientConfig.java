@@ -0,0 +1,86 @@
+package top.firlian.downloader.config;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Конфигурация HTTP клиента сервиса yt-dlp.
+ * Один клиент с явно настроенным пулом соединений используется всеми запросами
+ * к сервису: пул ограничивает число соединений с хостом и очередь ожидания
+ * соединения, закрывает простаивающие соединения и публикует метрики
+ * {@code reactor.netty.connection.provider.*} с тегом {@code name=ytdlp-service}.
+ * Адреса экземпляров сервиса задает
+ * {@link top.firlian.downloader.adapter.out.YtDlpServicePool}.
+ */
+@Slf4j
+@Configuration
+public class WebClientConfig {
+
+    /**
+     * Предоставляет пул соединений с сервисом yt-dlp.
+     *
+     * @param maxConnections максимальное число соединений с хостом
+     * @param pendingAcquireMaxCount максимальное число запросов, ожидающих соединения
+     * @param pendingAcquireTimeoutSeconds сколько запрос ждет свободное соединение
+     * @param maxIdleSeconds через сколько секунд простоя соединение закрывается
+     * @param maxLifeMinutes максимальное время жизни соединения
+     * @return пул соединений
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider ytDlpServiceConnectionProvider(
+            @Value("${downloader.ytdlp.http.max-connections:16}") int maxConnections,
+            @Value("${downloader.ytdlp.http.pending-acquire-max-count:256}") int pendingAcquireMaxCount,
+            @Value("${downloader.ytdlp.http.pending-acquire-timeout-seconds:30}") long pendingAcquireTimeoutSeconds,
+            @Value("${downloader.ytdlp.http.max-idle-seconds:30}") long maxIdleSeconds,
+            @Value("${downloader.ytdlp.http.max-life-minutes:10}") long maxLifeMinutes) {
+        return ConnectionProvider.builder("ytdlp-service")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeoutSeconds))
+                .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+                .maxLifeTime(Duration.ofMinutes(maxLifeMinutes))
+                .evictInBackground(Duration.ofSeconds(maxIdleSeconds))
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * Предоставляет клиент сервиса yt-dlp поверх общего пула соединений.
+     * Кодеки построителя Spring Boot разбирают JSON ответов прямо в
+     * {@code JsonNode} и DTO, без промежуточной строки. Лимит размера ответа
+     * поднят, чтобы метаданные длинных плейлистов помещались в буфер.
+     *
+     * @param webClientBuilder построитель клиента с кодеками Spring Boot
+     * @param connectionProvider пул соединений с сервисом
+     * @param connectTimeoutMillis таймаут установки соединения
+     * @param maxInMemorySize максимальный размер ответа, разбираемого в памяти
+     * @return клиент сервиса yt-dlp
+     */
+    @Bean
+    public WebClient ytDlpServiceWebClient(
+            WebClient.Builder webClientBuilder,
+            ConnectionProvider connectionProvider,
+            @Value("${downloader.ytdlp.http.connect-timeout-ms:5000}") int connectTimeoutMillis,
+            @Value("${downloader.ytdlp.http.max-in-memory-size:16MB}") DataSize maxInMemorySize) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true);
+
+        log.info("Клиент сервиса yt-dlp, пул соединений: {} на экземпляр", connectionProvider.maxConnections());
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes()))
+                .build();
+    }
+}
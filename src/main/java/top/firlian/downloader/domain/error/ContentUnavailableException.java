@@ -3,15 +3,36 @@ package top.firlian.downloader.domain.error;
 /**
  * Исключение, выбрасываемое когда контент недоступен для загрузки.
  * Например, когда контент приватный, удален или заблокирован.
+ * Причина недоступности определяет, как долго отказ кэшируется.
  */
 public class ContentUnavailableException extends RuntimeException {
+
+    /**
+     * Причина недоступности контента.
+     */
+    public enum Reason {
+        /** Контент приватный */
+        PRIVATE,
+        /** Контент удален или не существует */
+        REMOVED,
+        /** Контент заблокирован в регионе сервера */
+        GEO_BLOCKED,
+        /** Для доступа нужен вход в аккаунт (например, ограничение по возрасту) */
+        LOGIN_REQUIRED,
+        /** Контент недоступен по другой причине */
+        UNAVAILABLE
+    }
+
+    /** Причина недоступности */
+    private final Reason reason;
+
     /**
      * Создает новое исключение с указанным сообщением.
      *
      * @param message сообщение об ошибке
      */
     public ContentUnavailableException(String message) {
-        super(message);
+        this(message, Reason.UNAVAILABLE, null);
     }
 
     /**
@@ -21,6 +42,27 @@ public class ContentUnavailableException extends RuntimeException {
      * @param cause причина возникновения исключения
      */
     public ContentUnavailableException(String message, Throwable cause) {
+        this(message, Reason.UNAVAILABLE, cause);
+    }
+
+    /**
+     * Создает новое исключение с указанным сообщением, причиной недоступности и причиной исключения.
+     *
+     * @param message сообщение об ошибке
+     * @param reason причина недоступности контента
+     * @param cause причина возникновения исключения (может быть null)
+     */
+    public ContentUnavailableException(String message, Reason reason, Throwable cause) {
         super(message, cause);
+        this.reason = reason;
+    }
+
+    /**
+     * Возвращает причину недоступности контента.
+     *
+     * @return причина недоступности
+     */
+    public Reason getReason() {
+        return reason;
     }
 }
@@ -0,0 +1,16 @@
+package top.firlian.downloader.domain.error;
+
+/**
+ * Исключение, выбрасываемое когда загрузка отклонена без выполнения.
+ * Например, когда очередь загрузок переполнена и новая задача не может быть принята.
+ */
+public class DownloadRejectedException extends DownloadException {
+    /**
+     * Создает новое исключение с указанным сообщением.
+     *
+     * @param message сообщение об ошибке
+     */
+    public DownloadRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package top.firlian.downloader.domain.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Частота обращений к медиа.
+ * Используется для прогрева кэша при запуске и обновления популярных записей до их истечения.
+ */
+@Value
+@Builder
+public class AccessRecord {
+    /** Канонический ключ медиа или элемента */
+    String key;
+
+    /** URL, по которому медиа запрашивалось последним */
+    String url;
+
+    /** Индекс элемента плейлиста/карусели (null для контента по URL целиком) */
+    Integer itemIndex;
+
+    /** Число обращений, затухающее со временем */
+    double score;
+}
@@ -0,0 +1,27 @@
+package top.firlian.downloader.domain.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Файл записи кэша со статистикой обращений.
+ * Используется для выбора наименее ценных файлов при нехватке места на диске.
+ */
+@Value
+@Builder
+public class CachedFile {
+    /** Ключ записи кэша */
+    String key;
+
+    /** Путь к файлу */
+    String filePath;
+
+    /** Размер файла в байтах */
+    long sizeBytes;
+
+    /** Время последнего обращения к записи в миллисекундах */
+    long lastAccessMillis;
+
+    /** Число попаданий в запись */
+    int hits;
+}
@@ -3,25 +3,77 @@ package top.firlian.downloader.domain.model;
 import lombok.Builder;
 import lombok.Value;
 
+import java.time.Instant;
+
 /**
  * Задача загрузки медиа контента.
- * Отслеживает состояние процесса загрузки для конкретного URL.
+ * Отслеживает состояние процесса загрузки для конкретного URL
+ * или конкретного элемента плейлиста/карусели.
  */
 @Value
-@Builder
+@Builder(toBuilder = true)
 public class DownloadTask {
+    /** Приоритет фоновых задач, выполняемых после пользовательских */
+    public static final int PRIORITY_LOW = -10;
+
+    /** Обычный приоритет пользовательских задач */
+    public static final int PRIORITY_NORMAL = 0;
+
+    /** Повышенный приоритет задач, которых пользователь уже ожидает */
+    public static final int PRIORITY_HIGH = 10;
+
     /** URL для загрузки */
     String url;
-    
+
+    /** Индекс элемента плейлиста/карусели (null для загрузки по URL целиком) */
+    Integer itemIndex;
+
+    /** Канонический ключ медиа, включая индекс элемента */
+    MediaKey mediaKey;
+
     /** Провайдер контента */
     Provider provider;
-    
+
     /** ID чата Telegram, запросившего загрузку */
     Long chatId;
-    
+
     /** Текущий статус задачи */
     TaskStatus status;
-    
+
     /** Сообщение об ошибке (если статус FAILED) */
     String errorMessage;
+
+    /** Приоритет задачи: задачи с большим значением выполняются раньше */
+    int priority;
+
+    /** Время постановки задачи в очередь */
+    Instant createdAt;
+
+    /** Время начала загрузки */
+    Instant startedAt;
+
+    /** Время завершения задачи успехом или ошибкой */
+    Instant finishedAt;
+
+    /**
+     * Возвращает ключ задачи, уникальный среди активных задач.
+     * Задачи для разных форм ссылки на одно медиа получают один ключ.
+     *
+     * @return канонический ключ медиа, а без него - URL или URL с индексом элемента
+     */
+    public String getKey() {
+        if (mediaKey != null) {
+            return mediaKey.asString();
+        }
+        return itemIndex == null ? url : url + "#" + itemIndex;
+    }
+
+    /**
+     * Проверяет, завершена ли задача.
+     *
+     * @return true если задача в статусе COMPLETED или FAILED
+     */
+    public boolean isFinished() {
+        return status == TaskStatus.COMPLETED || status == TaskStatus.FAILED;
+    }
 }
@@ -11,7 +11,7 @@ import java.util.List;
  * Может содержать коллекцию элементов для плейлистов и каруселей.
  */
 @Value
-@Builder
+@Builder(toBuilder = true)
 public class MediaContent {
     /** URL источника контента */
     String url;
@@ -25,9 +25,18 @@ public class MediaContent {
     /** Размер файла в байтах */
     long sizeBytes;
     
-    /** Путь к загруженному файлу в файловой системе */
+    /**
+     * Путь к загруженному файлу в файловой системе
+     * (null для списка элементов и для файла, удаленного после отправки в Telegram)
+     */
     String filePath;
     
     /** Список элементов для плейлистов/каруселей (null для одиночных файлов) */
     List<MediaItem> items;
+
+    /** file_id файла, уже загруженного в Telegram (null, если файл еще не отправлялся) */
+    String telegramFileId;
+
+    /** file_unique_id файла, уже загруженного в Telegram */
+    String telegramFileUniqueId;
 }
@@ -0,0 +1,43 @@
+package top.firlian.downloader.domain.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Канонический ключ медиа контента.
+ * Разные формы ссылки на одно медиа (короткие ссылки, мобильные домены,
+ * параметры отслеживания) дают один ключ, поэтому кэш и очередь задач
+ * не загружают одно и то же медиа повторно.
+ */
+@Value
+@Builder(toBuilder = true)
+public class MediaKey {
+    /** Провайдер контента */
+    Provider provider;
+
+    /** Идентификатор медиа у провайдера или нормализованный URL, если форма ссылки не распознана */
+    String mediaId;
+
+    /** Индекс элемента плейлиста/карусели (null для медиа целиком) */
+    Integer itemIndex;
+
+    /**
+     * Возвращает ключ элемента плейлиста или карусели.
+     *
+     * @param index индекс элемента (начиная с 0)
+     * @return ключ того же медиа с индексом элемента
+     */
+    public MediaKey forItem(Integer index) {
+        return toBuilder().itemIndex(index).build();
+    }
+
+    /**
+     * Возвращает строковую форму ключа для кэша и очереди задач.
+     *
+     * @return ключ вида {@code youtube:dQw4w9WgXcQ} или {@code youtube:playlist:PL123#2}
+     */
+    public String asString() {
+        String key = provider.name().toLowerCase() + ":" + mediaId;
+        return itemIndex == null ? key : key + "#" + itemIndex;
+    }
+}
@@ -0,0 +1,70 @@
+package top.firlian.downloader.domain.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Метаданные медиа контента без загруженного файла.
+ * Хранят результат извлечения метаданных: название, тип, размер
+ * и список элементов плейлиста или карусели.
+ */
+@Value
+@Builder(toBuilder = true)
+public class MediaMetadata {
+    /** URL источника контента */
+    String url;
+
+    /** Тип медиа контента */
+    MediaType type;
+
+    /** Название контента */
+    String title;
+
+    /** Размер файла в байтах (0, если неизвестен) */
+    long sizeBytes;
+
+    /** Список элементов для плейлистов/каруселей (null для одиночных файлов) */
+    List<MediaItem> items;
+
+    /**
+     * Проверяет, содержит ли контент несколько элементов.
+     *
+     * @return true для плейлиста или карусели
+     */
+    public boolean hasItems() {
+        return items != null && !items.isEmpty();
+    }
+
+    /**
+     * Создает метаданные по загруженному контенту.
+     *
+     * @param content загруженный контент
+     * @return метаданные контента
+     */
+    public static MediaMetadata of(MediaContent content) {
+        return MediaMetadata.builder()
+                .url(content.getUrl())
+                .type(content.getType())
+                .title(content.getTitle())
+                .sizeBytes(content.getSizeBytes())
+                .items(content.getItems())
+                .build();
+    }
+
+    /**
+     * Возвращает контент со списком элементов без файла.
+     *
+     * @return медиа контент для выбора элемента
+     */
+    public MediaContent toContent() {
+        return MediaContent.builder()
+                .url(url)
+                .type(type)
+                .title(title)
+                .sizeBytes(sizeBytes)
+                .items(items)
+                .build();
+    }
+}
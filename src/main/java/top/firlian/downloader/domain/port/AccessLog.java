@@ -0,0 +1,29 @@
+package top.firlian.downloader.domain.port;
+
+import top.firlian.downloader.domain.model.AccessRecord;
+
+import java.util.List;
+
+/**
+ * Интерфейс журнала обращений к медиа.
+ * Накапливает частоту запросов по ключу медиа, чтобы популярный контент
+ * можно было заранее загрузить в кэш и обновлять до истечения его записи.
+ */
+public interface AccessLog {
+    /**
+     * Отмечает обращение к медиа, независимо от того, найдено ли оно в кэше.
+     *
+     * @param key канонический ключ медиа или элемента
+     * @param url URL запроса
+     * @param itemIndex индекс элемента (null для контента по URL целиком)
+     */
+    void record(String key, String url, Integer itemIndex);
+
+    /**
+     * Возвращает самые часто запрашиваемые медиа.
+     *
+     * @param limit максимальное число записей
+     * @return записи по убыванию частоты обращений
+     */
+    List<AccessRecord> top(int limit);
+}
@@ -1,7 +1,10 @@
 package top.firlian.downloader.domain.port;
 
+import top.firlian.downloader.domain.model.CachedFile;
 import top.firlian.downloader.domain.model.MediaContent;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -10,24 +13,77 @@ import java.util.Optional;
  */
 public interface CacheRepository {
     /**
-     * Получает закэшированный контент по URL.
+     * Получает закэшированный контент по ключу.
+     * Контент хранится под каноническим ключом медиа
+     * (см. {@link top.firlian.downloader.domain.model.MediaKey#asString()}),
+     * поэтому разные формы ссылки на одно медиа находят одну запись.
      *
-     * @param url URL контента
+     * @param key ключ медиа или элемента
      * @return Optional с контентом, если он найден в кэше и не истек
      */
-    Optional<MediaContent> get(String url);
+    Optional<MediaContent> get(String key);
     
+    /**
+     * Получает закэшированный контент, не считая это обращением к записи:
+     * статистика обращений и вытеснение не меняются.
+     *
+     * @param key ключ медиа или элемента
+     * @return Optional с контентом, если он найден в кэше и не истек
+     */
+    Optional<MediaContent> peek(String key);
+
     /**
      * Сохраняет контент в кэш.
      *
-     * @param url URL контента
+     * @param key ключ медиа или элемента
      * @param content медиа контент для сохранения
      */
-    void put(String url, MediaContent content);
-    
+    void put(String key, MediaContent content);
+
+    /**
+     * Продлевает срок жизни записи на полное время жизни кэша, не меняя ее контент.
+     *
+     * @param key ключ медиа или элемента
+     * @return true, если запись найдена и продлена
+     */
+    boolean renew(String key);
+
+    /**
+     * Удаляет запись из кэша вместе с ее файлом.
+     *
+     * @param key ключ медиа или элемента
+     */
+    void remove(String key);
+
+    /**
+     * Освобождает файл записи. Запись с file_id Telegram остается в кэше
+     * без файла, остальные записи удаляются, так что ни одна запись
+     * не ссылается на удаленный файл.
+     *
+     * @param key ключ медиа или элемента
+     */
+    void evictFile(String key);
+
+    /**
+     * Возвращает снимок записей, ссылающихся на файлы, со статистикой обращений.
+     *
+     * @return файлы записей кэша
+     */
+    List<CachedFile> files();
+
+    /**
+     * Возвращает время до истечения записи. Проверка не считается
+     * обращением к записи и не влияет на ее вытеснение.
+     *
+     * @param key ключ медиа или элемента
+     * @return Optional со временем до истечения, пустой, если записи нет
+     */
+    Optional<Duration> expiresIn(String key);
+
     /**
-     * Удаляет из кэша все истекшие записи.
-     * Обычно вызывается по расписанию.
+     * Удаляет из кэша истекшие записи, которые еще не были удалены.
+     * Реализация может удалять записи по мере истечения, тогда этот вызов
+     * лишь выполняет отложенное обслуживание. Обычно вызывается по расписанию.
      */
     void evictExpired();
 }
@@ -0,0 +1,24 @@
+package top.firlian.downloader.domain.port;
+
+/**
+ * Интерфейс хранилища загруженных файлов с адресацией по содержимому.
+ * Одинаковые по содержимому файлы, пришедшие по разным ссылкам или от разных
+ * провайдеров, хранятся на диске один раз.
+ */
+public interface ContentStore {
+    /**
+     * Ставит загруженный файл в очередь на дедупликацию.
+     * Хэширование выполняется в фоне, вне пути обработки запроса,
+     * путь к файлу после дедупликации не меняется.
+     *
+     * @param filePath путь к загруженному файлу
+     */
+    void deduplicate(String filePath);
+
+    /**
+     * Удаляет из хранилища содержимое, на которое больше не ссылается ни один файл.
+     *
+     * @return число освобожденных байт
+     */
+    long collectGarbage();
+}
@@ -1,6 +1,7 @@
 package top.firlian.downloader.domain.port;
 
 import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaItem;
 import reactor.core.publisher.Mono;
 
 /**
@@ -11,8 +12,8 @@ public interface MediaDownloader {
     /**
      * Загружает медиа контент по указанному URL.
      * Если URL содержит несколько элементов (плейлист, карусель),
-     * загружается первый элемент, а информация обо всех элементах
-     * включается в результат.
+     * ничего не загружается: результат содержит только список элементов
+     * без файла, а выбранный элемент загружается через {@link #downloadSpecificItem}.
      *
      * @param url URL для загрузки
      * @return Mono с загруженным контентом
@@ -27,4 +28,17 @@ public interface MediaDownloader {
      * @return Mono с загруженным элементом
      */
     Mono<MediaContent> downloadSpecificItem(String url, int itemIndex);
+
+    /**
+     * Загружает элемент, сведения о котором уже получены при перечислении
+     * плейлиста или карусели. Реализация может использовать их вместо
+     * повторного извлечения метаданных.
+     *
+     * @param url URL плейлиста или карусели
+     * @param item элемент из ранее полученного списка
+     * @return Mono с загруженным элементом
+     */
+    default Mono<MediaContent> downloadSpecificItem(String url, MediaItem item) {
+        return downloadSpecificItem(url, item.getIndex());
+    }
 }
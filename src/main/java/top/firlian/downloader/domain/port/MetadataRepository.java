@@ -0,0 +1,49 @@
+package top.firlian.downloader.domain.port;
+
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.model.MediaMetadata;
+
+import java.util.Optional;
+
+/**
+ * Интерфейс репозитория метаданных медиа контента.
+ * Хранит извлеченные метаданные с коротким временем жизни и отказы
+ * для недоступного контента (негативный кэш), чтобы повторные запросы
+ * не запускали извлечение заново.
+ * Ключом служит канонический ключ медиа
+ * (см. {@link top.firlian.downloader.domain.model.MediaKey#asString()}).
+ */
+public interface MetadataRepository {
+    /**
+     * Получает закэшированные метаданные.
+     *
+     * @param key ключ медиа
+     * @return Optional с метаданными, если они найдены и не истекли
+     */
+    Optional<MediaMetadata> get(String key);
+
+    /**
+     * Сохраняет метаданные.
+     *
+     * @param key ключ медиа
+     * @param metadata метаданные
+     */
+    void put(String key, MediaMetadata metadata);
+
+    /**
+     * Получает закэшированный отказ для недоступного контента.
+     *
+     * @param key ключ медиа или элемента
+     * @return Optional с отказом, если он найден и не истек
+     */
+    Optional<ContentUnavailableException> getFailure(String key);
+
+    /**
+     * Сохраняет отказ для недоступного контента.
+     * Время хранения зависит от причины недоступности.
+     *
+     * @param key ключ медиа или элемента
+     * @param failure классифицированный отказ
+     */
+    void putFailure(String key, ContentUnavailableException failure);
+}
@@ -1,5 +1,6 @@
 package top.firlian.downloader.domain.port;
 
+import top.firlian.downloader.domain.model.MediaKey;
 import top.firlian.downloader.domain.model.Provider;
 
 /**
@@ -14,4 +15,13 @@ public interface ProviderDetector {
      * @return провайдер контента или UNKNOWN, если провайдер не поддерживается
      */
     Provider detectProvider(String url);
+
+    /**
+     * Извлекает канонический ключ медиа из URL.
+     * Все формы ссылки на одно медиа дают один ключ.
+     *
+     * @param url URL для анализа
+     * @return ключ медиа; для нераспознанной формы ссылки идентификатором служит нормализованный URL
+     */
+    MediaKey extractKey(String url);
 }
@@ -1,42 +1,72 @@
 package top.firlian.downloader.domain.port;
 
 import top.firlian.downloader.domain.model.DownloadTask;
+import top.firlian.downloader.domain.model.Provider;
 
 import java.util.Optional;
+import java.util.function.Predicate;
 
 /**
  * Интерфейс очереди задач загрузки.
- * Управляет задачами загрузки медиа контента, отслеживая их состояние.
+ * Хранит ожидающие задачи в порядке приоритета и поступления,
+ * выдает их обработчикам и отслеживает переходы состояний
+ * PENDING → DOWNLOADING → COMPLETED/FAILED.
  */
 public interface TaskQueue {
     /**
-     * Добавляет новую задачу в очередь.
+     * Добавляет новую задачу в очередь в статусе PENDING.
+     * Завершенная задача с тем же ключом заменяется новой.
      *
      * @param task задача для добавления
-     * @return true если задача успешно добавлена, false если задача с таким URL уже существует
+     * @return true если задача успешно добавлена, false если активная задача с таким ключом уже существует
      */
     boolean addTask(DownloadTask task);
-    
+
     /**
-     * Получает задачу по URL.
+     * Извлекает следующую задачу для выполнения и переводит её в статус DOWNLOADING.
+     * Выбирается задача с наибольшим приоритетом, а при равном приоритете - самая ранняя,
+     * среди провайдеров, для которых обработчик может начать загрузку.
      *
-     * @param url URL задачи
+     * @param canStart проверка, может ли обработчик начать загрузку для провайдера
+     * @return Optional с задачей, если подходящая задача есть в очереди
+     */
+    Optional<DownloadTask> pollTask(Predicate<Provider> canStart);
+
+    /**
+     * Получает задачу по ключу.
+     *
+     * @param key ключ задачи (см. {@link DownloadTask#getKey()})
      * @return Optional с задачей, если она найдена
      */
-    Optional<DownloadTask> getTask(String url);
-    
+    Optional<DownloadTask> getTask(String key);
+
     /**
      * Отмечает задачу как успешно завершенную.
      *
-     * @param url URL задачи
+     * @param key ключ задачи
      */
-    void completeTask(String url);
-    
+    void completeTask(String key);
+
     /**
      * Отмечает задачу как завершенную с ошибкой.
+     * Ожидающая задача при этом убирается из очереди.
      *
-     * @param url URL задачи
+     * @param key ключ задачи
      * @param errorMessage сообщение об ошибке
      */
-    void failTask(String url, String errorMessage);
+    void failTask(String key, String errorMessage);
+
+    /**
+     * Возвращает число задач провайдера, ожидающих в очереди.
+     *
+     * @param provider провайдер контента
+     * @return число задач в статусе PENDING
+     */
+    int pendingCount(Provider provider);
+
+    /**
+     * Удаляет завершенные задачи, срок хранения которых истек.
+     * Обычно вызывается по расписанию.
+     */
+    void evictFinished();
 }
@@ -0,0 +1,267 @@
+package top.firlian.downloader.util;
+
+import lombok.extern.slf4j.Slf4j;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Журнал индекса кэша медиа на диске.
+ * Каждое сохранение и удаление записи дописывается в конец файла,
+ * а при запуске журнал воспроизводится, поэтому время загрузки зависит
+ * от размера журнала, а не от числа файлов в директории загрузок.
+ * Недописанная при сбое последняя запись отбрасывается.
+ * Класс не потокобезопасен сам по себе: вызовы синхронизируются владельцем.
+ */
+@Slf4j
+final class CacheIndex implements Closeable {
+
+    /** Сигнатура и версия формата файла */
+    private static final int MAGIC = 0x44494458;
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    private static final MediaType[] TYPES = MediaType.values();
+
+    private final Path file;
+    private DataOutputStream output;
+
+    /** Число записей в журнале, включая устаревшие */
+    private long records;
+
+    /**
+     * Запись индекса: контент и время его добавления в кэш.
+     *
+     * @param content медиа контент
+     * @param timestamp время добавления в кэш в миллисекундах
+     */
+    record Entry(MediaContent content, long timestamp) {}
+
+    CacheIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Воспроизводит журнал и открывает его для дописывания.
+     * Файл другого формата заменяется пустым журналом.
+     *
+     * @return живые записи в порядке добавления
+     */
+    Map<String, Entry> load() throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        records = 0;
+        boolean valid = false;
+        long validLength = 0;
+        if (Files.exists(file)) {
+            CountingInputStream counter = new CountingInputStream(
+                    new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            try (DataInputStream input = new DataInputStream(counter)) {
+                valid = input.readInt() == MAGIC && input.readInt() == VERSION;
+                validLength = counter.position;
+                while (valid && readRecord(input, entries)) {
+                    validLength = counter.position;
+                    records++;
+                }
+            } catch (EOFException e) {
+                // Недописанная запись в конце журнала
+            }
+            if (!valid) {
+                log.warn("Индекс кэша {} имеет неизвестный формат и будет создан заново", file);
+            }
+        }
+
+        if (valid) {
+            // Отрезаем недописанный хвост, чтобы новые записи шли сразу за последней целой
+            try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+            output = open(StandardOpenOption.APPEND);
+        } else {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            output = open(StandardOpenOption.TRUNCATE_EXISTING);
+            writeHeader(output);
+        }
+        return entries;
+    }
+
+    /**
+     * Дописывает сохранение записи.
+     */
+    void appendPut(String key, Entry entry) {
+        try {
+            writePut(output, key, entry);
+            output.flush();
+            records++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Дописывает удаление записи.
+     */
+    void appendRemove(String key) {
+        try {
+            output.writeByte(RECORD_REMOVE);
+            output.writeUTF(key);
+            output.flush();
+            records++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Возвращает число записей в журнале, включая устаревшие.
+     */
+    long records() {
+        return records;
+    }
+
+    /**
+     * Переписывает журнал, оставляя только живые записи.
+     * Новый журнал пишется во временный файл и атомарно заменяет старый.
+     *
+     * @param live живые записи
+     */
+    void compact(Map<String, Entry> live) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            writeHeader(compacted);
+            for (Map.Entry<String, Entry> entry : live.entrySet()) {
+                writePut(compacted, entry.getKey(), entry.getValue());
+            }
+        }
+        output.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        output = open(StandardOpenOption.APPEND);
+        records = live.size();
+        log.info("Индекс кэша сжат до {} записей", records);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (output != null) {
+            output.close();
+        }
+    }
+
+    private DataOutputStream open(StandardOpenOption mode) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode), 1 << 16));
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+    }
+
+    private static void writePut(DataOutputStream out, String key, Entry entry) throws IOException {
+        MediaContent content = entry.content();
+        out.writeByte(RECORD_PUT);
+        out.writeUTF(key);
+        out.writeLong(entry.timestamp());
+        out.writeByte(content.getType() == null ? -1 : content.getType().ordinal());
+        out.writeLong(content.getSizeBytes());
+        writeNullable(out, content.getUrl());
+        writeNullable(out, content.getTitle());
+        writeNullable(out, content.getFilePath());
+        writeNullable(out, content.getTelegramFileId());
+        writeNullable(out, content.getTelegramFileUniqueId());
+    }
+
+    /**
+     * Читает одну запись журнала и применяет ее к записям.
+     *
+     * @return false в конце файла
+     */
+    private static boolean readRecord(DataInputStream input, Map<String, Entry> entries) throws IOException {
+        int kind = input.read();
+        if (kind < 0) {
+            return false;
+        }
+        String key = input.readUTF();
+        if (kind == RECORD_REMOVE) {
+            entries.remove(key);
+            return true;
+        }
+        if (kind != RECORD_PUT) {
+            throw new EOFException("Неизвестный тип записи: " + kind);
+        }
+        long timestamp = input.readLong();
+        int type = input.readByte();
+        long sizeBytes = input.readLong();
+        MediaContent content = MediaContent.builder()
+                .url(readNullable(input))
+                .title(readNullable(input))
+                .filePath(readNullable(input))
+                .telegramFileId(readNullable(input))
+                .telegramFileUniqueId(readNullable(input))
+                .type(type >= 0 && type < TYPES.length ? TYPES[type] : null)
+                .sizeBytes(sizeBytes)
+                .build();
+        // Повторное сохранение переносит запись в конец порядка добавления
+        entries.remove(key);
+        entries.put(key, new Entry(content, timestamp));
+        return true;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /**
+     * Поток, считающий прочитанные байты, чтобы найти конец последней целой записи.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long position;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+}
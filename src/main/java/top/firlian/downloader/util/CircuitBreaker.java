@@ -0,0 +1,272 @@
+package top.firlian.downloader.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Автоматический выключатель вызовов внешнего ресурса.
+ * В закрытом состоянии вызовы проходят, а их исходы учитываются в скользящем
+ * окне последних вызовов. Когда доля ошибок в окне достигает порога, выключатель
+ * размыкается и сразу отклоняет вызовы, не дожидаясь таймаутов. По истечении
+ * времени размыкания выключатель пропускает несколько пробных вызовов: если все
+ * они успешны, он замыкается, а при первой ошибке снова размыкается.
+ * Состояние публикуется метрикой {@code downloader.circuit.state}
+ * (0 - замкнут, 1 - разомкнут, 2 - пробные вызовы), переходы - счетчиком
+ * {@code downloader.circuit.transitions}, отклоненные вызовы - счетчиком
+ * {@code downloader.circuit.rejected}.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    /**
+     * Состояние выключателя.
+     */
+    public enum State {
+        /** Вызовы проходят */
+        CLOSED,
+        /** Вызовы отклоняются */
+        OPEN,
+        /** Пропускаются только пробные вызовы */
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+    private final MeterRegistry meterRegistry;
+    private final Counter rejected;
+
+    /** Исходы последних вызовов по кругу: true - ошибка */
+    private final boolean[] window;
+    private int windowCount;
+    private int windowPosition;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long changedAt = Long.MIN_VALUE;
+    private int halfOpenStarted;
+    private int halfOpenSucceeded;
+
+    /**
+     * Конструктор с настройкой выключателя.
+     *
+     * @param name имя защищаемого ресурса, тег метрик
+     * @param windowSize число последних вызовов, по которым считается доля ошибок
+     * @param minimumCalls минимальное число вызовов в окне для размыкания
+     * @param failureRateThreshold доля ошибок в процентах, при которой выключатель размыкается
+     * @param openDuration сколько выключатель разомкнут до пробных вызовов
+     * @param halfOpenCalls число пробных вызовов
+     * @param meterRegistry реестр метрик
+     * @param clock текущее время в миллисекундах
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+                          Duration openDuration, int halfOpenCalls, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.name = name;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openDuration.toMillis();
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("downloader.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("Состояние выключателя: 0 - замкнут, 1 - разомкнут, 2 - пробные вызовы")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("downloader.circuit.rejected")
+                .description("Число вызовов, отклоненных разомкнутым выключателем")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Выполняет вызов через выключатель. Разомкнутый выключатель сразу возвращает ошибку отклонения.
+     * Ошибка вызова, не признанная ошибкой ресурса, считается успешным вызовом:
+     * ресурс ответил, а ошибка относится к самому запросу. Отмененный вызов не учитывается.
+     *
+     * @param call вызов ресурса
+     * @param isFailure признак ошибки ресурса
+     * @param rejection ошибка для отклоненного вызова
+     * @return Mono с результатом вызова
+     */
+    public <T> Mono<T> execute(Supplier<Mono<T>> call, Predicate<Throwable> isFailure,
+                               Supplier<? extends Throwable> rejection) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                return Mono.error(rejection.get());
+            }
+            AtomicBoolean recorded = new AtomicBoolean();
+            return call.get()
+                    .doOnSuccess(result -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            onSuccess();
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            if (isFailure.test(error)) {
+                                onFailure();
+                            } else {
+                                onSuccess();
+                            }
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            onIgnored();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Занимает разрешение на вызов. После успешного захвата вызывающий
+     * обязан сообщить исход через {@link #onSuccess}, {@link #onFailure} или {@link #onIgnored}.
+     *
+     * @return false, если выключатель разомкнут или пробные вызовы уже выполняются
+     */
+    public synchronized boolean tryAcquire() {
+        if (!isCallPermitted()) {
+            rejected.increment();
+            return false;
+        }
+        if (state == State.OPEN) {
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenStarted++;
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет, будет ли вызов пропущен, не занимая разрешения.
+     *
+     * @return true, если выключатель замкнут или готов к пробному вызову
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> clock.getAsLong() - changedAt >= openMillis;
+            case HALF_OPEN -> halfOpenStarted < halfOpenCalls;
+        };
+    }
+
+    /**
+     * Учитывает успешный вызов.
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Учитывает ошибку ресурса.
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCount) {
+                transition(State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * Возвращает разрешение вызова, исход которого не известен, например отмененного.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenStarted > halfOpenSucceeded) {
+            halfOpenStarted--;
+        }
+    }
+
+    /**
+     * Возвращает текущее состояние.
+     * Разомкнутый выключатель, время размыкания которого истекло, остается
+     * разомкнутым до следующего вызова.
+     *
+     * @return состояние выключателя
+     */
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Возвращает время последнего перехода между состояниями.
+     *
+     * @return время в миллисекундах или {@link Long#MIN_VALUE}, если переходов не было
+     */
+    public synchronized long changedAt() {
+        return changedAt;
+    }
+
+    /**
+     * Возвращает имя защищаемого ресурса.
+     *
+     * @return имя выключателя
+     */
+    public String name() {
+        return name;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowPosition] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+
+    private void transition(State next) {
+        State previous = state;
+        state = next;
+        changedAt = clock.getAsLong();
+        halfOpenStarted = 0;
+        halfOpenSucceeded = 0;
+        if (next == State.CLOSED) {
+            windowCount = 0;
+            windowPosition = 0;
+            windowFailures = 0;
+        }
+        Counter.builder("downloader.circuit.transitions")
+                .description("Число переходов выключателя между состояниями")
+                .tag("name", name)
+                .tag("from", previous.name().toLowerCase())
+                .tag("to", next.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        if (next == State.OPEN) {
+            log.warn("Выключатель {} разомкнут на {} с", name, openMillis / 1000);
+        } else {
+            log.info("Выключатель {}: {} -> {}", name, previous, next);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package top.firlian.downloader.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Реестр автоматических выключателей с общими настройками.
+ * Выключатель создается при первом обращении по имени ресурса
+ * и далее используется всеми вызовами этого ресурса.
+ */
+@Component
+public class CircuitBreakerRegistry {
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+
+    /** Выключатели по имени ресурса */
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор с настройкой выключателей.
+     *
+     * @param windowSize число последних вызовов, по которым считается доля ошибок
+     * @param minimumCalls минимальное число вызовов в окне для размыкания
+     * @param failureRateThreshold доля ошибок в процентах, при которой выключатель размыкается
+     * @param openSeconds сколько секунд выключатель разомкнут до пробных вызовов
+     * @param halfOpenCalls число пробных вызовов
+     * @param meterRegistry реестр метрик
+     */
+    @Autowired
+    public CircuitBreakerRegistry(
+            @Value("${downloader.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${downloader.circuit-breaker.minimum-calls:5}") int minimumCalls,
+            @Value("${downloader.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+            @Value("${downloader.circuit-breaker.open-seconds:60}") long openSeconds,
+            @Value("${downloader.circuit-breaker.half-open-calls:2}") int halfOpenCalls,
+            MeterRegistry meterRegistry) {
+        this(windowSize, minimumCalls, failureRateThreshold, openSeconds, halfOpenCalls,
+                meterRegistry, System::currentTimeMillis);
+    }
+
+    /**
+     * Конструктор с заданным источником времени в миллисекундах.
+     */
+    public CircuitBreakerRegistry(int windowSize, int minimumCalls, int failureRateThreshold, long openSeconds,
+                                  int halfOpenCalls, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = Duration.ofSeconds(openSeconds);
+        this.halfOpenCalls = halfOpenCalls;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * Возвращает выключатель ресурса, создавая его при первом обращении.
+     *
+     * @param name имя ресурса
+     * @return выключатель
+     */
+    public CircuitBreaker get(String name) {
+        return breakers.computeIfAbsent(name, key -> new CircuitBreaker(key, windowSize, minimumCalls,
+                failureRateThreshold, openDuration, halfOpenCalls, meterRegistry, clock));
+    }
+}
@@ -0,0 +1,230 @@
+package top.firlian.downloader.util;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import top.firlian.downloader.domain.model.AccessRecord;
+import top.firlian.downloader.domain.port.AccessLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Журнал обращений к медиа, сохраняемый в файл.
+ * Частота обращений затухает вдвое за заданный период, поэтому вчерашний
+ * всплеск интереса со временем уступает текущим популярным медиа.
+ * Хранится ограниченное число самых популярных ключей: снимок периодически
+ * и при остановке записывается в файл и загружается при запуске.
+ */
+@Slf4j
+@Component
+public class FileAccessLog implements AccessLog {
+
+    /** Сигнатура и версия формата файла */
+    private static final int MAGIC = 0x41434C47;
+    private static final int VERSION = 1;
+
+    /** Файл журнала, null - журнал не сохраняется */
+    private final Path file;
+
+    /** Максимальное число хранимых ключей */
+    private final int maxEntries;
+
+    /** Период полураспада частоты обращений в миллисекундах */
+    private final double halfLifeMillis;
+
+    /** Текущее время в миллисекундах */
+    private final LongSupplier clock;
+
+    /** Счетчики обращений по ключу медиа */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор с настройкой журнала.
+     *
+     * @param file файл журнала (пусто - журнал не сохраняется между перезапусками)
+     * @param maxEntries максимальное число хранимых ключей
+     * @param halfLifeHours за сколько часов частота обращений уменьшается вдвое
+     */
+    @Autowired
+    public FileAccessLog(
+            @Value("${downloader.access-log.file:}") String file,
+            @Value("${downloader.access-log.max-entries:10000}") int maxEntries,
+            @Value("${downloader.access-log.half-life-hours:24}") long halfLifeHours) {
+        this(file, maxEntries, halfLifeHours, System::currentTimeMillis);
+    }
+
+    FileAccessLog(String file, int maxEntries, long halfLifeHours, LongSupplier clock) {
+        this.file = file == null || file.isBlank() ? null : Path.of(file);
+        this.maxEntries = maxEntries;
+        this.halfLifeMillis = TimeUnit.HOURS.toMillis(halfLifeHours);
+        this.clock = clock;
+        load();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(String key, String url, Integer itemIndex) {
+        long now = clock.getAsLong();
+        counters.computeIfAbsent(key, k -> new Counter()).hit(url, itemIndex, now, halfLifeMillis);
+        if (counters.size() > 2 * maxEntries) {
+            trim(now);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<AccessRecord> top(int limit) {
+        long now = clock.getAsLong();
+        return counters.entrySet().stream()
+                .map(entry -> entry.getValue().toRecord(entry.getKey(), now, halfLifeMillis))
+                .sorted(Comparator.comparingDouble(AccessRecord::getScore).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Записывает снимок журнала в файл. Вызывается по расписанию,
+     * чтобы после аварийной остановки терялись только последние обращения.
+     * Интервал настраивается через {@code downloader.access-log.flush-interval-ms}.
+     */
+    @Scheduled(fixedDelayString = "${downloader.access-log.flush-interval-ms:300000}")
+    public synchronized void flush() {
+        if (file == null) {
+            return;
+        }
+        List<AccessRecord> records = trim(clock.getAsLong());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(clock.getAsLong());
+                output.writeInt(records.size());
+                for (AccessRecord record : records) {
+                    output.writeUTF(record.getKey());
+                    output.writeUTF(record.getUrl());
+                    output.writeInt(record.getItemIndex() == null ? -1 : record.getItemIndex());
+                    output.writeDouble(record.getScore());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить журнал обращений {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Сохраняет журнал при остановке приложения.
+     */
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Оставляет только самые популярные ключи.
+     *
+     * @param now текущее время
+     * @return оставшиеся записи по убыванию частоты обращений
+     */
+    private synchronized List<AccessRecord> trim(long now) {
+        List<AccessRecord> records = top(maxEntries);
+        if (counters.size() > records.size()) {
+            double threshold = records.isEmpty() ? Double.MAX_VALUE : records.get(records.size() - 1).getScore();
+            counters.entrySet().removeIf(entry -> entry.getValue().scoreAt(now, halfLifeMillis) < threshold);
+        }
+        return records;
+    }
+
+    /**
+     * Загружает снимок журнала. Поврежденный файл или файл другого формата игнорируется.
+     */
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                log.warn("Журнал обращений {} другого формата, начинаем заново", file);
+                return;
+            }
+            long savedAt = input.readLong();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = input.readUTF();
+                String url = input.readUTF();
+                int itemIndex = input.readInt();
+                double score = input.readDouble();
+                counters.put(key, new Counter(url, itemIndex < 0 ? null : itemIndex, score, savedAt));
+            }
+            log.info("Загружен журнал обращений: {} ключей", counters.size());
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать журнал обращений {}: {}", file, e.getMessage());
+            counters.clear();
+        }
+    }
+
+    /**
+     * Затухающий счетчик обращений к одному ключу.
+     */
+    private static final class Counter {
+        private String url;
+        private Integer itemIndex;
+        private double score;
+        private long updatedMillis;
+
+        Counter() {
+        }
+
+        Counter(String url, Integer itemIndex, double score, long updatedMillis) {
+            this.url = url;
+            this.itemIndex = itemIndex;
+            this.score = score;
+            this.updatedMillis = updatedMillis;
+        }
+
+        synchronized void hit(String url, Integer itemIndex, long now, double halfLifeMillis) {
+            this.score = scoreAt(now, halfLifeMillis) + 1;
+            this.updatedMillis = now;
+            this.url = url;
+            this.itemIndex = itemIndex;
+        }
+
+        synchronized double scoreAt(long now, double halfLifeMillis) {
+            long elapsed = Math.max(0, now - updatedMillis);
+            return score * Math.pow(0.5, elapsed / halfLifeMillis);
+        }
+
+        synchronized AccessRecord toRecord(String key, long now, double halfLifeMillis) {
+            return AccessRecord.builder()
+                    .key(key)
+                    .url(url)
+                    .itemIndex(itemIndex)
+                    .score(scoreAt(now, halfLifeMillis))
+                    .build();
+        }
+    }
+}
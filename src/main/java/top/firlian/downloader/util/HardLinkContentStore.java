@@ -0,0 +1,269 @@
+package top.firlian.downloader.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import top.firlian.downloader.domain.port.ContentStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище с адресацией по содержимому на жестких ссылках.
+ * Загруженный файл хэшируется (SHA-256) и связывается жесткой ссылкой с блоком
+ * {@code <download-dir>/.blobs/<xx>/<hash>}. Если блок с таким хэшем уже есть,
+ * файл заменяется ссылкой на блок, и содержимое хранится на диске один раз.
+ * Счетчиком ссылок служит число жестких ссылок на блок: файл, удаленный
+ * кэшем или менеджером места, автоматически перестает ссылаться на блок,
+ * а блок без ссылок удаляется при сборке мусора.
+ * Если файловая система не поддерживает жесткие ссылки, дедупликация отключается.
+ */
+@Slf4j
+@Component
+public class HardLinkContentStore implements ContentStore {
+
+    /** Директория блоков внутри директории загрузок */
+    static final String BLOBS_DIR = ".blobs";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path downloadDir;
+    private final Path blobsDir;
+    private final Scheduler blockingScheduler;
+
+    /** Включена ли дедупликация: выключается, если жесткие ссылки недоступны */
+    private volatile boolean enabled;
+
+    /** Известные блоки по хэшу содержимого */
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор хранилища.
+     *
+     * @param downloadDir директория загрузок
+     * @param enabled включена ли дедупликация
+     * @param blockingScheduler планировщик для хэширования файлов
+     * @param meterRegistry реестр метрик для отчета об экономии места
+     */
+    public HardLinkContentStore(
+            @Value("${downloader.download-dir:./downloads}") String downloadDir,
+            @Value("${downloader.dedup.enabled:true}") boolean enabled,
+            Scheduler blockingScheduler,
+            MeterRegistry meterRegistry) {
+        this.downloadDir = Path.of(downloadDir).toAbsolutePath().normalize();
+        this.blobsDir = this.downloadDir.resolve(BLOBS_DIR);
+        this.blockingScheduler = blockingScheduler;
+        this.enabled = enabled;
+        if (enabled && !FileSystems.getDefault().supportedFileAttributeViews().contains("unix")) {
+            log.warn("Файловая система не сообщает число жестких ссылок, дедупликация отключена");
+            this.enabled = false;
+        }
+        if (this.enabled) {
+            loadBlobs();
+        }
+
+        Gauge.builder("downloader.storage.dedup.ratio", this, HardLinkContentStore::dedupRatio)
+                .description("Отношение логического размера файлов к занятому месту")
+                .register(meterRegistry);
+        Gauge.builder("downloader.storage.dedup.saved", this, HardLinkContentStore::savedBytes)
+                .description("Место, сэкономленное дедупликацией")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deduplicate(String filePath) {
+        if (!enabled || filePath == null) {
+            return;
+        }
+        blockingScheduler.schedule(() -> {
+            try {
+                link(Path.of(filePath).toAbsolutePath().normalize());
+            } catch (UnsupportedOperationException e) {
+                log.warn("Жесткие ссылки не поддерживаются, дедупликация отключена: {}", e.getMessage());
+                enabled = false;
+            } catch (IOException e) {
+                // Файл мог быть удален до хэширования
+                log.debug("Не удалось дедуплицировать файл {}: {}", filePath, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long collectGarbage() {
+        long freed = 0;
+        for (Map.Entry<String, Blob> entry : blobs.entrySet()) {
+            Path blob = blobPath(entry.getKey());
+            synchronized (this) {
+                try {
+                    int references = references(blob);
+                    if (references > 0) {
+                        entry.getValue().references = references;
+                        continue;
+                    }
+                    Files.deleteIfExists(blob);
+                } catch (IOException e) {
+                    log.debug("Блок {} недоступен: {}", entry.getKey(), e.getMessage());
+                }
+                blobs.remove(entry.getKey());
+                freed += entry.getValue().size;
+            }
+        }
+        if (!blobs.isEmpty()) {
+            log.info("Дедупликация: блоков {}, коэффициент {}, сэкономлено {} МБ, освобождено {} МБ",
+                    blobs.size(), String.format("%.2f", dedupRatio()),
+                    savedBytes() / (1024 * 1024), freed / (1024 * 1024));
+        }
+        return freed;
+    }
+
+    /**
+     * Связывает файл с блоком его содержимого.
+     */
+    void link(Path file) throws IOException {
+        if (!file.startsWith(downloadDir) || file.startsWith(blobsDir) || !Files.isRegularFile(file)) {
+            return;
+        }
+        String hash = sha256(file);
+        Path blob = blobPath(hash);
+        synchronized (this) {
+            long size = Files.size(file);
+            if (Files.exists(blob) && Files.size(blob) == size) {
+                if (Files.isSameFile(blob, file)) {
+                    return;
+                }
+                // Ссылка создается рядом и атомарно заменяет файл, путь к файлу не меняется
+                Path temp = file.resolveSibling("." + file.getFileName() + ".link");
+                Files.deleteIfExists(temp);
+                Files.createLink(temp, blob);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.info("Файл {} совпал с уже загруженным, сэкономлено {} байт", file.getFileName(), size);
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.deleteIfExists(blob);
+                Files.createLink(blob, file);
+            }
+            blobs.put(hash, new Blob(size, references(blob)));
+        }
+    }
+
+    /**
+     * Отношение суммарного размера файлов, ссылающихся на блоки, к размеру самих блоков.
+     */
+    double dedupRatio() {
+        long physical = 0;
+        long logical = 0;
+        for (Blob blob : blobs.values()) {
+            if (blob.references > 0) {
+                physical += blob.size;
+                logical += blob.size * blob.references;
+            }
+        }
+        return physical == 0 ? 1.0 : (double) logical / physical;
+    }
+
+    /**
+     * Место, сэкономленное дедупликацией: повторные ссылки на блоки не занимают места.
+     */
+    long savedBytes() {
+        long saved = 0;
+        for (Blob blob : blobs.values()) {
+            if (blob.references > 1) {
+                saved += blob.size * (blob.references - 1);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Восстанавливает сведения о блоках при запуске и удаляет блоки без ссылок.
+     */
+    private void loadBlobs() {
+        if (!Files.isDirectory(blobsDir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(blobsDir)) {
+            paths.filter(Files::isRegularFile).forEach(blob -> {
+                try {
+                    int references = references(blob);
+                    if (references > 0) {
+                        blobs.put(blob.getFileName().toString(), new Blob(Files.size(blob), references));
+                    } else {
+                        Files.deleteIfExists(blob);
+                    }
+                } catch (IOException e) {
+                    log.debug("Блок {} недоступен: {}", blob, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать директорию блоков {}: {}", blobsDir, e.getMessage());
+        }
+        log.info("Загружено блоков дедупликации: {}", blobs.size());
+    }
+
+    private Path blobPath(String hash) {
+        return blobsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Число файлов, ссылающихся на блок: все жесткие ссылки, кроме самого блока.
+     */
+    private static int references(Path blob) throws IOException {
+        return ((Number) Files.getAttribute(blob, "unix:nlink")).intValue() - 1;
+    }
+
+    /**
+     * Потоково вычисляет SHA-256 содержимого файла.
+     */
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (input.read(buffer) >= 0) {
+                // Содержимое учитывается дайджестом при чтении
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Блок содержимого.
+     */
+    private static final class Blob {
+        /** Размер содержимого в байтах */
+        final long size;
+
+        /** Число файлов, ссылающихся на блок */
+        volatile int references;
+
+        Blob(long size, int references) {
+            this.size = size;
+            this.references = references;
+        }
+    }
+}
@@ -1,56 +1,183 @@
 package top.firlian.downloader.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import top.firlian.downloader.domain.model.CachedFile;
 import top.firlian.downloader.domain.model.MediaContent;
 import top.firlian.downloader.domain.port.CacheRepository;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * In-memory реализация репозитория кэша медиа контента.
  * Хранит загруженные файлы в памяти с учетом времени жизни (TTL).
- * Потокобезопасная реализация с использованием ConcurrentHashMap.
+ * Истекшие записи удаляются колесом таймеров Caffeine небольшими порциями
+ * по мере истечения, без периодического обхода всего кэша.
+ * Суммарный размер файлов ограничен: вес записи равен размеру ее файла,
+ * а при переполнении Caffeine вытесняет записи по политике W-TinyLFU,
+ * поэтому разовая загрузка большого файла не вытесняет популярные записи.
+ * При удалении записи из кэша удаляется и ее файл.
+ * Если задан файл индекса, записи переживают перезапуск: изменения дописываются
+ * в журнал {@link CacheIndex}, который воспроизводится при старте. Наличие файлов
+ * восстановленных записей проверяется лениво, при первом обращении.
  */
 @Slf4j
 @Component
 public class InMemoryCacheRepository implements CacheRepository {
 
-    /** Хранилище кэша с URL в качестве ключа */
-    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-    
+    /** Сколько устаревших записей допускается в журнале сверх удвоенного числа живых */
+    private static final long COMPACTION_SLACK = 1000;
+
+    /** Хранилище кэша с каноническим ключом медиа в качестве ключа */
+    private final Cache<String, CacheEntry> cache;
+
     /** Время жизни записей в кэше в миллисекундах */
     private final long cacheTtlMillis;
 
+    /** Источник времени кэша, от которого отсчитывается истечение записей */
+    private final Ticker ticker;
+
+    /** Директория загрузок, из которой удаляются файлы вытесненных записей */
+    private final Path downloadDir;
+
+    /** Журнал индекса кэша на диске или null, если индекс отключен */
+    private final CacheIndex index;
+
     /**
-     * Конструктор с настройкой времени жизни кэша.
+     * Конструктор с настройкой времени жизни и размера кэша.
      *
      * @param cacheTtlHours время жизни кэша в часах (по умолчанию 24)
+     * @param maxSizeMb максимальный суммарный размер файлов в кэше в мегабайтах
+     * @param downloadDir директория загрузок
+     * @param indexFile файл индекса кэша (пустая строка отключает сохранение между запусками)
+     * @param meterRegistry реестр метрик для статистики попаданий
      */
-    public InMemoryCacheRepository(@Value("${downloader.cache-ttl-hours:24}") int cacheTtlHours) {
+    @Autowired
+    public InMemoryCacheRepository(
+            @Value("${downloader.cache-ttl-hours:24}") int cacheTtlHours,
+            @Value("${downloader.cache-max-size-mb:10240}") long maxSizeMb,
+            @Value("${downloader.download-dir:./downloads}") String downloadDir,
+            @Value("${downloader.cache-index-file:}") String indexFile,
+            MeterRegistry meterRegistry) {
+        this(cacheTtlHours, maxSizeMb, downloadDir, indexFile, meterRegistry,
+                Ticker.systemTicker(), Scheduler.systemScheduler());
+    }
+
+    /**
+     * Конструктор с источником времени и планировщиком истечения записей.
+     *
+     * @param ticker источник времени кэша
+     * @param expiryScheduler планировщик, по которому удаляются истекшие записи
+     */
+    InMemoryCacheRepository(int cacheTtlHours, long maxSizeMb, String downloadDir, String indexFile,
+                            MeterRegistry meterRegistry, Ticker ticker, Scheduler expiryScheduler) {
         this.cacheTtlMillis = cacheTtlHours * 60 * 60 * 1000L;
+        this.ticker = ticker;
+        this.downloadDir = Path.of(downloadDir).toAbsolutePath().normalize();
+        this.cache = Caffeine.newBuilder()
+                // Вес считается в килобайтах, чтобы уместиться в int
+                .maximumWeight(maxSizeMb * 1024)
+                .weigher((String key, CacheEntry entry) -> weightKb(entry.content))
+                // Истечение по колесу таймеров: работа пропорциональна числу истекших записей
+                .expireAfter(new EntryExpiry())
+                .scheduler(expiryScheduler)
+                .ticker(ticker)
+                .removalListener(this::onRemoval)
+                // Обслуживание и удаление файлов выполняются в вызывающем потоке
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "downloader.media");
+        this.index = indexFile == null || indexFile.isBlank() ? null : new CacheIndex(Path.of(indexFile));
+        if (index != null) {
+            restore();
+        }
+    }
+
+    /**
+     * Восстанавливает записи из индекса. Файлы не проверяются, поэтому время
+     * старта зависит только от размера индекса. Устаревшие записи пропускаются,
+     * а разросшийся журнал сжимается.
+     */
+    private void restore() {
+        long started = System.nanoTime();
+        long now = Instant.now().toEpochMilli();
+        synchronized (index) {
+            try {
+                Map<String, CacheIndex.Entry> entries = index.load();
+                for (Map.Entry<String, CacheIndex.Entry> entry : entries.entrySet()) {
+                    CacheIndex.Entry indexed = entry.getValue();
+                    if (now - indexed.timestamp() <= cacheTtlMillis) {
+                        long remainingMillis = cacheTtlMillis - (now - indexed.timestamp());
+                        cache.put(entry.getKey(), new CacheEntry(indexed.content(), indexed.timestamp(),
+                                expiresAt(remainingMillis), false));
+                    }
+                }
+                compactIfNeeded();
+            } catch (IOException e) {
+                log.error("Не удалось загрузить индекс кэша, кэш начнет работу пустым: {}", e.getMessage());
+            }
+        }
+        log.info("Из индекса кэша восстановлено {} записей за {} мс",
+                cache.estimatedSize(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Закрывает файл индекса при остановке приложения.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (index != null) {
+            synchronized (index) {
+                index.close();
+            }
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Optional<MediaContent> get(String url) {
-        CacheEntry entry = cache.get(url);
+    public Optional<MediaContent> get(String key) {
+        // Истекшие записи Caffeine не возвращает, даже если еще не успел их удалить
+        CacheEntry entry = cache.getIfPresent(key);
         if (entry == null) {
             return Optional.empty();
         }
 
-        // Проверяем, не истек ли срок жизни записи
-        if (Instant.now().toEpochMilli() - entry.timestamp > cacheTtlMillis) {
-            cache.remove(url);
-            return Optional.empty();
+        if (!entry.verified) {
+            entry = verify(key, entry);
+            if (entry == null) {
+                return Optional.empty();
+            }
         }
 
+        entry.recordHit();
         return Optional.of(entry.content);
     }
 
@@ -58,9 +185,116 @@ public class InMemoryCacheRepository implements CacheRepository {
      * {@inheritDoc}
      */
     @Override
-    public void put(String url, MediaContent content) {
-        cache.put(url, new CacheEntry(content, Instant.now().toEpochMilli()));
-        log.debug("Контент кэширован для URL: {}", url);
+    public Optional<MediaContent> peek(String key) {
+        return Optional.ofNullable(cache.policy().getIfPresentQuietly(key)).map(entry -> entry.content);
+    }
+
+    /**
+     * Проверяет, что файл восстановленной из индекса записи еще существует.
+     * Запись без файла, но с file_id Telegram остается пригодной для повторной отправки.
+     *
+     * @return проверенная запись или null, если запись удалена
+     */
+    private CacheEntry verify(String key, CacheEntry entry) {
+        String filePath = entry.content.getFilePath();
+        if (filePath == null || Files.exists(Path.of(filePath))) {
+            CacheEntry verified = entry.with(entry.content, true);
+            cache.asMap().replace(key, entry, verified);
+            return verified;
+        }
+        log.debug("Файл записи кэша {} больше не существует: {}", key, filePath);
+        return dropFile(key, entry);
+    }
+
+    /**
+     * Отвязывает запись от ее файла: запись с file_id Telegram остается без файла,
+     * остальные записи удаляются. Файл удаляет слушатель удаления.
+     *
+     * @return запись без файла или null, если запись удалена
+     */
+    private CacheEntry dropFile(String key, CacheEntry entry) {
+        if (entry.content.getTelegramFileId() != null) {
+            CacheEntry withoutFile = entry.with(entry.content.toBuilder().filePath(null).build(), true);
+            appendPut(key, withoutFile);
+            cache.asMap().replace(key, entry, withoutFile);
+            return withoutFile;
+        }
+        cache.asMap().remove(key, entry);
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(String key, MediaContent content) {
+        CacheEntry entry = new CacheEntry(content, Instant.now().toEpochMilli(), expiresAt(cacheTtlMillis), true);
+        // Запись в индекс идет до вставки: вытеснение при вставке допишет удаление после нее
+        appendPut(key, entry);
+        cache.put(key, entry);
+        log.debug("Контент кэширован для ключа: {}", key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean renew(String key) {
+        CacheEntry entry = cache.policy().getIfPresentQuietly(key);
+        if (entry == null) {
+            return false;
+        }
+        CacheEntry renewed = entry.renewed(Instant.now().toEpochMilli(), expiresAt(cacheTtlMillis));
+        appendPut(key, renewed);
+        return cache.asMap().replace(key, entry, renewed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void evictFile(String key) {
+        CacheEntry entry = cache.getIfPresent(key);
+        if (entry != null && entry.content.getFilePath() != null) {
+            dropFile(key, entry);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CachedFile> files() {
+        List<CachedFile> files = new ArrayList<>();
+        cache.asMap().forEach((key, entry) -> {
+            if (entry.content.getFilePath() != null) {
+                files.add(CachedFile.builder()
+                        .key(key)
+                        .filePath(entry.content.getFilePath())
+                        .sizeBytes(entry.content.getSizeBytes())
+                        .lastAccessMillis(entry.lastAccess)
+                        .hits(entry.hits.get())
+                        .build());
+            }
+        });
+        return files;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<Duration> expiresIn(String key) {
+        return cache.policy().expireVariably()
+                .flatMap(policy -> policy.getExpiresAfter(key));
     }
 
     /**
@@ -68,19 +302,197 @@ public class InMemoryCacheRepository implements CacheRepository {
      */
     @Override
     public void evictExpired() {
-        long now = Instant.now().toEpochMilli();
-        // Удаляем все записи, у которых истек срок жизни
-        cache.entrySet().removeIf(entry -> 
-            now - entry.getValue().timestamp > cacheTtlMillis
-        );
-        log.info("Удалены устаревшие записи кэша");
+        // Истекшие записи удаляются по расписанию колеса таймеров, здесь лишь
+        // выполняется отложенное обслуживание без обхода всех записей
+        cache.cleanUp();
+        log.debug("Выполнено обслуживание кэша, записей: {}", cache.estimatedSize());
     }
 
     /**
-     * Запись в кэше с временной меткой.
+     * Время истечения записи по источнику времени кэша.
      *
-     * @param content медиа контент
-     * @param timestamp время добавления в кэш в миллисекундах
+     * @param remainingMillis сколько запись еще должна храниться
+     * @return время истечения в наносекундах источника времени
+     */
+    private long expiresAt(long remainingMillis) {
+        return ticker.read() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+    }
+
+    /**
+     * Вес записи в килобайтах. Записи без файла (списки элементов и файлы,
+     * уже загруженные в Telegram) весят минимально.
+     */
+    private static int weightKb(MediaContent content) {
+        if (content.getFilePath() == null) {
+            return 1;
+        }
+        long kb = (content.getSizeBytes() + 1023) / 1024;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, kb));
+    }
+
+    /**
+     * Удаляет файл записи, покинувшей кэш. При замене записи файл сохраняется,
+     * если новая запись ссылается на тот же файл.
+     */
+    private void onRemoval(String key, CacheEntry entry, RemovalCause cause) {
+        if (cause != RemovalCause.REPLACED) {
+            appendRemove(key);
+        }
+        if (entry == null || entry.content.getFilePath() == null) {
+            return;
+        }
+        String filePath = entry.content.getFilePath();
+        if (cause == RemovalCause.REPLACED) {
+            CacheEntry current = cache.getIfPresent(key);
+            if (current != null && Objects.equals(filePath, current.content.getFilePath())) {
+                return;
+            }
+        }
+        deleteFile(Path.of(filePath).toAbsolutePath().normalize());
+        log.debug("Запись кэша удалена ({}), файл удален: {}", cause, filePath);
+    }
+
+    private void appendPut(String key, CacheEntry entry) {
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            try {
+                index.appendPut(key, new CacheIndex.Entry(entry.content, entry.timestamp));
+                compactIfNeeded();
+            } catch (UncheckedIOException | IOException e) {
+                log.warn("Не удалось записать в индекс кэша: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void appendRemove(String key) {
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            try {
+                index.appendRemove(key);
+            } catch (UncheckedIOException e) {
+                log.warn("Не удалось записать в индекс кэша: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Сжимает журнал, когда устаревших записей в нем заметно больше, чем живых.
+     * Вызывается под блокировкой индекса.
+     */
+    private void compactIfNeeded() throws IOException {
+        long live = cache.estimatedSize();
+        if (index.records() <= 2 * live + COMPACTION_SLACK) {
+            return;
+        }
+        Map<String, CacheIndex.Entry> snapshot = new LinkedHashMap<>();
+        cache.asMap().forEach((key, entry) ->
+                snapshot.put(key, new CacheIndex.Entry(entry.content, entry.timestamp)));
+        index.compact(snapshot);
+    }
+
+    /**
+     * Удаляет файл и его директорию задачи, если она опустела.
+     * Файлы вне директории загрузок не трогаются.
+     */
+    private void deleteFile(Path file) {
+        if (!file.startsWith(downloadDir)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+            Path taskDir = file.getParent();
+            if (taskDir != null && !taskDir.equals(downloadDir)) {
+                Files.deleteIfExists(taskDir);
+            }
+        } catch (DirectoryNotEmptyException e) {
+            // В директории задачи остались другие файлы
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Срок жизни записи отсчитывается от времени ее добавления в кэш, поэтому
+     * восстановленная из индекса или замененная запись истекает в исходный срок.
+     * Время истечения хранится в записи по источнику времени кэша. Чтение срок не продлевает.
+     */
+    private static final class EntryExpiry implements Expiry<String, CacheEntry> {
+
+        @Override
+        public long expireAfterCreate(String key, CacheEntry entry, long currentTime) {
+            return Math.max(0, entry.expiresAt - currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CacheEntry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CacheEntry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Запись в кэше с временной меткой и статистикой обращений.
+     * Записи сравниваются по ссылке, поэтому условные замена и удаление
+     * затрагивают только ту запись, которая была прочитана.
      */
-    private record CacheEntry(MediaContent content, long timestamp) {}
+    private static final class CacheEntry {
+        /** Медиа контент */
+        final MediaContent content;
+
+        /** Время добавления в кэш в миллисекундах */
+        final long timestamp;
+
+        /** Время истечения в наносекундах источника времени кэша */
+        final long expiresAt;
+
+        /** Проверено ли наличие файла (false для записей из индекса) */
+        final boolean verified;
+
+        /** Число попаданий в запись */
+        final AtomicInteger hits;
+
+        /** Время последнего обращения в миллисекундах */
+        volatile long lastAccess;
+
+        CacheEntry(MediaContent content, long timestamp, long expiresAt, boolean verified) {
+            this(content, timestamp, expiresAt, verified, new AtomicInteger(), timestamp);
+        }
+
+        private CacheEntry(MediaContent content, long timestamp, long expiresAt, boolean verified,
+                           AtomicInteger hits, long lastAccess) {
+            this.content = content;
+            this.timestamp = timestamp;
+            this.expiresAt = expiresAt;
+            this.verified = verified;
+            this.hits = hits;
+            this.lastAccess = lastAccess;
+        }
+
+        /**
+         * Создает запись с другим контентом, сохраняя время добавления и статистику.
+         */
+        CacheEntry with(MediaContent content, boolean verified) {
+            return new CacheEntry(content, timestamp, expiresAt, verified, hits, lastAccess);
+        }
+
+        /**
+         * Создает ту же запись с новым временем добавления и истечения, сохраняя статистику.
+         */
+        CacheEntry renewed(long timestamp, long expiresAt) {
+            return new CacheEntry(content, timestamp, expiresAt, verified, hits, lastAccess);
+        }
+
+        void recordHit() {
+            hits.incrementAndGet();
+            lastAccess = Instant.now().toEpochMilli();
+        }
+    }
 }
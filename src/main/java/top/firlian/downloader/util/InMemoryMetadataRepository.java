@@ -0,0 +1,138 @@
+package top.firlian.downloader.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.error.ContentUnavailableException.Reason;
+import top.firlian.downloader.domain.model.MediaMetadata;
+import top.firlian.downloader.domain.port.MetadataRepository;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory реализация репозитория метаданных.
+ * Метаданные хранятся с общим коротким временем жизни, а отказы для
+ * недоступного контента - со временем жизни, зависящим от причины:
+ * приватный контент может скоро открыться, а удаленный - уже нет.
+ */
+@Slf4j
+@Component
+public class InMemoryMetadataRepository implements MetadataRepository {
+
+    /** Метаданные по ключу медиа */
+    private final Cache<String, MediaMetadata> metadata;
+
+    /** Отказы для недоступного контента по ключу медиа или элемента */
+    private final Cache<String, ContentUnavailableException> failures;
+
+    /** Время хранения отказа для каждой причины недоступности */
+    private final Map<Reason, Duration> failureTtls = new EnumMap<>(Reason.class);
+
+    /** Размещать ли упакованные списки элементов вне кучи */
+    private final boolean offHeapItems;
+
+    /**
+     * Конструктор с настройкой времени жизни метаданных и отказов.
+     *
+     * @param metadataTtlMinutes время жизни метаданных в минутах
+     * @param maxEntries максимальное число записей каждого вида
+     * @param offHeapItems размещать ли упакованные списки элементов вне кучи
+     * @param privateTtlMinutes время хранения отказа для приватного контента
+     * @param removedTtlMinutes время хранения отказа для удаленного контента
+     * @param geoBlockedTtlMinutes время хранения отказа для заблокированного в регионе контента
+     * @param loginRequiredTtlMinutes время хранения отказа для контента, требующего входа
+     * @param unavailableTtlMinutes время хранения отказа для прочего недоступного контента
+     */
+    public InMemoryMetadataRepository(
+            @Value("${downloader.metadata-cache.ttl-minutes:30}") long metadataTtlMinutes,
+            @Value("${downloader.metadata-cache.max-entries:10000}") long maxEntries,
+            @Value("${downloader.metadata-cache.off-heap:false}") boolean offHeapItems,
+            @Value("${downloader.negative-cache.private-minutes:10}") long privateTtlMinutes,
+            @Value("${downloader.negative-cache.removed-minutes:1440}") long removedTtlMinutes,
+            @Value("${downloader.negative-cache.geo-blocked-minutes:360}") long geoBlockedTtlMinutes,
+            @Value("${downloader.negative-cache.login-required-minutes:60}") long loginRequiredTtlMinutes,
+            @Value("${downloader.negative-cache.unavailable-minutes:15}") long unavailableTtlMinutes) {
+        this.offHeapItems = offHeapItems;
+        failureTtls.put(Reason.PRIVATE, Duration.ofMinutes(privateTtlMinutes));
+        failureTtls.put(Reason.REMOVED, Duration.ofMinutes(removedTtlMinutes));
+        failureTtls.put(Reason.GEO_BLOCKED, Duration.ofMinutes(geoBlockedTtlMinutes));
+        failureTtls.put(Reason.LOGIN_REQUIRED, Duration.ofMinutes(loginRequiredTtlMinutes));
+        failureTtls.put(Reason.UNAVAILABLE, Duration.ofMinutes(unavailableTtlMinutes));
+
+        this.metadata = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMinutes(metadataTtlMinutes))
+                .build();
+        this.failures = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<String, ContentUnavailableException>() {
+                    @Override
+                    public long expireAfterCreate(String key, ContentUnavailableException failure, long currentTime) {
+                        return failureTtl(failure).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, ContentUnavailableException failure,
+                                                  long currentTime, long currentDuration) {
+                        return failureTtl(failure).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, ContentUnavailableException failure,
+                                                long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<MediaMetadata> get(String key) {
+        return Optional.ofNullable(metadata.getIfPresent(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Список элементов хранится в упакованном виде и декодируется по одному элементу при чтении.
+     */
+    @Override
+    public void put(String key, MediaMetadata value) {
+        if (value.hasItems()) {
+            value = value.toBuilder()
+                    .items(PackedMediaItems.pack(value.getItems(), offHeapItems))
+                    .build();
+        }
+        metadata.put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<ContentUnavailableException> getFailure(String key) {
+        return Optional.ofNullable(failures.getIfPresent(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putFailure(String key, ContentUnavailableException failure) {
+        failures.put(key, failure);
+        log.debug("Отказ для {} кэширован на {} ({})", key, failureTtl(failure), failure.getReason());
+    }
+
+    private Duration failureTtl(ContentUnavailableException failure) {
+        return failureTtls.getOrDefault(failure.getReason(), failureTtls.get(Reason.UNAVAILABLE));
+    }
+}
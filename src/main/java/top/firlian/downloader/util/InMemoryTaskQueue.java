@@ -1,38 +1,96 @@
 package top.firlian.downloader.util;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import top.firlian.downloader.domain.model.DownloadTask;
+import top.firlian.downloader.domain.model.Provider;
 import top.firlian.downloader.domain.model.TaskStatus;
 import top.firlian.downloader.domain.port.TaskQueue;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 /**
  * In-memory реализация очереди задач загрузки.
- * Хранит задачи в памяти и управляет их состоянием.
- * Потокобезопасная реализация с использованием ConcurrentHashMap.
+ * Ожидающие задачи хранятся в приоритетных очередях по провайдерам,
+ * состояние всех задач - в ConcurrentHashMap для чтения без блокировки.
+ * Изменения состояния выполняются атомарно под общей блокировкой.
+ * Завершенные задачи хранятся ограниченное время и в ограниченном количестве.
  */
 @Slf4j
 @Component
 public class InMemoryTaskQueue implements TaskQueue {
 
-    /** Хранилище задач с URL в качестве ключа */
+    /** Порядок выдачи: сначала больший приоритет, затем порядок поступления */
+    private static final Comparator<QueuedTask> QUEUE_ORDER = Comparator
+            .comparingInt((QueuedTask queued) -> -queued.task().getPriority())
+            .thenComparingLong(QueuedTask::sequence);
+
+    /** Хранилище задач с ключом задачи в качестве ключа */
     private final Map<String, DownloadTask> tasks = new ConcurrentHashMap<>();
 
+    /** Очереди ожидающих задач по провайдерам */
+    private final Map<Provider, PriorityQueue<QueuedTask>> pending = new EnumMap<>(Provider.class);
+
+    /** Завершенные задачи в порядке завершения */
+    private final Deque<FinishedTask> finished = new ArrayDeque<>();
+
+    /** Время хранения завершенных задач */
+    private final Duration retention;
+
+    /** Максимальное число хранимых завершенных задач */
+    private final int maxFinished;
+
+    /** Порядковый номер для сохранения порядка поступления */
+    private long sequence;
+
+    /**
+     * Конструктор с настройкой хранения завершенных задач.
+     *
+     * @param retentionMinutes время хранения завершенных задач в минутах (по умолчанию 60)
+     * @param maxFinished максимальное число хранимых завершенных задач (по умолчанию 10000)
+     */
+    public InMemoryTaskQueue(
+            @Value("${downloader.tasks.retention-minutes:60}") int retentionMinutes,
+            @Value("${downloader.tasks.max-finished:10000}") int maxFinished) {
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.maxFinished = maxFinished;
+        for (Provider provider : Provider.values()) {
+            pending.put(provider, new PriorityQueue<>(QUEUE_ORDER));
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean addTask(DownloadTask task) {
-        if (tasks.containsKey(task.getUrl())) {
-            log.warn("Задача уже существует для URL: {}", task.getUrl());
+    public synchronized boolean addTask(DownloadTask task) {
+        DownloadTask existing = tasks.get(task.getKey());
+        if (existing != null && !existing.isFinished()) {
+            log.warn("Активная задача уже существует для ключа: {}", task.getKey());
             return false;
         }
-        tasks.put(task.getUrl(), task);
-        log.info("Добавлена задача для URL: {}", task.getUrl());
+
+        DownloadTask queued = task.toBuilder()
+                .status(TaskStatus.PENDING)
+                .createdAt(task.getCreatedAt() != null ? task.getCreatedAt() : Instant.now())
+                .startedAt(null)
+                .finishedAt(null)
+                .errorMessage(null)
+                .build();
+        tasks.put(queued.getKey(), queued);
+        pending.get(queued.getProvider()).add(new QueuedTask(queued, sequence++));
+        log.info("Добавлена задача для ключа: {}, приоритет: {}", queued.getKey(), queued.getPriority());
         return true;
     }
 
@@ -40,25 +98,53 @@ public class InMemoryTaskQueue implements TaskQueue {
      * {@inheritDoc}
      */
     @Override
-    public Optional<DownloadTask> getTask(String url) {
-        return Optional.ofNullable(tasks.get(url));
+    public synchronized Optional<DownloadTask> pollTask(Predicate<Provider> canStart) {
+        PriorityQueue<QueuedTask> best = null;
+        for (Map.Entry<Provider, PriorityQueue<QueuedTask>> entry : pending.entrySet()) {
+            QueuedTask head = entry.getValue().peek();
+            if (head != null && canStart.test(entry.getKey())
+                    && (best == null || QUEUE_ORDER.compare(head, best.peek()) < 0)) {
+                best = entry.getValue();
+            }
+        }
+        if (best == null) {
+            return Optional.empty();
+        }
+
+        DownloadTask started = best.poll().task().toBuilder()
+                .status(TaskStatus.DOWNLOADING)
+                .startedAt(Instant.now())
+                .build();
+        tasks.put(started.getKey(), started);
+        log.debug("Задача взята в работу: {}", started.getKey());
+        return Optional.of(started);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<DownloadTask> getTask(String key) {
+        return Optional.ofNullable(tasks.get(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void completeTask(String key) {
+        if (finish(key, TaskStatus.COMPLETED, null)) {
+            log.info("Задача завершена для ключа: {}", key);
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void completeTask(String url) {
-        DownloadTask task = tasks.get(url);
-        if (task != null) {
-            // Обновляем статус задачи на COMPLETED
-            tasks.put(url, DownloadTask.builder()
-                    .url(task.getUrl())
-                    .provider(task.getProvider())
-                    .chatId(task.getChatId())
-                    .status(TaskStatus.COMPLETED)
-                    .build());
-            log.info("Задача завершена для URL: {}", url);
+    public void failTask(String key, String errorMessage) {
+        if (finish(key, TaskStatus.FAILED, errorMessage)) {
+            log.error("Задача провалена для ключа: {} с ошибкой: {}", key, errorMessage);
         }
     }
 
@@ -66,18 +152,89 @@ public class InMemoryTaskQueue implements TaskQueue {
      * {@inheritDoc}
      */
     @Override
-    public void failTask(String url, String errorMessage) {
-        DownloadTask task = tasks.get(url);
-        if (task != null) {
-            // Обновляем статус задачи на FAILED с сообщением об ошибке
-            tasks.put(url, DownloadTask.builder()
-                    .url(task.getUrl())
-                    .provider(task.getProvider())
-                    .chatId(task.getChatId())
-                    .status(TaskStatus.FAILED)
-                    .errorMessage(errorMessage)
-                    .build());
-            log.error("Задача провалена для URL: {} с ошибкой: {}", url, errorMessage);
+    public synchronized int pendingCount(Provider provider) {
+        return pending.get(provider).size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void evictFinished() {
+        Instant threshold = Instant.now().minus(retention);
+        int evicted = 0;
+        // Завершенные задачи упорядочены по времени завершения - удаляем с начала
+        while (!finished.isEmpty() && !finished.peekFirst().finishedAt().isAfter(threshold)) {
+            if (evictOldestFinished()) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.info("Удалено завершенных задач: {}, осталось задач: {}", evicted, tasks.size());
+        }
+    }
+
+    /**
+     * Атомарно переводит активную задачу в завершенное состояние.
+     * Повторное завершение уже завершенной задачи игнорируется.
+     *
+     * @param key ключ задачи
+     * @param status итоговый статус задачи
+     * @param errorMessage сообщение об ошибке (для FAILED)
+     * @return true если состояние задачи изменено
+     */
+    private synchronized boolean finish(String key, TaskStatus status, String errorMessage) {
+        DownloadTask task = tasks.get(key);
+        if (task == null || task.isFinished()) {
+            log.warn("Нет активной задачи для ключа: {}", key);
+            return false;
+        }
+        if (task.getStatus() == TaskStatus.PENDING) {
+            pending.get(task.getProvider()).removeIf(queued -> queued.task().getKey().equals(key));
         }
+
+        Instant finishedAt = Instant.now();
+        tasks.put(key, task.toBuilder()
+                .status(status)
+                .errorMessage(errorMessage)
+                .finishedAt(finishedAt)
+                .build());
+        finished.addLast(new FinishedTask(key, finishedAt));
+        while (finished.size() > maxFinished) {
+            evictOldestFinished();
+        }
+        return true;
+    }
+
+    /**
+     * Удаляет самую давнюю завершенную задачу.
+     * Задача не удаляется, если по её ключу уже поставлена новая задача.
+     *
+     * @return true если задача удалена из хранилища
+     */
+    private boolean evictOldestFinished() {
+        FinishedTask oldest = finished.pollFirst();
+        DownloadTask task = tasks.get(oldest.key());
+        if (task != null && task.isFinished() && oldest.finishedAt().equals(task.getFinishedAt())) {
+            tasks.remove(oldest.key());
+            return true;
+        }
+        return false;
     }
+
+    /**
+     * Задача в очереди ожидания с порядковым номером поступления.
+     *
+     * @param task ожидающая задача
+     * @param sequence порядковый номер поступления
+     */
+    private record QueuedTask(DownloadTask task, long sequence) {}
+
+    /**
+     * Отметка о завершении задачи.
+     *
+     * @param key ключ задачи
+     * @param finishedAt время завершения задачи
+     */
+    private record FinishedTask(String key, Instant finishedAt) {}
 }
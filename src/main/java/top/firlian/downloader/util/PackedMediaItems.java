@@ -0,0 +1,227 @@
+package top.firlian.downloader.util;
+
+import top.firlian.downloader.domain.model.MediaItem;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Компактное неизменяемое представление списка элементов плейлиста или карусели.
+ * Все элементы хранятся в одном буфере вместо отдельного объекта со строками
+ * на каждый элемент:
+ * <ul>
+ *     <li>числа (индекс, размер) - переменной длины (varint);</li>
+ *     <li>тип - номером в словаре типов, один байт;</li>
+ *     <li>URL и название - байтами UTF-8, общий для всех URL префикс хранится один раз.</li>
+ * </ul>
+ * Элемент декодируется только при обращении к нему, поэтому построение клавиатуры
+ * выбора из первых элементов не разворачивает весь список. Буфер может размещаться
+ * вне кучи, а {@link #encoded()} дает форму для сохранения или передачи.
+ */
+public final class PackedMediaItems extends AbstractList<MediaItem> implements RandomAccess {
+
+    /** Словарь типов: номер в буфере - порядковый номер типа плюс один, 0 - тип не задан */
+    private static final MediaType[] TYPES = MediaType.values();
+
+    private final ByteBuffer buffer;
+
+    /** Смещения элементов в буфере */
+    private final int[] offsets;
+
+    /** Общий префикс URL элементов */
+    private final String urlPrefix;
+
+    private PackedMediaItems(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int[] position = {0};
+        int count = (int) readVarint(buffer, position);
+        this.urlPrefix = readString(buffer, position);
+        this.offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = position[0];
+            skipItem(buffer, position);
+        }
+    }
+
+    /**
+     * Упаковывает список элементов. Уже упакованный список возвращается как есть.
+     *
+     * @param items элементы
+     * @param offHeap разместить ли буфер вне кучи
+     * @return упакованный список
+     */
+    public static PackedMediaItems pack(List<MediaItem> items, boolean offHeap) {
+        if (items instanceof PackedMediaItems packed) {
+            return packed;
+        }
+        byte[] encoded = encode(items);
+        ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(encoded.length) : ByteBuffer.allocate(encoded.length);
+        buffer.put(encoded).flip();
+        return new PackedMediaItems(buffer.asReadOnlyBuffer());
+    }
+
+    /**
+     * Восстанавливает список из закодированной формы.
+     *
+     * @param encoded результат {@link #encoded()}
+     * @return упакованный список
+     */
+    public static PackedMediaItems decode(byte[] encoded) {
+        return new PackedMediaItems(ByteBuffer.wrap(encoded.clone()).asReadOnlyBuffer());
+    }
+
+    /**
+     * Возвращает закодированную форму списка.
+     *
+     * @return копия буфера
+     */
+    public byte[] encoded() {
+        byte[] copy = new byte[buffer.limit()];
+        buffer.get(0, copy);
+        return copy;
+    }
+
+    /**
+     * Возвращает размер закодированной формы в байтах.
+     */
+    public int encodedSize() {
+        return buffer.limit();
+    }
+
+    @Override
+    public MediaItem get(int index) {
+        int[] position = {offsets[index]};
+        int itemIndex = (int) readVarint(buffer, position);
+        long sizeBytes = zigZagDecode(readVarint(buffer, position));
+        int type = buffer.get(position[0]++);
+        String url = readString(buffer, position);
+        String title = readString(buffer, position);
+        return MediaItem.builder()
+                .index(itemIndex)
+                .sizeBytes(sizeBytes)
+                .type(type == 0 ? null : TYPES[type - 1])
+                .url(url == null ? null : urlPrefix + url)
+                .title(title)
+                .build();
+    }
+
+    @Override
+    public int size() {
+        return offsets.length;
+    }
+
+    private static byte[] encode(List<MediaItem> items) {
+        String prefix = commonUrlPrefix(items);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(items.size() * 48);
+        writeVarint(out, items.size());
+        writeString(out, prefix);
+        for (MediaItem item : items) {
+            writeVarint(out, item.getIndex());
+            writeVarint(out, zigZagEncode(item.getSizeBytes()));
+            out.write(item.getType() == null ? 0 : item.getType().ordinal() + 1);
+            writeString(out, item.getUrl() == null ? null : item.getUrl().substring(prefix.length()));
+            writeString(out, item.getTitle());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Общий префикс URL всех элементов, обрезанный до границы символа.
+     */
+    private static String commonUrlPrefix(List<MediaItem> items) {
+        String prefix = null;
+        for (MediaItem item : items) {
+            String url = item.getUrl();
+            if (url == null) {
+                continue;
+            }
+            if (prefix == null) {
+                prefix = url;
+                continue;
+            }
+            int length = 0;
+            int max = Math.min(prefix.length(), url.length());
+            while (length < max && prefix.charAt(length) == url.charAt(length)) {
+                length++;
+            }
+            if (length > 0 && Character.isHighSurrogate(prefix.charAt(length - 1))) {
+                length--;
+            }
+            prefix = prefix.substring(0, length);
+        }
+        return prefix == null ? "" : prefix;
+    }
+
+    /**
+     * Пропускает элемент, сдвигая позицию к следующему.
+     */
+    private static void skipItem(ByteBuffer buffer, int[] position) {
+        readVarint(buffer, position);
+        readVarint(buffer, position);
+        position[0]++;
+        skipString(buffer, position);
+        skipString(buffer, position);
+    }
+
+    /**
+     * Строка кодируется длиной UTF-8 плюс один (0 - null) и байтами UTF-8.
+     */
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, utf8.length + 1L);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    private static String readString(ByteBuffer buffer, int[] position) {
+        int length = (int) readVarint(buffer, position) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        buffer.get(position[0], utf8);
+        position[0] += length;
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer, int[] position) {
+        int length = (int) readVarint(buffer, position) - 1;
+        position[0] += Math.max(0, length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer buffer, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position[0]++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -3,33 +3,63 @@ package top.firlian.downloader.util;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import top.firlian.downloader.domain.model.MediaKey;
 import top.firlian.downloader.domain.model.Provider;
 import top.firlian.downloader.domain.port.ProviderDetector;
 
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Реализация детектора провайдера медиа контента на основе URL.
- * Использует регулярные выражения для определения источника контента.
+ * Использует регулярные выражения для определения источника контента
+ * и извлечения идентификатора медиа из известных форм ссылок.
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class UrlProviderDetector implements ProviderDetector {
 
-    /** Паттерн для распознавания YouTube URL */
+    /** Паттерн для распознавания YouTube URL (включая поддомены m., music.) */
     private static final Pattern YOUTUBE_PATTERN = Pattern.compile(
-            "(https?://)?(www\\.)?(youtube\\.com|youtu\\.be|youtube\\.com/shorts).*"
+            "(https?://)?([a-z0-9-]+\\.)?(youtube\\.com|youtu\\.be)([/?#].*)?"
     );
 
-    /** Паттерн для распознавания VK URL */
+    /** Паттерн для распознавания VK URL (включая m.vk.com и vkvideo.ru) */
     private static final Pattern VK_PATTERN = Pattern.compile(
-            "(https?://)?(www\\.)?(vk\\.com|vk\\.ru).*"
+            "(https?://)?([a-z0-9-]+\\.)?(vk\\.com|vk\\.ru|vkvideo\\.ru)([/?#].*)?"
     );
 
     /** Паттерн для распознавания Instagram URL */
     private static final Pattern INSTAGRAM_PATTERN = Pattern.compile(
-            "(https?://)?(www\\.)?(instagram\\.com|instagr\\.am).*"
+            "(https?://)?([a-z0-9-]+\\.)?(instagram\\.com|instagr\\.am)([/?#].*)?"
+    );
+
+    /** Идентификатор видео или плейлиста YouTube */
+    private static final Pattern YOUTUBE_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    /** Пути YouTube, в которых идентификатор видео идет следующим сегментом */
+    private static final Set<String> YOUTUBE_VIDEO_PATHS = Set.of("shorts", "live", "embed", "v", "e");
+
+    /** Объект VK: видео, клип, пост, фото или документ с идентификатором владельца */
+    private static final Pattern VK_OBJECT = Pattern.compile("(video|clip|wall|photo|doc)(-?\\d+_\\d+)");
+
+    /** Пути Instagram, в которых короткий код публикации идет следующим сегментом */
+    private static final Set<String> INSTAGRAM_POST_PATHS = Set.of("p", "reel", "reels", "tv");
+
+    /** Параметры отслеживания, не влияющие на содержимое ссылки */
+    private static final Set<String> TRACKING_PARAMS = Set.of(
+            "si", "feature", "pp", "igsh", "igshid", "fbclid", "gclid", "ref", "ref_src", "from"
     );
 
     /**
@@ -62,4 +92,152 @@ public class UrlProviderDetector implements ProviderDetector {
         log.warn("Неизвестный провайдер для URL: {}", url);
         return Provider.UNKNOWN;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MediaKey extractKey(String url) {
+        Provider provider = detectProvider(url);
+        String trimmed = url == null ? "" : url.trim();
+        URI uri = parse(trimmed);
+        if (uri == null) {
+            return MediaKey.builder().provider(provider).mediaId(trimmed).build();
+        }
+
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        List<String> segments = pathSegments(uri);
+        Map<String, String> query = queryParams(uri);
+        String mediaId = switch (provider) {
+            case YOUTUBE -> youtubeId(host, segments, query);
+            case VK -> vkId(segments, query);
+            case INSTAGRAM -> instagramId(segments);
+            case UNKNOWN -> null;
+        };
+        if (mediaId == null) {
+            mediaId = normalizedUrl(host, segments, query);
+        }
+        return MediaKey.builder().provider(provider).mediaId(mediaId).build();
+    }
+
+    /**
+     * Извлекает идентификатор YouTube: видео из youtu.be, watch?v=, /shorts/, /live/, /embed/
+     * или плейлист из параметра list. Ссылка на видео в плейлисте означает плейлист:
+     * так ее обрабатывает yt-dlp.
+     */
+    private static String youtubeId(String host, List<String> segments, Map<String, String> query) {
+        String list = query.get("list");
+        if (list != null && YOUTUBE_ID.matcher(list).matches()
+                && (segments.isEmpty() || !segments.get(0).equals("shorts"))) {
+            return "playlist:" + list;
+        }
+        String videoId = null;
+        if (host.equals("youtu.be") && !segments.isEmpty()) {
+            videoId = segments.get(0);
+        } else if (!segments.isEmpty() && segments.get(0).equals("watch")) {
+            videoId = query.get("v");
+        } else if (segments.size() >= 2 && YOUTUBE_VIDEO_PATHS.contains(segments.get(0))) {
+            videoId = segments.get(1);
+        }
+        return videoId != null && YOUTUBE_ID.matcher(videoId).matches() ? videoId : null;
+    }
+
+    /**
+     * Извлекает объект VK (например, {@code video-123_456}) из параметров z и w
+     * открытого поверх страницы окна или из пути. Клипы - это видео с тем же идентификатором.
+     */
+    private static String vkId(List<String> segments, Map<String, String> query) {
+        List<String> candidates = new ArrayList<>();
+        candidates.add(query.get("z"));
+        candidates.add(query.get("w"));
+        candidates.addAll(segments);
+        for (String candidate : candidates) {
+            if (candidate == null) {
+                continue;
+            }
+            Matcher matcher = VK_OBJECT.matcher(candidate);
+            if (matcher.lookingAt()) {
+                String type = matcher.group(1).equals("clip") ? "video" : matcher.group(1);
+                return type + matcher.group(2);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Извлекает короткий код публикации Instagram из /p/, /reel/, /tv/ (в том числе
+     * после имени пользователя) или идентификатор истории из /stories/USER/ID.
+     */
+    private static String instagramId(List<String> segments) {
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (INSTAGRAM_POST_PATHS.contains(segments.get(i))) {
+                return segments.get(i + 1);
+            }
+        }
+        if (segments.size() >= 3 && segments.get(0).equals("stories")) {
+            return "story:" + segments.get(2);
+        }
+        return null;
+    }
+
+    /**
+     * Нормализует нераспознанную ссылку: без схемы, префиксов www. и m., фрагмента,
+     * параметров отслеживания и с упорядоченными параметрами.
+     */
+    private static String normalizedUrl(String host, List<String> segments, Map<String, String> query) {
+        StringBuilder normalized = new StringBuilder(host.replaceFirst("^(www|m)\\.", ""));
+        for (String segment : segments) {
+            normalized.append('/').append(segment);
+        }
+        Map<String, String> sorted = new TreeMap<>(query);
+        String separator = "?";
+        for (Map.Entry<String, String> param : sorted.entrySet()) {
+            normalized.append(separator).append(param.getKey()).append('=').append(param.getValue());
+            separator = "&";
+        }
+        return normalized.toString();
+    }
+
+    private static URI parse(String url) {
+        try {
+            URI uri = new URI(url.contains("://") ? url : "https://" + url);
+            return uri.getHost() == null ? null : uri;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static List<String> pathSegments(URI uri) {
+        List<String> segments = new ArrayList<>();
+        String path = uri.getRawPath();
+        if (path != null) {
+            for (String segment : path.split("/")) {
+                if (!segment.isEmpty()) {
+                    segments.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Разбирает параметры запроса, отбрасывая параметры отслеживания и utm_*.
+     */
+    private static Map<String, String> queryParams(URI uri) {
+        Map<String, String> params = new LinkedHashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            String lowerName = name.toLowerCase(Locale.ROOT);
+            if (!name.isEmpty() && !TRACKING_PARAMS.contains(lowerName) && !lowerName.startsWith("utm_")) {
+                params.putIfAbsent(name, value);
+            }
+        }
+        return params;
+    }
 }
@@ -0,0 +1,108 @@
+#!/usr/bin/env python3
+"""
+Long-lived yt-dlp worker for the local-mode worker pool.
+Reads one JSON job per line from stdin and writes one JSON response per line to stdout.
+
+Request:  { "id": 1, "op": "ping" }
+          { "id": 2, "op": "extract", "url": "https://...", "download": true, "options": { ... } }
+Response: { "id": 2, "ok": true, "result": { ...info... }, "filepath": "/downloads/..." }
+          { "id": 2, "ok": false, "error": "..." }
+"""
+
+import json
+import os
+import sys
+
+# Keep the original stdout for the protocol only and send everything else
+# (yt-dlp messages, ffmpeg output) to stderr so it cannot corrupt responses
+_protocol = os.fdopen(os.dup(1), 'w', encoding='utf-8', buffering=1)
+os.dup2(2, 1)
+sys.stdout = sys.stderr
+
+import yt_dlp  # noqa: E402
+
+
+class _StderrLogger:
+    """Routes yt-dlp log messages to stderr"""
+
+    def debug(self, msg):
+        pass
+
+    def info(self, msg):
+        pass
+
+    def warning(self, msg):
+        print(msg, file=sys.stderr)
+
+    def error(self, msg):
+        print(msg, file=sys.stderr)
+
+
+BASE_OPTIONS = {
+    'quiet': True,
+    'no_warnings': True,
+    'noprogress': True,
+    'logger': _StderrLogger(),
+}
+
+
+# Bulky fields the downloader never reads; dropped to keep responses small
+DROPPED_FIELDS = {'formats', 'requested_formats', 'thumbnails', 'subtitles',
+                  'automatic_captions', 'heatmap', 'http_headers', 'fragments'}
+
+
+def _compact(value):
+    """Recursively drop bulky fields from an info dict"""
+    if isinstance(value, dict):
+        return {key: _compact(item) for key, item in value.items() if key not in DROPPED_FIELDS}
+    if isinstance(value, list):
+        return [_compact(item) for item in value]
+    return value
+
+
+def _find_filepath(info):
+    """Find the final path of the downloaded file in an info dict"""
+    candidates = [info] + [entry for entry in (info.get('entries') or []) if entry]
+    for item in candidates:
+        for requested in item.get('requested_downloads') or []:
+            if requested.get('filepath'):
+                return requested['filepath']
+        if item.get('filepath'):
+            return item['filepath']
+    return None
+
+
+def handle(request):
+    """Execute one job and return (result, filepath)"""
+    op = request.get('op')
+    if op == 'ping':
+        return {'version': yt_dlp.version.__version__}, None
+    if op == 'extract':
+        options = dict(BASE_OPTIONS)
+        options.update(request.get('options') or {})
+        download = bool(request.get('download'))
+        with yt_dlp.YoutubeDL(options) as ydl:
+            info = _compact(ydl.sanitize_info(ydl.extract_info(request['url'], download=download)))
+        return info, _find_filepath(info) if download else None
+    raise ValueError(f'Unknown op: {op}')
+
+
+def main():
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        request_id = None
+        try:
+            request = json.loads(line)
+            request_id = request.get('id')
+            result, filepath = handle(request)
+            response = {'id': request_id, 'ok': True, 'result': result, 'filepath': filepath}
+        except Exception as e:  # noqa: BLE001 - every failure is reported to the pool
+            response = {'id': request_id, 'ok': False, 'error': str(e)}
+        _protocol.write(json.dumps(response, ensure_ascii=False) + '\n')
+        _protocol.flush()
+
+
+if __name__ == '__main__':
+    main()
@@ -2,20 +2,49 @@ package top.firlian.downloader.adapter;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Chat;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.Video;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import top.firlian.downloader.adapter.out.YtDlpMediaDownloader;
+import top.firlian.downloader.adapter.out.YtDlpWorkerPool;
 import top.firlian.downloader.application.DownloadService;
+import top.firlian.downloader.config.BlockingExecutionConfig;
 import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaItem;
 import top.firlian.downloader.domain.model.MediaType;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 /**
@@ -184,4 +213,189 @@ class TelegramBotAdapterTest {
         // Проверка - не-URL не должен вызывать загрузку
         verify(downloadService, never()).processUrl(anyString(), anyLong());
     }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void shouldReturnFromUpdateWhileDownloadIsInFlight(@TempDir Path tempDir) throws Exception {
+        // Подготовка - заглушка yt-dlp сообщает о старте и ждет сигнала теста (не дольше 10 секунд)
+        Path started = tempDir.resolve("started");
+        Path release = tempDir.resolve("release");
+        Path ytdlp = tempDir.resolve("yt-dlp");
+        Files.writeString(ytdlp, "#!/bin/sh\n"
+                + "touch '" + started + "'\n"
+                + "i=0\n"
+                + "while [ ! -f '" + release + "' ] && [ $i -lt 100 ]; do sleep 0.1; i=$((i+1)); done\n"
+                + "exit 1\n");
+        assertTrue(ytdlp.toFile().setExecutable(true));
+
+        Scheduler blockingScheduler = new BlockingExecutionConfig().blockingScheduler("virtual", 4);
+        YtDlpWorkerPool workerPool = new YtDlpWorkerPool(false, 1, 1, 60, "python3", "");
+        YtDlpMediaDownloader downloader = new YtDlpMediaDownloader(blockingScheduler, workerPool);
+        ReflectionTestUtils.setField(downloader, "ytdlpBin", ytdlp.toString());
+        ReflectionTestUtils.setField(downloader, "downloadDir", tempDir.resolve("downloads").toString());
+
+        // Поток, на котором выполнялась загрузка: сигнал завершения приходит из него
+        AtomicReference<Thread> workThread = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        when(downloadService.processUrl(anyString(), anyLong()))
+                .thenAnswer(invocation -> {
+                    Mono<MediaContent> download = downloader.download(invocation.getArgument(0));
+                    // Получение Mono не запускает yt-dlp
+                    assertFalse(Files.exists(started));
+                    return download
+                            .doOnEach(signal -> workThread.set(Thread.currentThread()))
+                            .doFinally(signal -> finished.countDown());
+                });
+
+        String youtubeUrl = "https://www.youtube.com/watch?v=test123";
+        Update update = mock(Update.class);
+        Message message = mock(Message.class);
+        when(update.hasMessage()).thenReturn(true);
+        when(update.getMessage()).thenReturn(message);
+        when(message.hasText()).thenReturn(true);
+        when(message.getText()).thenReturn(youtubeUrl);
+        when(message.getChatId()).thenReturn(12345L);
+
+        try {
+            // Выполнение
+            telegramBotAdapter.onUpdateReceived(update);
+
+            // Проверка - обработка обновления вернулась, пока загрузка еще выполняется
+            assertEquals(1, finished.getCount());
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!Files.exists(started) && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(Files.exists(started));
+        } finally {
+            Files.createFile(release);
+        }
+
+        // Проверка - загрузка выполнялась на виртуальном потоке
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertTrue(workThread.get().isVirtual());
+        blockingScheduler.dispose();
+    }
+
+    @Test
+    void shouldRememberFileIdAfterUpload(@TempDir Path tempDir) throws Exception {
+        // Подготовка
+        String youtubeUrl = "https://www.youtube.com/watch?v=test123";
+        Path file = Files.write(tempDir.resolve("video.mp4"), new byte[10]);
+        TelegramBotAdapter adapter = spy(telegramBotAdapter);
+        doReturn(null).when(adapter).execute(any(SendMessage.class));
+        doReturn(videoMessage("new-id")).when(adapter).execute(any(SendVideo.class));
+        when(downloadService.processUrl(anyString(), anyLong()))
+                .thenReturn(Mono.just(videoContent(youtubeUrl, file, null)));
+
+        // Выполнение
+        adapter.onUpdateReceived(urlUpdate(youtubeUrl));
+
+        // Проверка - file_id из ответа Telegram сохранен для повторных отправок
+        verify(downloadService).rememberTelegramFile(youtubeUrl, null, "new-id", "new-id-unique");
+    }
+
+    @Test
+    void shouldResendFileWhenFileIdRejected(@TempDir Path tempDir) throws Exception {
+        // Подготовка - Telegram отклоняет сохраненный file_id
+        String youtubeUrl = "https://www.youtube.com/watch?v=test123";
+        Path file = Files.write(tempDir.resolve("video.mp4"), new byte[10]);
+        MediaContent stale = videoContent(youtubeUrl, file, "stale-id");
+        ApiResponse<?> rejected = new ObjectMapper().readValue(
+                "{\"ok\":false,\"error_code\":400,\"description\":\"Bad Request: wrong file identifier\"}",
+                ApiResponse.class);
+        TelegramBotAdapter adapter = spy(telegramBotAdapter);
+        doReturn(null).when(adapter).execute(any(SendMessage.class));
+        doThrow(new TelegramApiRequestException("Ошибка отправки", rejected))
+                .doReturn(videoMessage("new-id"))
+                .when(adapter).execute(any(SendVideo.class));
+        when(downloadService.processUrl(anyString(), anyLong())).thenReturn(Mono.just(stale));
+        when(downloadService.reloadContent(eq(youtubeUrl), isNull(), eq(12345L), eq(stale)))
+                .thenReturn(Mono.just(videoContent(youtubeUrl, file, null)));
+
+        // Выполнение
+        adapter.onUpdateReceived(urlUpdate(youtubeUrl));
+
+        // Проверка - файл отправлен заново и получен новый file_id
+        verify(adapter, times(2)).execute(any(SendVideo.class));
+        verify(downloadService).rememberTelegramFile(youtubeUrl, null, "new-id", "new-id-unique");
+    }
+
+    @Test
+    void shouldDownloadItemSelectedFromKeyboard() throws Exception {
+        // Подготовка - URL плейлиста содержит двоеточия и длиннее лимита callback данных
+        String playlistUrl = "https://www.youtube.com/playlist?list=PLrAXtmErZgOeiKm4sgNOknGvNjby9efdf&si=abcdef123456";
+        MediaContent playlist = MediaContent.builder()
+                .url(playlistUrl)
+                .title("Test Playlist")
+                .type(MediaType.VIDEO)
+                .items(List.of(
+                        MediaItem.builder().index(0).title("Первое").type(MediaType.VIDEO).build(),
+                        MediaItem.builder().index(1).title("Второе").type(MediaType.VIDEO).build()))
+                .build();
+        TelegramBotAdapter adapter = spy(telegramBotAdapter);
+        doReturn(null).when(adapter).execute(any(SendMessage.class));
+        when(downloadService.processUrl(anyString(), anyLong())).thenReturn(Mono.just(playlist));
+        when(downloadService.processUrlWithIndex(anyString(), anyInt(), anyLong())).thenReturn(Mono.empty());
+
+        adapter.onUpdateReceived(urlUpdate(playlistUrl));
+        ArgumentCaptor<SendMessage> messages = ArgumentCaptor.forClass(SendMessage.class);
+        verify(adapter, atLeastOnce()).execute(messages.capture());
+        InlineKeyboardMarkup keyboard = messages.getAllValues().stream()
+                .map(message -> (InlineKeyboardMarkup) message.getReplyMarkup())
+                .filter(markup -> markup != null)
+                .findFirst()
+                .orElseThrow();
+        String callbackData = keyboard.getKeyboard().get(1).get(0).getCallbackData();
+
+        // Выполнение
+        adapter.onUpdateReceived(callbackUpdate(callbackData));
+
+        // Проверка - выбранный элемент загружается по исходному URL
+        assertTrue(callbackData.getBytes(StandardCharsets.UTF_8).length <= 64);
+        verify(downloadService).processUrlWithIndex(playlistUrl, 1, 12345L);
+    }
+
+    private static Update urlUpdate(String url) {
+        Update update = mock(Update.class);
+        Message message = mock(Message.class);
+        when(update.hasMessage()).thenReturn(true);
+        when(update.getMessage()).thenReturn(message);
+        when(message.hasText()).thenReturn(true);
+        when(message.getText()).thenReturn(url);
+        when(message.getChatId()).thenReturn(12345L);
+        return update;
+    }
+
+    private static Update callbackUpdate(String data) {
+        Update update = mock(Update.class);
+        CallbackQuery callbackQuery = mock(CallbackQuery.class);
+        Message message = mock(Message.class);
+        when(update.hasCallbackQuery()).thenReturn(true);
+        when(update.getCallbackQuery()).thenReturn(callbackQuery);
+        when(callbackQuery.getData()).thenReturn(data);
+        when(callbackQuery.getMessage()).thenReturn(message);
+        when(message.getChatId()).thenReturn(12345L);
+        return update;
+    }
+
+    private static MediaContent videoContent(String url, Path file, String fileId) {
+        return MediaContent.builder()
+                .url(url)
+                .title("Test Video")
+                .type(MediaType.VIDEO)
+                .filePath(file.toString())
+                .sizeBytes(10L)
+                .telegramFileId(fileId)
+                .build();
+    }
+
+    private static Message videoMessage(String fileId) {
+        Video video = new Video();
+        video.setFileId(fileId);
+        video.setFileUniqueId(fileId + "-unique");
+        Message message = new Message();
+        message.setVideo(video);
+        return message;
+    }
 }
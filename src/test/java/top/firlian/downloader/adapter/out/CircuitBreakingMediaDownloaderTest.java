@@ -0,0 +1,78 @@
+package top.firlian.downloader.adapter.out;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.error.DownloadException;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+import top.firlian.downloader.domain.model.Provider;
+import top.firlian.downloader.domain.port.MediaDownloader;
+import top.firlian.downloader.domain.port.ProviderDetector;
+import top.firlian.downloader.util.CircuitBreakerRegistry;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты для CircuitBreakingMediaDownloader: выключатели провайдеров независимы.
+ */
+class CircuitBreakingMediaDownloaderTest {
+
+    private static final String YOUTUBE = "https://www.youtube.com/watch?v=1";
+    private static final String VK = "https://vk.com/video1";
+
+    private MediaDownloader delegate;
+    private CircuitBreakingMediaDownloader downloader;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(MediaDownloader.class);
+        ProviderDetector providerDetector = mock(ProviderDetector.class);
+        when(providerDetector.detectProvider(contains("youtube"))).thenReturn(Provider.YOUTUBE);
+        when(providerDetector.detectProvider(contains("vk.com"))).thenReturn(Provider.VK);
+        CircuitBreakerRegistry circuitBreakers =
+                new CircuitBreakerRegistry(4, 4, 50, 60, 1, new SimpleMeterRegistry(), System::currentTimeMillis);
+        downloader = new CircuitBreakingMediaDownloader(delegate, providerDetector, circuitBreakers);
+    }
+
+    @Test
+    void shouldFailFastForBrokenProviderOnly() {
+        // Подготовка - сайт YouTube изменился, VK работает
+        when(delegate.download(YOUTUBE)).thenReturn(Mono.error(new DownloadException("Unable to extract")));
+        when(delegate.download(VK)).thenReturn(Mono.just(content(VK)));
+
+        // Выполнение
+        for (int i = 0; i < 4; i++) {
+            assertThrows(DownloadException.class, () -> downloader.download(YOUTUBE).block());
+        }
+
+        // Проверка - YouTube отклоняется без вызова загрузчика, VK не затронут
+        assertThrows(DownloadRejectedException.class, () -> downloader.download(YOUTUBE).block());
+        verify(delegate, times(4)).download(YOUTUBE);
+        assertNotNull(downloader.download(VK).block());
+    }
+
+    @Test
+    void shouldNotCountUnavailableContentAsProviderFailure() {
+        // Подготовка
+        when(delegate.downloadSpecificItem(YOUTUBE, 0))
+                .thenReturn(Mono.error(new ContentUnavailableException("Private video")));
+
+        // Выполнение
+        for (int i = 0; i < 6; i++) {
+            assertThrows(ContentUnavailableException.class, () -> downloader.downloadSpecificItem(YOUTUBE, 0).block());
+        }
+
+        // Проверка - каждая загрузка дошла до загрузчика
+        verify(delegate, times(6)).downloadSpecificItem(YOUTUBE, 0);
+    }
+
+    private static MediaContent content(String url) {
+        return MediaContent.builder().url(url).type(MediaType.VIDEO).title("Видео").build();
+    }
+}
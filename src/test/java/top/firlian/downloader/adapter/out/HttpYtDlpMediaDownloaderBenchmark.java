@@ -0,0 +1,117 @@
+package top.firlian.downloader.adapter.out;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import top.firlian.downloader.config.WebClientConfig;
+import top.firlian.downloader.util.CircuitBreakerRegistry;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нагрузочный бенчмарк получения метаданных плейлиста от заглушки сервиса yt-dlp:
+ * новый клиент и разбор строки на каждый вызов против общего клиента с пулом
+ * соединений и разбором ответа кодеком.
+ * Запуск: {@code ./gradlew benchmark -Dbenchmark.requests=20000 -Dbenchmark.concurrency=64}.
+ */
+@Tag("benchmark")
+class HttpYtDlpMediaDownloaderBenchmark {
+
+    private static final String PLAYLIST_URL = "https://www.youtube.com/playlist?list=PL1";
+
+    @Test
+    void comparePerCallClientWithSharedPool() {
+        // Подготовка
+        int requests = Integer.getInteger("benchmark.requests", 5_000);
+        int concurrency = Integer.getInteger("benchmark.concurrency", 64);
+        int entries = Integer.getInteger("benchmark.entries", 200);
+        String json = HttpYtDlpMediaDownloaderTest.playlistJson(entries);
+        DisposableServer server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/metadata", (request, response) -> request.receive().then()
+                        .then(response.header("Content-Type", "application/json").sendString(Mono.just(json)).then())))
+                .bindNow();
+        String serviceUrl = "http://localhost:" + server.port();
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Supplier<Mono<Integer>> perCall = () -> WebClient.builder()
+                .baseUrl(serviceUrl)
+                .build()
+                .post()
+                .uri("/metadata")
+                .bodyValue(Map.of("url", PLAYLIST_URL))
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(response -> {
+                    try {
+                        JsonNode metadata = objectMapper.readTree(response);
+                        return metadata.get("entries").size();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+
+        WebClientConfig config = new WebClientConfig();
+        ConnectionProvider connectionProvider = config.ytDlpServiceConnectionProvider(
+                concurrency, requests, 30, 30, 10);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CircuitBreakerRegistry circuitBreakers = new CircuitBreakerRegistry(
+                20, 5, 50, 60, 2, meterRegistry, System::currentTimeMillis);
+        WebClient webClient = config.ytDlpServiceWebClient(
+                WebClient.builder(), connectionProvider, 1000, DataSize.ofMegabytes(16));
+        HttpYtDlpMediaDownloader downloader = new HttpYtDlpMediaDownloader(new YtDlpServicePool(
+                webClient, false, serviceUrl, 1000, 30, circuitBreakers, meterRegistry, System::currentTimeMillis),
+                Schedulers.immediate());
+        Supplier<Mono<Integer>> shared = () -> downloader.download(PLAYLIST_URL)
+                .map(content -> content.getItems().size());
+
+        try {
+            // Выполнение - прогрев, затем замер
+            run(perCall, requests / 10, concurrency);
+            run(shared, requests / 10, concurrency);
+            double perCallRps = run(perCall, requests, concurrency);
+            double sharedRps = run(shared, requests, concurrency);
+
+            // Проверка
+            System.out.printf("Запросов: %d, параллельно: %d, элементов в плейлисте: %d%n",
+                    requests, concurrency, entries);
+            System.out.printf("Клиент на каждый вызов, разбор строки: %.0f запросов/с%n", perCallRps);
+            System.out.printf("Общий клиент с пулом, разбор кодеком: %.0f запросов/с (%.2fx)%n",
+                    sharedRps, sharedRps / perCallRps);
+            assertTrue(sharedRps > 0 && perCallRps > 0);
+        } finally {
+            connectionProvider.dispose();
+            server.disposeNow();
+        }
+    }
+
+    /**
+     * Выполняет запросы с заданной параллельностью.
+     *
+     * @return число запросов в секунду
+     */
+    private static double run(Supplier<Mono<Integer>> call, int requests, int concurrency) {
+        long started = System.nanoTime();
+        Long completed = Flux.range(0, requests)
+                .flatMap(i -> call.get(), concurrency)
+                .doOnNext(size -> assertTrue(size > 0))
+                .count()
+                .block();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        assertEquals(requests, completed);
+        return requests / seconds;
+    }
+}
@@ -0,0 +1,282 @@
+package top.firlian.downloader.adapter.out;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import top.firlian.downloader.config.BlockingExecutionConfig;
+import top.firlian.downloader.config.WebClientConfig;
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+import top.firlian.downloader.util.CircuitBreakerRegistry;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для HttpYtDlpMediaDownloader с заглушкой сервиса yt-dlp.
+ * Заглушка создает задание на каждый запрос загрузки и отдает поток событий,
+ * построенный тестом по заголовку Last-Event-ID, а файл задания - обработчиком
+ * теста по заголовку Range.
+ */
+class HttpYtDlpMediaDownloaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicReference<String> metadata = new AtomicReference<>();
+    private final AtomicReference<Function<String, String>> events = new AtomicReference<>();
+    private final List<String> lastEventIds = new CopyOnWriteArrayList<>();
+    private final AtomicInteger jobs = new AtomicInteger();
+    private final AtomicReference<Function<String, byte[]>> file = new AtomicReference<>();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final AtomicInteger deletes = new AtomicInteger();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DisposableServer server;
+    private ConnectionProvider connectionProvider;
+    private Scheduler blockingScheduler;
+    private HttpYtDlpMediaDownloader downloader;
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .post("/metadata", (request, response) -> response
+                                .header("Content-Type", "application/json")
+                                .sendString(Mono.fromSupplier(metadata::get)))
+                        .post("/jobs", (request, response) -> response
+                                .status(202)
+                                .header("Content-Type", "application/json")
+                                .sendString(Mono.fromSupplier(() ->
+                                        "{\"id\":\"job-" + jobs.incrementAndGet() + "\",\"status\":\"queued\"}")))
+                        .get("/jobs/{id}/events", (request, response) -> {
+                            String lastEventId = request.requestHeaders().get("Last-Event-ID");
+                            lastEventIds.add(String.valueOf(lastEventId));
+                            return response
+                                    .header("Content-Type", "text/event-stream")
+                                    .sendString(Mono.fromSupplier(() -> events.get().apply(lastEventId)));
+                        })
+                        .get("/jobs/{id}/file", (request, response) -> {
+                            String range = request.requestHeaders().get("Range");
+                            ranges.add(String.valueOf(range));
+                            byte[] body = file.get().apply(range);
+                            if (range == null) {
+                                // Заявленная длина больше отданного: соединение обрывается на середине файла
+                                return response
+                                        .header("Content-Length", String.valueOf(CONTENT.length))
+                                        .sendByteArray(Mono.just(body))
+                                        .then()
+                                        .then(Mono.fromRunnable(() -> response.withConnection(Connection::dispose)));
+                            }
+                            return response
+                                    .status(206)
+                                    .header("Content-Range", "bytes " + (CONTENT.length - body.length) + "-"
+                                            + (CONTENT.length - 1) + "/" + CONTENT.length)
+                                    .sendByteArray(Mono.just(body));
+                        })
+                        .delete("/jobs/{id}", (request, response) -> {
+                            deletes.incrementAndGet();
+                            return response.status(204).send();
+                        }))
+                .bindNow();
+
+        WebClientConfig config = new WebClientConfig();
+        connectionProvider = config.ytDlpServiceConnectionProvider(4, 16, 5, 30, 10);
+        WebClient webClient = config.ytDlpServiceWebClient(WebClient.builder(), connectionProvider,
+                1000, DataSize.ofMegabytes(16));
+        blockingScheduler = new BlockingExecutionConfig().blockingScheduler("virtual", 4);
+        downloader = new HttpYtDlpMediaDownloader(new YtDlpServicePool(webClient, false,
+                "http://localhost:" + server.port(), 1000, 30,
+                new CircuitBreakerRegistry(20, 5, 50, 60, 2, meterRegistry, System::currentTimeMillis),
+                meterRegistry, System::currentTimeMillis), blockingScheduler);
+        ReflectionTestUtils.setField(downloader, "jobTimeoutMinutes", 1L);
+        ReflectionTestUtils.setField(downloader, "maxReconnects", 3);
+        ReflectionTestUtils.setField(downloader, "transferMode", "shared-volume");
+        ReflectionTestUtils.setField(downloader, "downloadDir", tempDir.resolve("local").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionProvider.dispose();
+        blockingScheduler.dispose();
+        server.disposeNow();
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void shouldParseLongPlaylistMetadata() {
+        // Подготовка - метаданные больше стандартного лимита буфера кодека в 256 КБ
+        metadata.set(playlistJson(3000));
+
+        // Выполнение
+        MediaContent content = downloader.download("https://www.youtube.com/playlist?list=PL1").block();
+
+        // Проверка
+        assertNotNull(content);
+        assertEquals(3000, content.getItems().size());
+        assertEquals("Видео 2999", content.getItems().get(2999).getTitle());
+        assertEquals(MediaType.VIDEO, content.getType());
+        assertNotNull(meterRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", "ytdlp-service")
+                .gauge());
+    }
+
+    @Test
+    void shouldReuseConnectionsForDownloads() throws Exception {
+        // Подготовка
+        Path file = Files.write(tempDir.resolve("video.mp4"), new byte[42]);
+        events.set(lastEventId -> event(1, "running", null) + event(2, "completed", result(file)));
+
+        // Выполнение
+        for (int i = 0; i < 10; i++) {
+            MediaContent content = downloader.downloadSpecificItem("https://vk.com/video1", i).block();
+            assertNotNull(content);
+            assertEquals(file.toString(), content.getFilePath());
+        }
+
+        // Проверка - соединения возвращаются в пул и переиспользуются, а не открываются на каждый запрос
+        double connections = meterRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", "ytdlp-service")
+                .gauge()
+                .value();
+        assertTrue(connections < 5, "Соединений: " + connections);
+    }
+
+    @Test
+    void shouldResumeJobEventsAfterDisconnect() throws Exception {
+        // Подготовка - первое подключение обрывается после события о ходе загрузки
+        Path file = Files.write(tempDir.resolve("video.mp4"), new byte[42]);
+        events.set(lastEventId -> lastEventId == null
+                ? event(1, "running", null)
+                : event(2, "completed", result(file)));
+
+        // Выполнение
+        MediaContent content = downloader.downloadSpecificItem("https://vk.com/video1", 0).block();
+
+        // Проверка - задание создано один раз, а второе подключение продолжило с события 1
+        assertNotNull(content);
+        assertEquals(file.toString(), content.getFilePath());
+        assertEquals("Видео", content.getTitle());
+        assertEquals(1, jobs.get());
+        assertEquals(List.of("null", "1"), lastEventIds);
+    }
+
+    @Test
+    void shouldFailWithServiceErrorOfFailedJob() {
+        // Подготовка
+        events.set(lastEventId -> event(1, "failed", null)
+                .replace("\"result\":null", "\"result\":null,\"error\":\"ERROR: [vk] 1: Private video\""));
+
+        // Выполнение и проверка - текст ошибки yt-dlp доходит до классификации
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> downloader.downloadSpecificItem("https://vk.com/video1", 0).block());
+        assertInstanceOf(ContentUnavailableException.class, error);
+        assertEquals(List.of("null"), lastEventIds);
+    }
+
+    @Test
+    void shouldResumeInterruptedFileTransfer() throws Exception {
+        // Подготовка - файл есть только у сервиса, первая передача обрывается на середине
+        ReflectionTestUtils.setField(downloader, "transferMode", "stream");
+        String remote = "/srv/downloads/task-1/video.mp4";
+        events.set(lastEventId -> event(1, "completed",
+                "{\"filePath\":\"" + remote + "\",\"fileName\":\"video.mp4\",\"sizeBytes\":"
+                        + CONTENT.length + ",\"title\":\"Видео\",\"ext\":\"mp4\"}"));
+        file.set(range -> range == null
+                ? Arrays.copyOf(CONTENT, CONTENT.length / 2)
+                : Arrays.copyOfRange(CONTENT, Integer.parseInt(range.replaceAll("\\D", "")), CONTENT.length));
+
+        // Выполнение
+        MediaContent content = downloader.downloadSpecificItem("https://vk.com/video1", 0).block();
+
+        // Проверка - вторая передача продолжила с полученного размера, задание удалено в сервисе
+        assertNotNull(content);
+        Path local = Path.of(content.getFilePath());
+        assertTrue(local.startsWith(tempDir.resolve("local")));
+        assertArrayEquals(CONTENT, Files.readAllBytes(local));
+        assertEquals(List.of("null", "bytes=" + CONTENT.length / 2 + "-"), ranges);
+        assertFalse(Files.exists(local.resolveSibling("video.mp4.part")));
+        assertEquals(1, deletes.get());
+    }
+
+    private static String event(int id, String status, String result) {
+        return "id: " + id + "\nevent: " + status + "\ndata: {\"id\":\"job-1\",\"status\":\"" + status
+                + "\",\"downloadedBytes\":21,\"totalBytes\":42,\"result\":" + result + ",\"seq\":" + id + "}\n\n";
+    }
+
+    private static String result(Path file) {
+        return "{\"filePath\":\"" + file + "\",\"sizeBytes\":42,\"title\":\"Видео\",\"ext\":\"mp4\"}";
+    }
+
+    @Test
+    void shouldCleanUpAfterFailedFileTransfer() {
+        // Подготовка - передача обрывается, а продолжение завершается ошибкой сервиса
+        ReflectionTestUtils.setField(downloader, "transferMode", "stream");
+        ReflectionTestUtils.setField(downloader, "maxReconnects", 1);
+        events.set(lastEventId -> event(1, "completed",
+                "{\"filePath\":\"/srv/downloads/task-1/video.mp4\",\"fileName\":\"video.mp4\",\"sizeBytes\":"
+                        + CONTENT.length + ",\"title\":\"Видео\",\"ext\":\"mp4\"}"));
+        file.set(range -> {
+            if (range != null) {
+                throw new IllegalStateException("Файл недоступен");
+            }
+            return Arrays.copyOf(CONTENT, CONTENT.length / 2);
+        });
+
+        // Выполнение
+        assertThrows(RuntimeException.class,
+                () -> downloader.downloadSpecificItem("https://vk.com/video1", 0).block());
+
+        // Проверка - временный файл и директория задания удалены, задание удалено в сервисе
+        assertEquals(2, ranges.size());
+        assertFalse(Files.exists(tempDir.resolve("local").resolve("task-job-1")));
+        assertEquals(1, deletes.get());
+    }
+
+    private static final byte[] CONTENT = content(300_000);
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+    static String playlistJson(int entries) {
+        StringBuilder json = new StringBuilder("{\"title\":\"Плейлист\",\"entries\":[");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"url\":\"https://www.youtube.com/watch?v=video").append(i)
+                    .append("\",\"title\":\"Видео ").append(i)
+                    .append("\",\"ext\":\"mp4\",\"vcodec\":\"avc1\",\"acodec\":\"mp4a\",\"filesize\":")
+                    .append(10_000_000 + i)
+                    .append(",\"description\":\"Описание выпуска с тайм-кодами и ссылками на источники\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,66 @@
+package top.firlian.downloader.adapter.out;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.error.ContentUnavailableException.Reason;
+import top.firlian.downloader.domain.error.DownloadException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для YtDlpErrorClassifier на сообщениях yt-dlp.
+ */
+class YtDlpErrorClassifierTest {
+
+    @Test
+    void shouldClassifyYtDlpMessages() {
+        assertEquals(Optional.of(Reason.PRIVATE), YtDlpErrorClassifier.classify(
+                "ERROR: [youtube] abc: Private video. Sign in if you've been granted access to this video"));
+        assertEquals(Optional.of(Reason.REMOVED), YtDlpErrorClassifier.classify(
+                "ERROR: [youtube] abc: Video unavailable. This video has been removed by the uploader"));
+        assertEquals(Optional.of(Reason.GEO_BLOCKED), YtDlpErrorClassifier.classify(
+                "ERROR: [youtube] abc: Video unavailable. The uploader has not made this video available in your country"));
+        assertEquals(Optional.of(Reason.LOGIN_REQUIRED), YtDlpErrorClassifier.classify(
+                "ERROR: [youtube] abc: Sign in to confirm your age. This video may be inappropriate for some users."));
+        assertEquals(Optional.of(Reason.UNAVAILABLE), YtDlpErrorClassifier.classify(
+                "ERROR: [youtube] abc: Video unavailable"));
+    }
+
+    @Test
+    void shouldKeepTransientErrorsRetryable() {
+        assertEquals(Optional.empty(), YtDlpErrorClassifier.classify(
+                "ERROR: [youtube] abc: Sign in to confirm you're not a bot"));
+        assertEquals(Optional.empty(), YtDlpErrorClassifier.classify(
+                "ERROR: unable to download video data: HTTP Error 503: Service Unavailable"));
+        assertEquals(Optional.empty(), YtDlpErrorClassifier.classify(
+                "ERROR: [youtube] abc: Requested format is not available. Use --list-formats for a list of available formats"));
+        assertEquals(Optional.empty(), YtDlpErrorClassifier.classify(
+                "ERROR: [vk] abc: Unable to download webpage: HTTP Error 502: Bad Gateway (caused by <HTTPError 502>)"));
+        assertEquals(Optional.empty(), YtDlpErrorClassifier.classify(
+                "ERROR: [youtube] Private_Investigation: Unable to extract initial data"));
+        assertInstanceOf(DownloadException.class, YtDlpErrorClassifier.toDomainError(
+                new DownloadException("Загрузка не удалась: ERROR: Connection reset by peer")));
+        assertInstanceOf(DownloadException.class, YtDlpErrorClassifier.toDomainError(
+                WebClientResponseException.create(503, "Service Unavailable", HttpHeaders.EMPTY,
+                        "{\"error\":\"Video unavailable\"}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void shouldFindReasonInCauseChain() {
+        // Подготовка - сообщение yt-dlp находится в причине ошибки
+        Exception error = new IllegalStateException("Ошибка",
+                new DownloadException("Загрузка не удалась: ERROR: This video is private"));
+
+        // Выполнение
+        RuntimeException mapped = YtDlpErrorClassifier.toDomainError(error);
+
+        // Проверка
+        ContentUnavailableException unavailable = assertInstanceOf(ContentUnavailableException.class, mapped);
+        assertEquals(Reason.PRIVATE, unavailable.getReason());
+    }
+}
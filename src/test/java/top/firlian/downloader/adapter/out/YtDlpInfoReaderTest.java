@@ -0,0 +1,139 @@
+package top.firlian.downloader.adapter.out;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для YtDlpInfoReader для проверки потокового разбора вывода yt-dlp.
+ */
+class YtDlpInfoReaderTest {
+
+    @Test
+    void shouldReadSingleVideoSkippingFormats() throws Exception {
+        // Подготовка
+        String json = "{\"id\":\"abc\",\"title\":\"Видео\",\"ext\":\"mp4\",\"vcodec\":\"avc1\",\"acodec\":null,"
+                + "\"formats\":[{\"url\":\"https://cdn/1\",\"ext\":\"webm\"}],\"filesize\":null,"
+                + "\"requested_downloads\":[{\"ext\":\"mp4\",\"filepath\":\"/downloads/a.mp4\"}],"
+                + "\"filename\":\"/downloads/a.part\"}";
+
+        // Выполнение
+        YtDlpInfo info = read(json);
+
+        // Проверка - поля вложенных форматов не перекрывают поля самого видео
+        assertEquals("abc", info.getId());
+        assertEquals("Видео", info.getTitle());
+        assertEquals("mp4", info.getExt());
+        assertEquals("avc1", info.getVcodec());
+        assertNull(info.getAcodec());
+        assertEquals(0, info.getFilesize());
+        assertEquals("/downloads/a.mp4", info.getFilepath());
+        assertFalse(info.isPlaylist());
+    }
+
+    @Test
+    void shouldReadFlatPlaylistKeepingNumbering() throws Exception {
+        // Подготовка - вторая запись недоступна
+        String json = "{\"title\":\"Плейлист\",\"entries\":["
+                + "{\"url\":\"https://example.com/1\",\"title\":\"Первое\",\"filesize\":100},"
+                + "null,"
+                + "{\"url\":\"https://example.com/3\",\"title\":\"Третье\"}]}";
+
+        // Выполнение
+        YtDlpInfo info = read(json);
+
+        // Проверка
+        assertTrue(info.isPlaylist());
+        assertEquals(3, info.getEntries().size());
+        assertEquals(100, info.getEntries().get(0).getFilesize());
+        assertSame(YtDlpInfo.EMPTY, info.getEntries().get(1));
+        assertEquals("https://example.com/3", info.getEntries().get(2).getUrl());
+    }
+
+    @Test
+    void shouldRejectNonObjectOutput() {
+        assertThrows(IOException.class, () -> read("[1, 2]"));
+    }
+
+    @Test
+    void shouldParseLargePlaylistUnderSmallHeap() throws Exception {
+        // Подготовка - отдельная JVM с кучей 32 МБ разбирает ~60 МБ JSON
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-Xmx32m",
+                "-cp", System.getProperty("java.class.path"),
+                LargePlaylist.class.getName(), "20000")
+                .redirectErrorStream(true)
+                .start();
+
+        // Выполнение
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "Разбор не завершился за отведенное время");
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+
+        // Проверка
+        assertEquals(0, process.exitValue(), output);
+        assertEquals("20000", output);
+    }
+
+    private static YtDlpInfo read(String json) throws IOException {
+        return YtDlpInfoReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Разбирает синтетический плейлист, генерируемый на лету, и печатает число записей.
+     * Каждая запись содержит 30 форматов, как полный вывод yt-dlp без --flat-playlist.
+     */
+    static final class LargePlaylist {
+
+        public static void main(String[] args) throws IOException {
+            int size = Integer.parseInt(args[0]);
+            YtDlpInfo info = YtDlpInfoReader.read(syntheticPlaylist(size));
+            System.out.println(info.getEntries().size());
+        }
+
+        private static InputStream syntheticPlaylist(int size) {
+            StringBuilder formats = new StringBuilder("[");
+            for (int i = 0; i < 30; i++) {
+                formats.append(i == 0 ? "" : ",")
+                        .append("{\"format_id\":\"").append(i).append("\",\"ext\":\"mp4\",\"vcodec\":\"avc1\",")
+                        .append("\"url\":\"https://cdn.example.com/videoplayback?itag=").append(i)
+                        .append("&expire=1700000000&signature=0123456789abcdef\"}");
+            }
+            String formatsJson = formats.append("]").toString();
+
+            Enumeration<InputStream> parts = new Enumeration<>() {
+                private int next = -1;
+
+                @Override
+                public boolean hasMoreElements() {
+                    return next <= size;
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    String part;
+                    if (next == -1) {
+                        part = "{\"title\":\"Большой плейлист\",\"entries\":[";
+                    } else if (next == size) {
+                        part = "]}";
+                    } else {
+                        part = (next == 0 ? "" : ",") + "{\"id\":\"video" + next + "\",\"title\":\"Видео " + next
+                                + "\",\"url\":\"https://www.youtube.com/watch?v=video" + next
+                                + "\",\"formats\":" + formatsJson + "}";
+                    }
+                    next++;
+                    return new ByteArrayInputStream(part.getBytes(StandardCharsets.UTF_8));
+                }
+            };
+            return new SequenceInputStream(parts);
+        }
+    }
+}
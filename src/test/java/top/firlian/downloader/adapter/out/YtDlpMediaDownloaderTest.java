@@ -0,0 +1,169 @@
+package top.firlian.downloader.adapter.out;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import top.firlian.downloader.config.BlockingExecutionConfig;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для YtDlpMediaDownloader с заглушкой yt-dlp.
+ * Заглушка записывает аргументы каждого вызова и отвечает JSON, как yt-dlp с --dump-single-json.
+ */
+@DisabledOnOs(OS.WINDOWS)
+class YtDlpMediaDownloaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path calls;
+    private Path ytdlp;
+    private Scheduler blockingScheduler;
+    private YtDlpMediaDownloader downloader;
+
+    @BeforeEach
+    void setUp() {
+        calls = tempDir.resolve("calls");
+        ytdlp = tempDir.resolve("yt-dlp");
+        blockingScheduler = new BlockingExecutionConfig().blockingScheduler("virtual", 4);
+        downloader = new YtDlpMediaDownloader(blockingScheduler,
+                new YtDlpWorkerPool(false, 1, 1, 60, "python3", ""));
+        ReflectionTestUtils.setField(downloader, "ytdlpBin", ytdlp.toString());
+        ReflectionTestUtils.setField(downloader, "downloadDir", tempDir.resolve("downloads").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingScheduler.dispose();
+    }
+
+    @Test
+    void shouldDownloadSingleVideoInOneInvocation() throws Exception {
+        // Подготовка
+        Path file = tempDir.resolve("video.mp4");
+        Files.write(file, new byte[42]);
+        writeStub("{\"id\":\"abc\",\"title\":\"Видео\",\"ext\":\"mp4\",\"vcodec\":\"avc1\","
+                + "\"requested_downloads\":[{\"filepath\":\"" + file + "\"}]}");
+
+        // Выполнение
+        MediaContent content = downloader.download("https://www.youtube.com/watch?v=abc")
+                .block(Duration.ofSeconds(30));
+
+        // Проверка - метаданные и файл получены за один вызов yt-dlp
+        assertNotNull(content);
+        assertEquals(file.toString(), content.getFilePath());
+        assertEquals(42, content.getSizeBytes());
+        assertEquals("Видео", content.getTitle());
+        assertEquals(MediaType.VIDEO, content.getType());
+        List<String> invocations = Files.readAllLines(calls);
+        assertEquals(1, invocations.size());
+        assertTrue(invocations.get(0).contains("--no-simulate"));
+    }
+
+    @Test
+    void shouldReturnPlaylistItemsWithoutDownloading() throws Exception {
+        // Подготовка
+        writeStub("{\"title\":\"Плейлист\",\"entries\":[{\"url\":\"https://example.com/1\",\"title\":\"Первое\"},"
+                + "{\"url\":\"https://example.com/2\",\"title\":\"Второе\"}]}");
+
+        // Выполнение
+        MediaContent content = downloader.download("https://www.youtube.com/playlist?list=PL1")
+                .block(Duration.ofSeconds(30));
+
+        // Проверка - плейлист только перечислен, ни один элемент не загружен
+        assertNotNull(content);
+        assertEquals("Плейлист", content.getTitle());
+        assertEquals(2, content.getItems().size());
+        assertEquals("Второе", content.getItems().get(1).getTitle());
+        assertNull(content.getFilePath());
+        List<String> invocations = Files.readAllLines(calls);
+        assertEquals(1, invocations.size());
+        assertTrue(invocations.get(0).contains("--flat-playlist"));
+    }
+
+    @Test
+    void shouldDownloadSelectedItem() throws Exception {
+        // Подготовка - загрузка элемента возвращает плейлист с одной записью
+        Path file = tempDir.resolve("second.mp4");
+        Files.write(file, new byte[7]);
+        writeStub("{\"title\":\"Плейлист\",\"entries\":[{\"title\":\"Второе\",\"ext\":\"mp4\","
+                + "\"requested_downloads\":[{\"filepath\":\"" + file + "\"}]}]}");
+
+        // Выполнение
+        MediaContent content = downloader.downloadSpecificItem("https://www.youtube.com/playlist?list=PL1", 1)
+                .block(Duration.ofSeconds(30));
+
+        // Проверка
+        assertNotNull(content);
+        assertEquals("Второе", content.getTitle());
+        assertEquals(file.toString(), content.getFilePath());
+        assertEquals(7, content.getSizeBytes());
+        assertTrue(Files.readAllLines(calls).get(0).contains("--playlist-items 2"));
+    }
+
+    @Test
+    void shouldGiveEachConcurrentDownloadItsOwnFile() throws Exception {
+        // Подготовка - заглушка не сообщает путь и пишет URL в файл по шаблону -o
+        Files.writeString(ytdlp, """
+                #!/bin/sh
+                while [ $# -gt 1 ]; do
+                  if [ "$1" = "-o" ]; then out="$2"; fi
+                  shift
+                done
+                dir=$(dirname "$out")
+                sleep 0.2
+                printf '%s' "$1" > "$dir/video.mp4"
+                echo '{"title":"Видео","ext":"mp4"}'
+                """);
+        assertTrue(ytdlp.toFile().setExecutable(true));
+        List<String> urls = IntStream.range(0, 8)
+                .mapToObj(i -> "https://www.youtube.com/watch?v=video" + i)
+                .toList();
+
+        // Выполнение - загрузки выполняются параллельно
+        List<MediaContent> contents = Flux.fromIterable(urls)
+                .flatMapSequential(downloader::download)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        // Проверка - каждая загрузка получила свой файл
+        assertNotNull(contents);
+        assertEquals(urls.size(), contents.size());
+        for (int i = 0; i < urls.size(); i++) {
+            assertEquals(urls.get(i), Files.readString(Path.of(contents.get(i).getFilePath())));
+        }
+        assertEquals(urls.size(), contents.stream().map(MediaContent::getFilePath).distinct().count());
+    }
+
+    /**
+     * Создает заглушку yt-dlp, отвечающую заданными JSON по порядку вызовов.
+     *
+     * @param responses ответы на первый, второй и последующие вызовы
+     */
+    private void writeStub(String... responses) throws Exception {
+        StringBuilder script = new StringBuilder("#!/bin/sh\n")
+                .append("echo \"$*\" >> '").append(calls).append("'\n")
+                .append("n=$(wc -l < '").append(calls).append("')\n");
+        for (int i = 0; i < responses.length; i++) {
+            script.append("if [ \"$n\" -eq ").append(i + 1).append(" ]; then cat <<'EOF'\n")
+                    .append(responses[i]).append("\nEOF\nfi\n");
+        }
+        Files.writeString(ytdlp, script.toString());
+        assertTrue(ytdlp.toFile().setExecutable(true));
+    }
+}
@@ -0,0 +1,250 @@
+package top.firlian.downloader.adapter.out;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import top.firlian.downloader.config.WebClientConfig;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
+import top.firlian.downloader.util.CircuitBreaker;
+import top.firlian.downloader.util.CircuitBreakerRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для YtDlpServicePool с несколькими заглушками сервиса на разных портах.
+ * Запрос {@code /id} возвращает порт экземпляра, поэтому по ответам видно,
+ * куда балансировщик направил запрос.
+ */
+class YtDlpServicePoolTest {
+
+    private final List<Stub> stubs = new ArrayList<>();
+    private final List<Disposable> held = new ArrayList<>();
+    private final Sinks.Empty<Void> release = Sinks.empty();
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final CircuitBreakerRegistry circuitBreakers =
+            new CircuitBreakerRegistry(2, 2, 100, 30, 1, new SimpleMeterRegistry(), now::get);
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+
+    @BeforeEach
+    void setUp() {
+        WebClientConfig config = new WebClientConfig();
+        connectionProvider = config.ytDlpServiceConnectionProvider(4, 64, 5, 30, 10);
+        webClient = config.ytDlpServiceWebClient(WebClient.builder(), connectionProvider, 1000, DataSize.ofMegabytes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        held.forEach(Disposable::dispose);
+        connectionProvider.dispose();
+        stubs.forEach(stub -> stub.server.disposeNow());
+    }
+
+    @Test
+    void shouldRouteToBackendWithFewestOutstandingRequests() {
+        // Подготовка - длинное задание занимает один из экземпляров
+        Stub first = stub();
+        Stub second = stub();
+        YtDlpServicePool pool = pool(first, second);
+        String busy = hold(pool);
+
+        // Выполнение
+        List<String> routed = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            routed.add(call(pool));
+        }
+
+        // Проверка - все короткие запросы ушли на свободный экземпляр
+        String idle = busy.equals(first.port()) ? second.port() : first.port();
+        assertEquals(List.of(idle, idle, idle, idle, idle, idle), routed);
+    }
+
+    @Test
+    void shouldOpenBreakerOfFailingBackendAndRampItUpAfterRecovery() {
+        // Подготовка
+        Stub failing = stub();
+        Stub healthy = stub();
+        failing.failing.set(true);
+        YtDlpServicePool pool = pool(failing, healthy);
+
+        // Выполнение - выключатель экземпляра с ошибками 5xx размыкается после двух ошибок
+        int errors = 0;
+        for (int i = 0; i < 10; i++) {
+            try {
+                call(pool);
+            } catch (RuntimeException e) {
+                errors++;
+            }
+        }
+
+        // Проверка
+        assertEquals(2, errors);
+        assertEquals(2, failing.requests.size());
+
+        // Подготовка - экземпляр восстановился, время размыкания истекло
+        failing.failing.set(false);
+        now.addAndGet(31_000);
+
+        // Выполнение - пробный запрос замыкает выключатель, затем начинается медленный старт
+        String probe = call(pool);
+        List<String> routed = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            routed.add(hold(pool));
+        }
+        now.addAndGet(30_000);
+        String afterSlowStart = hold(pool);
+
+        // Проверка
+        assertEquals(failing.port(), probe);
+        assertEquals(List.of(healthy.port(), healthy.port(), healthy.port(), healthy.port(), healthy.port()), routed);
+        assertEquals(failing.port(), afterSlowStart);
+    }
+
+    @Test
+    void shouldRejectImmediatelyWhenAllBreakersAreOpen() {
+        // Подготовка
+        Stub failing = stub();
+        failing.failing.set(true);
+        YtDlpServicePool pool = pool(failing);
+        for (int i = 0; i < 2; i++) {
+            assertThrows(RuntimeException.class, () -> call(pool));
+        }
+
+        // Выполнение и проверка - запрос отклонен без обращения к сервису
+        assertThrows(DownloadRejectedException.class, () -> call(pool));
+        assertEquals(2, failing.requests.size());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreakers.get("ytdlp-service " + failing.url()).state());
+    }
+
+    @Test
+    void shouldSkipUnreachableAndUnhealthyBackends() {
+        // Подготовка - первый экземпляр не запущен, второй не проходит проверку
+        DisposableServer stopped = HttpServer.create().port(0).bindNow();
+        String stoppedUrl = "http://localhost:" + stopped.port();
+        stopped.disposeNow();
+        Stub unhealthy = stub();
+        Stub healthy = stub();
+        unhealthy.healthy.set(false);
+        YtDlpServicePool pool = new YtDlpServicePool(webClient, true,
+                stoppedUrl + "," + unhealthy.url() + ", " + healthy.url(),
+                1000, 30, circuitBreakers, new SimpleMeterRegistry(), now::get);
+
+        // Выполнение - до проверки запрос к остановленному экземпляру повторяется на другом
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(call(pool));
+        }
+        Integer available = pool.probeHealth().block();
+        List<String> routed = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            routed.add(call(pool));
+        }
+
+        // Проверка
+        assertEquals(1, available);
+        assertEquals(List.of(healthy.port(), healthy.port(), healthy.port(), healthy.port()), routed);
+    }
+
+    @Test
+    void shouldCheckHealthWithoutWaitingForHungBackend() {
+        // Подготовка - первый экземпляр принимает соединение, но не отвечает на проверку
+        Stub hung = stub();
+        Stub healthy = stub();
+        hung.hanging.set(true);
+        YtDlpServicePool pool = new YtDlpServicePool(webClient, true, hung.url() + "," + healthy.url(),
+                500, 30, circuitBreakers, new SimpleMeterRegistry(), now::get);
+
+        // Выполнение - плановая проверка только запускается, проверки экземпляров идут параллельно
+        long started = System.nanoTime();
+        pool.checkHealth();
+        long scheduledMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        Integer available = pool.probeHealth().block(Duration.ofSeconds(5));
+
+        // Проверка
+        assertTrue(scheduledMillis < 500, "Плановая проверка ждала ответа: " + scheduledMillis + " мс");
+        assertEquals(1, available);
+        assertEquals(List.of(healthy.port(), healthy.port()), List.of(call(pool), call(pool)));
+    }
+
+    private YtDlpServicePool pool(Stub... backends) {
+        String urls = String.join(",", Arrays.stream(backends).map(Stub::url).toList());
+        return new YtDlpServicePool(webClient, false, urls, 1000, 30, circuitBreakers, new SimpleMeterRegistry(), now::get);
+    }
+
+    /**
+     * Выполняет короткий запрос и возвращает порт экземпляра, который его обработал.
+     */
+    private String call(YtDlpServicePool pool) {
+        return pool.execute(client -> client.get().uri("/id").retrieve().bodyToMono(String.class))
+                .block();
+    }
+
+    /**
+     * Начинает запрос, который занимает экземпляр до конца теста, и возвращает порт экземпляра.
+     */
+    private String hold(YtDlpServicePool pool) {
+        List<String> port = new CopyOnWriteArrayList<>();
+        held.add(pool.execute(client -> client.get().uri("/id").retrieve().bodyToMono(String.class)
+                        .doOnNext(port::add)
+                        .then(release.asMono()))
+                .subscribe());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (port.isEmpty() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertFalse(port.isEmpty());
+        return port.get(0);
+    }
+
+    private Stub stub() {
+        Stub stub = new Stub();
+        stub.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get("/id", (request, response) -> {
+                            stub.requests.add(request.uri());
+                            return stub.failing.get()
+                                    ? response.status(500).send()
+                                    : response.sendString(Mono.just(stub.port()));
+                        })
+                        .get("/health", (request, response) -> stub.hanging.get()
+                                ? Mono.never()
+                                : response.status(stub.healthy.get() ? 200 : 503).send()))
+                .bindNow();
+        stubs.add(stub);
+        return stub;
+    }
+
+    private static final class Stub {
+        private final List<String> requests = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean failing = new AtomicBoolean();
+        private final AtomicBoolean healthy = new AtomicBoolean(true);
+        private final AtomicBoolean hanging = new AtomicBoolean();
+        private DisposableServer server;
+
+        String port() {
+            return String.valueOf(server.port());
+        }
+
+        String url() {
+            return "http://localhost:" + server.port();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package top.firlian.downloader.adapter.out;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Бенчмарк задержки получения метаданных: запуск yt-dlp на каждый вызов
+ * против задания долгоживущему обработчику из пула.
+ * Запуск: {@code ./gradlew benchmark -Dbenchmark.iterations=20 -Dbenchmark.url=URL}.
+ * По умолчанию используется локальный файл, чтобы измерять накладные расходы без сети.
+ */
+@Tag("benchmark")
+class YtDlpWorkerPoolBenchmark {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void compareSpawnPerCallWithWorkerPool() throws Exception {
+        // Подготовка
+        String ytdlpBin = System.getProperty("benchmark.ytdlp-bin", "yt-dlp");
+        int iterations = Integer.getInteger("benchmark.iterations", 20);
+        int warmup = Integer.getInteger("benchmark.warmup", 3);
+        String url = System.getProperty("benchmark.url");
+        if (url == null) {
+            Path sample = tempDir.resolve("sample.mp4");
+            Files.write(sample, new byte[1024]);
+            url = sample.toUri().toString();
+        }
+        assumeTrue(runProcess(List.of(ytdlpBin, "--version")), "yt-dlp не установлен");
+
+        List<String> command = new ArrayList<>(List.of(ytdlpBin, "--dump-json", "--no-warnings", url));
+        ObjectNode options = JsonNodeFactory.instance.objectNode();
+        if (url.startsWith("file:")) {
+            command.add(1, "--enable-file-urls");
+            options.put("enable_file_urls", true);
+        }
+
+        YtDlpWorkerPool pool = new YtDlpWorkerPool(true, 1, Integer.MAX_VALUE, 600, "python3", "");
+        try {
+            // Выполнение
+            List<Long> spawn = new ArrayList<>();
+            List<Long> pooled = new ArrayList<>();
+            for (int i = 0; i < warmup + iterations; i++) {
+                long start = System.nanoTime();
+                assertTrue(runProcess(command), "yt-dlp завершился с ошибкой");
+                long spawnNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                assertTrue(pool.extract(url, false, options).has("result"));
+                long pooledNanos = System.nanoTime() - start;
+
+                if (i >= warmup) {
+                    spawn.add(spawnNanos);
+                    pooled.add(pooledNanos);
+                }
+            }
+
+            // Проверка
+            report("Процесс на вызов", spawn);
+            report("Пул обработчиков", pooled);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static boolean runProcess(List<String> command) throws InterruptedException {
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void report(String name, List<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        double average = sorted.stream().mapToLong(Long::longValue).average().orElse(0) / 1_000_000;
+        System.out.printf("%-18s среднее %8.1f мс, p50 %8.1f мс, p95 %8.1f мс (%d замеров)%n",
+                name, average, percentile(sorted, 0.50), percentile(sorted, 0.95), sorted.size());
+    }
+
+    private static double percentile(List<Long> sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0)) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,162 @@
+package top.firlian.downloader.adapter.out;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import top.firlian.downloader.domain.error.DownloadException;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для YtDlpWorkerPool для проверки переиспользования, перезапуска
+ * и проверки работоспособности обработчиков.
+ * Вместо yt_dlp используется скрипт-заглушка с тем же протоколом.
+ */
+@DisabledOnOs(OS.WINDOWS)
+class YtDlpWorkerPoolTest {
+
+    /** Заглушка обработчика: отвечает PID процесса, по особым URL падает, зависает или сообщает об ошибке */
+    private static final String STUB_WORKER = """
+            import json, os, sys, time
+            for line in sys.stdin:
+                request = json.loads(line)
+                url = request.get('url', '')
+                if url.startswith('crash-once:'):
+                    marker = url.split(':', 1)[1]
+                    if not os.path.exists(marker):
+                        open(marker, 'w').close()
+                        os._exit(1)
+                if url == 'hang':
+                    time.sleep(60)
+                if url == 'error':
+                    response = {'id': request['id'], 'ok': False, 'error': 'ERROR: Private video'}
+                else:
+                    response = {'id': request['id'], 'ok': True, 'result': {'pid': os.getpid()}, 'filepath': None}
+                sys.stdout.write(json.dumps(response) + '\\n')
+                sys.stdout.flush()
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    private Path script;
+    private YtDlpWorkerPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        script = tempDir.resolve("worker.py");
+        Files.writeString(script, STUB_WORKER);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void shouldReuseWorkerBetweenJobs() throws Exception {
+        // Подготовка
+        pool = createPool(10, 60);
+
+        // Выполнение
+        long firstPid = extractPid("https://example.com/1");
+        long secondPid = extractPid("https://example.com/2");
+
+        // Проверка
+        assertEquals(firstPid, secondPid);
+        assertEquals(1, pool.workerCount());
+    }
+
+    @Test
+    void shouldRecycleWorkerAfterMaxJobs() throws Exception {
+        // Подготовка
+        pool = createPool(2, 60);
+
+        // Выполнение
+        long firstPid = extractPid("https://example.com/1");
+        long secondPid = extractPid("https://example.com/2");
+        long thirdPid = extractPid("https://example.com/3");
+
+        // Проверка - после двух заданий обработчик заменен новым
+        assertEquals(firstPid, secondPid);
+        assertNotEquals(secondPid, thirdPid);
+        assertEquals(1, pool.workerCount());
+    }
+
+    @Test
+    void shouldRestartCrashedWorkerAndRetryJob() throws Exception {
+        // Подготовка
+        pool = createPool(10, 60);
+        long crashedPid = extractPid("https://example.com/1");
+
+        // Выполнение - обработчик падает на задании, задание повторяется на новом
+        long pid = extractPid("crash-once:" + tempDir.resolve("crashed"));
+
+        // Проверка
+        assertNotEquals(crashedPid, pid);
+        assertEquals(1, pool.workerCount());
+    }
+
+    @Test
+    void shouldReportYtDlpError() {
+        // Подготовка
+        pool = createPool(10, 60);
+
+        // Выполнение
+        DownloadException error = assertThrows(DownloadException.class,
+                () -> pool.extract("error", false, JsonNodeFactory.instance.objectNode()));
+
+        // Проверка - ошибка yt-dlp не считается сбоем обработчика
+        assertTrue(error.getMessage().contains("Private video"));
+        assertEquals(1, pool.workerCount());
+    }
+
+    @Test
+    void shouldStopWorkerOnJobTimeout() {
+        // Подготовка
+        pool = createPool(10, 1);
+
+        // Выполнение и проверка - зависшее задание не повторяется
+        assertThrows(InterruptedIOException.class,
+                () -> pool.extract("hang", false, JsonNodeFactory.instance.objectNode()));
+        assertEquals(0, pool.workerCount());
+    }
+
+    @Test
+    void shouldReplaceDeadWorkerOnHealthCheck() throws Exception {
+        // Подготовка - обработчик завершается во время простоя
+        pool = createPool(10, 60);
+        long deadPid = extractPid("https://example.com/1");
+        ProcessHandle handle = ProcessHandle.of(deadPid).orElseThrow();
+        handle.destroyForcibly();
+        handle.onExit().get();
+
+        // Выполнение
+        pool.checkHealth();
+
+        // Проверка - на его место запущен новый обработчик
+        assertEquals(1, pool.workerCount());
+        assertNotEquals(deadPid, extractPid("https://example.com/2"));
+    }
+
+    private YtDlpWorkerPool createPool(int maxJobsPerWorker, int jobTimeoutSeconds) {
+        return new YtDlpWorkerPool(true, 2, maxJobsPerWorker, jobTimeoutSeconds, "python3", script.toString());
+    }
+
+    private long extractPid(String url) throws Exception {
+        return assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> pool.extract(url, false, JsonNodeFactory.instance.objectNode()))
+                .path("result").path("pid").asLong();
+    }
+}
@@ -0,0 +1,130 @@
+package top.firlian.downloader.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+import top.firlian.downloader.domain.port.CacheRepository;
+import top.firlian.downloader.util.FileAccessLog;
+import top.firlian.downloader.util.InMemoryCacheRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты для CacheWarmer для проверки прогрева и упреждающего обновления кэша.
+ */
+class CacheWarmerTest {
+
+    private CacheRepository cacheRepository;
+    private FileAccessLog accessLog;
+    private DownloadService downloadService;
+    private CacheWarmer cacheWarmer;
+
+    @BeforeEach
+    void setUp() {
+        cacheRepository = mock(CacheRepository.class);
+        when(cacheRepository.expiresIn(anyString())).thenReturn(Optional.empty());
+        accessLog = new FileAccessLog("", 100, 24);
+        downloadService = mock(DownloadService.class);
+        cacheWarmer = new CacheWarmer(downloadService, cacheRepository, accessLog, 3, 60, 3, 1);
+    }
+
+    @Test
+    void shouldWarmUpMissingTopKeysWithinBudget() {
+        // Подготовка - популярное видео уже восстановлено из индекса кэша
+        hits("youtube:a", 5);
+        hits("youtube:b", 4);
+        hits("youtube:c", 3);
+        hits("youtube:d", 2);
+        when(cacheRepository.expiresIn("youtube:a")).thenReturn(Optional.of(Duration.ofHours(20)));
+        Sinks.One<MediaContent> first = Sinks.one();
+        when(downloadService.prefetch("https://youtu.be/b", null)).thenReturn(first.asMono());
+        when(downloadService.prefetch("https://youtu.be/c", null)).thenReturn(Mono.just(content()));
+
+        // Выполнение
+        int queued = cacheWarmer.warmUp();
+
+        // Проверка - при бюджете 1 следующая загрузка ждет завершения предыдущей
+        assertEquals(2, queued);
+        verify(downloadService).prefetch("https://youtu.be/b", null);
+        verify(downloadService, never()).prefetch("https://youtu.be/c", null);
+
+        first.tryEmitValue(content());
+        verify(downloadService).prefetch("https://youtu.be/c", null);
+        verify(downloadService, never()).prefetch(eq("https://youtu.be/a"), any());
+        verify(downloadService, never()).prefetch(eq("https://youtu.be/d"), any());
+    }
+
+    @Test
+    void shouldRefreshOnlyHotEntriesCloseToExpiry() {
+        // Подготовка - две записи истекают через 30 минут, но популярна только одна
+        hits("youtube:hot", 5);
+        hits("youtube:fresh", 5);
+        hits("youtube:cold", 1);
+        when(cacheRepository.expiresIn("youtube:hot")).thenReturn(Optional.of(Duration.ofMinutes(30)));
+        when(cacheRepository.expiresIn("youtube:fresh")).thenReturn(Optional.of(Duration.ofHours(5)));
+        when(cacheRepository.expiresIn("youtube:cold")).thenReturn(Optional.of(Duration.ofMinutes(30)));
+        when(downloadService.prefetch(anyString(), any())).thenReturn(Mono.just(content()));
+
+        // Выполнение
+        int started = cacheWarmer.refreshExpiring();
+
+        // Проверка
+        assertEquals(1, started);
+        verify(downloadService).prefetch("https://youtu.be/hot", null);
+        verify(downloadService, never()).prefetch("https://youtu.be/fresh", null);
+        verify(downloadService, never()).prefetch("https://youtu.be/cold", null);
+    }
+
+    @Test
+    void shouldRenewEntriesSentByTelegramFileIdInsteadOfDownloading(@TempDir Path downloadDir)
+            throws InterruptedException {
+        // Подготовка - кэш с временем жизни в час, поэтому любая запись истекает раньше, чем через 60 минут
+        InMemoryCacheRepository repository = new InMemoryCacheRepository(1, 1024, downloadDir.toString(), "",
+                new SimpleMeterRegistry());
+        CacheWarmer warmer = new CacheWarmer(downloadService, repository, accessLog, 3, 60, 3, 1);
+        hits("youtube:sent", 5);
+        hits("youtube:hot", 5);
+        repository.put("youtube:sent", content());
+        repository.put("youtube:hot", content().toBuilder().telegramFileId(null).build());
+        when(downloadService.prefetch(anyString(), any())).thenReturn(Mono.just(content()));
+        Thread.sleep(50);
+        Duration before = repository.expiresIn("youtube:sent").orElseThrow();
+
+        // Выполнение
+        int refreshed = warmer.refreshExpiring();
+
+        // Проверка - запись с file_id продлена без загрузки и сохранила file_id, остальная загружена заново
+        Duration after = repository.expiresIn("youtube:sent").orElseThrow();
+        assertEquals(2, refreshed);
+        assertTrue(after.compareTo(before) > 0, "Срок не продлен: " + before + " -> " + after);
+        assertEquals("file-id", repository.peek("youtube:sent").orElseThrow().getTelegramFileId());
+        verify(downloadService).prefetch("https://youtu.be/hot", null);
+        verify(downloadService, never()).prefetch("https://youtu.be/sent", null);
+    }
+
+    private void hits(String key, int count) {
+        for (int i = 0; i < count; i++) {
+            accessLog.record(key, "https://youtu.be/" + key.substring("youtube:".length()), null);
+        }
+    }
+
+    private MediaContent content() {
+        return MediaContent.builder()
+                .type(MediaType.VIDEO)
+                .sizeBytes(1000L)
+                .telegramFileId("file-id")
+                .build();
+    }
+}
@@ -0,0 +1,181 @@
+package top.firlian.downloader.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
+import top.firlian.downloader.domain.model.DownloadTask;
+import top.firlian.downloader.domain.model.Provider;
+import top.firlian.downloader.domain.model.TaskStatus;
+import top.firlian.downloader.util.InMemoryTaskQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для DownloadScheduler для проверки лимитов параллелизма и очереди.
+ */
+class DownloadSchedulerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private InMemoryTaskQueue taskQueue;
+    private DownloadScheduler scheduler;
+    private final AtomicLong taskCounter = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // Общий лимит 3, YouTube 2, VK 2, Instagram 1, очередь на 4 загрузки
+        taskQueue = new InMemoryTaskQueue(60, 1000);
+        scheduler = new DownloadScheduler(taskQueue, 3, 4, 2, 2, 1, meterRegistry);
+    }
+
+    @Test
+    void shouldRespectProviderLimit() {
+        // Подготовка
+        AtomicInteger started = new AtomicInteger();
+        List<Sinks.One<String>> downloads = new ArrayList<>();
+
+        // Выполнение - три загрузки Instagram при лимите провайдера 1
+        for (int i = 0; i < 3; i++) {
+            Sinks.One<String> download = Sinks.one();
+            downloads.add(download);
+            scheduler.schedule(task(Provider.INSTAGRAM), () -> {
+                started.incrementAndGet();
+                return download.asMono();
+            }).subscribe();
+        }
+
+        // Проверка - выполняется одна, остальные в очереди
+        assertEquals(1, started.get());
+        assertEquals(1, scheduler.activeCount(Provider.INSTAGRAM));
+        assertEquals(2, scheduler.pendingCount(Provider.INSTAGRAM));
+
+        // Завершение первой загрузки допускает следующую
+        downloads.get(0).tryEmitValue("done");
+        assertEquals(2, started.get());
+        assertEquals(1, scheduler.pendingCount(Provider.INSTAGRAM));
+    }
+
+    @Test
+    void shouldNotBlockOtherProvidersBehindSaturatedOne() {
+        // Подготовка
+        List<Provider> startedProviders = new CopyOnWriteArrayList<>();
+
+        // Выполнение - Instagram занят, следом в очереди Instagram и YouTube
+        scheduler.schedule(task(Provider.INSTAGRAM), () -> {
+            startedProviders.add(Provider.INSTAGRAM);
+            return Mono.never();
+        }).subscribe();
+        scheduler.schedule(task(Provider.INSTAGRAM), () -> {
+            startedProviders.add(Provider.INSTAGRAM);
+            return Mono.never();
+        }).subscribe();
+        scheduler.schedule(task(Provider.YOUTUBE), () -> {
+            startedProviders.add(Provider.YOUTUBE);
+            return Mono.never();
+        }).subscribe();
+
+        // Проверка - YouTube допущен в обход ожидающего Instagram
+        assertEquals(List.of(Provider.INSTAGRAM, Provider.YOUTUBE), startedProviders);
+    }
+
+    @Test
+    void shouldRespectGlobalLimitAndRejectWhenQueueIsFull() {
+        // Подготовка
+        AtomicInteger started = new AtomicInteger();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        // Выполнение - 3 выполняются, 4 ждут, 8-я отклоняется
+        for (int i = 0; i < 8; i++) {
+            Provider provider = i % 2 == 0 ? Provider.YOUTUBE : Provider.VK;
+            scheduler.schedule(task(provider), () -> {
+                started.incrementAndGet();
+                return Mono.never();
+            }).subscribe(value -> {}, errors::add);
+        }
+
+        // Проверка
+        assertEquals(3, started.get());
+        assertEquals(4, scheduler.pendingCount(Provider.YOUTUBE) + scheduler.pendingCount(Provider.VK));
+        assertEquals(1, errors.size());
+        assertInstanceOf(DownloadRejectedException.class, errors.get(0));
+        assertEquals(1.0, meterRegistry.get("downloader.scheduler.rejected").counter().count());
+    }
+
+    @Test
+    void shouldReleasePermitOnCancellation() {
+        // Подготовка
+        AtomicInteger started = new AtomicInteger();
+        Disposable first = scheduler.schedule(task(Provider.INSTAGRAM), () -> {
+            started.incrementAndGet();
+            return Mono.never();
+        }).subscribe();
+        Disposable queued = scheduler.schedule(task(Provider.INSTAGRAM), () -> {
+            started.incrementAndGet();
+            return Mono.never();
+        }).subscribe();
+        scheduler.schedule(task(Provider.INSTAGRAM), () -> {
+            started.incrementAndGet();
+            return Mono.never();
+        }).subscribe();
+
+        // Выполнение - отменяем ожидающую, затем выполняющуюся загрузку
+        queued.dispose();
+        assertEquals(1, scheduler.pendingCount(Provider.INSTAGRAM));
+        first.dispose();
+
+        // Проверка - освободившееся разрешение получила оставшаяся загрузка
+        assertEquals(2, started.get());
+        assertEquals(0, scheduler.pendingCount(Provider.INSTAGRAM));
+        assertEquals(1, scheduler.activeCount(Provider.INSTAGRAM));
+        assertEquals(2, meterRegistry.get("downloader.scheduler.wait").tag("provider", "instagram").timer().count());
+    }
+
+    @Test
+    void shouldTrackTaskStateTransitions() {
+        // Подготовка
+        DownloadTask task = task(Provider.YOUTUBE);
+        Sinks.One<String> download = Sinks.one();
+
+        // Выполнение и проверка - задача проходит PENDING → DOWNLOADING → COMPLETED
+        scheduler.schedule(task, download::asMono).subscribe();
+        assertEquals(TaskStatus.DOWNLOADING, taskQueue.getTask(task.getKey()).orElseThrow().getStatus());
+
+        download.tryEmitValue("done");
+        DownloadTask finished = taskQueue.getTask(task.getKey()).orElseThrow();
+        assertEquals(TaskStatus.COMPLETED, finished.getStatus());
+        assertNotNull(finished.getFinishedAt());
+    }
+
+    @Test
+    void shouldFailTaskOnError() {
+        // Подготовка
+        DownloadTask task = task(Provider.VK);
+
+        // Выполнение
+        scheduler.schedule(task, () -> Mono.error(new IllegalStateException("сбой"))).subscribe(v -> {}, e -> {});
+
+        // Проверка
+        DownloadTask failed = taskQueue.getTask(task.getKey()).orElseThrow();
+        assertEquals(TaskStatus.FAILED, failed.getStatus());
+        assertEquals("сбой", failed.getErrorMessage());
+        assertEquals(0, scheduler.activeCount(Provider.VK));
+    }
+
+    private DownloadTask task(Provider provider) {
+        return DownloadTask.builder()
+                .url("https://example.com/" + taskCounter.incrementAndGet())
+                .provider(provider)
+                .chatId(12345L)
+                .build();
+    }
+}
@@ -0,0 +1,256 @@
+package top.firlian.downloader.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.error.DownloadException;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaItem;
+import top.firlian.downloader.domain.model.MediaKey;
+import top.firlian.downloader.domain.model.MediaType;
+import top.firlian.downloader.domain.model.Provider;
+import top.firlian.downloader.domain.port.MediaDownloader;
+import top.firlian.downloader.domain.port.ProviderDetector;
+import top.firlian.downloader.util.FileAccessLog;
+import top.firlian.downloader.util.HardLinkContentStore;
+import top.firlian.downloader.util.InMemoryCacheRepository;
+import top.firlian.downloader.util.InMemoryMetadataRepository;
+import top.firlian.downloader.util.InMemoryTaskQueue;
+import top.firlian.downloader.util.UrlProviderDetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты для DownloadService для проверки объединения одновременных загрузок.
+ */
+class DownloadServiceTest {
+
+    private static final String URL = "https://www.youtube.com/watch?v=test123";
+
+    @Mock
+    private ProviderDetector providerDetector;
+
+    @Mock
+    private MediaDownloader mediaDownloader;
+
+    private DownloadService downloadService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(providerDetector.detectProvider(anyString())).thenReturn(Provider.YOUTUBE);
+        when(providerDetector.extractKey(anyString())).thenAnswer(invocation -> MediaKey.builder()
+                .provider(Provider.YOUTUBE)
+                .mediaId(invocation.getArgument(0))
+                .build());
+        downloadService = newService(providerDetector);
+    }
+
+    @Test
+    void shouldShareSingleDownloadBetweenConcurrentChats() {
+        // Подготовка - загрузка завершится только по сигналу теста
+        Sinks.One<MediaContent> sink = Sinks.one();
+        when(mediaDownloader.download(URL)).thenReturn(sink.asMono());
+
+        List<MediaContent> received = new CopyOnWriteArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        // Выполнение - три чата запрашивают один и тот же URL
+        for (long chatId = 1; chatId <= 3; chatId++) {
+            downloadService.processUrl(URL, chatId).subscribe(received::add, errors::add);
+        }
+        sink.tryEmitValue(content());
+
+        // Проверка - загрузка выполнена один раз, результат получили все чаты
+        verify(mediaDownloader, times(1)).download(URL);
+        assertTrue(errors.isEmpty());
+        assertEquals(3, received.size());
+    }
+
+    @Test
+    void shouldStartNewDownloadAfterFailure() {
+        // Подготовка - первая загрузка падает, вторая успешна
+        when(mediaDownloader.download(URL))
+                .thenReturn(Mono.error(new RuntimeException("yt-dlp упал")))
+                .thenReturn(Mono.just(content()));
+
+        // Выполнение и проверка
+        StepVerifier.create(downloadService.processUrl(URL, 1L))
+                .expectError(DownloadException.class)
+                .verify();
+        StepVerifier.create(downloadService.processUrl(URL, 2L))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(mediaDownloader, times(2)).download(URL);
+    }
+
+    @Test
+    void shouldServeCompletedDownloadFromCache() {
+        // Подготовка
+        when(mediaDownloader.download(URL)).thenReturn(Mono.just(content()));
+
+        // Выполнение
+        List<MediaContent> received = new ArrayList<>();
+        downloadService.processUrl(URL, 1L).subscribe(received::add);
+        downloadService.processUrl(URL, 2L).subscribe(received::add);
+
+        // Проверка - повторный запрос обслужен из кэша
+        assertEquals(2, received.size());
+        verify(mediaDownloader, times(1)).download(URL);
+    }
+
+    @Test
+    void shouldServeDownloadedItemFromCache() {
+        // Подготовка
+        when(mediaDownloader.downloadSpecificItem(URL, 1)).thenReturn(Mono.just(content()));
+
+        // Выполнение - два чата выбирают один элемент карусели друг за другом
+        List<MediaContent> received = new ArrayList<>();
+        downloadService.processUrlWithIndex(URL, 1, 1L).subscribe(received::add);
+        downloadService.processUrlWithIndex(URL, 1, 2L).subscribe(received::add);
+
+        // Проверка - элемент загружен один раз
+        assertEquals(2, received.size());
+        verify(mediaDownloader, times(1)).downloadSpecificItem(URL, 1);
+    }
+
+    @Test
+    void shouldReuseItemFromCachedPlaylist() {
+        // Подготовка - список элементов уже получен и закэширован
+        MediaItem second = MediaItem.builder().index(1).title("Второе").type(MediaType.VIDEO).build();
+        MediaContent playlist = MediaContent.builder()
+                .url(URL)
+                .title("Плейлист")
+                .items(List.of(MediaItem.builder().index(0).title("Первое").build(), second))
+                .build();
+        when(mediaDownloader.download(URL)).thenReturn(Mono.just(playlist));
+        when(mediaDownloader.downloadSpecificItem(URL, second)).thenReturn(Mono.just(content()));
+        downloadService.processUrl(URL, 1L).block();
+
+        // Выполнение
+        MediaContent item = downloadService.processUrlWithIndex(URL, 1, 1L).block();
+
+        // Проверка - загрузчик получил сведения об элементе из списка
+        assertNotNull(item);
+        verify(mediaDownloader).downloadSpecificItem(URL, second);
+        verify(mediaDownloader, never()).downloadSpecificItem(URL, 1);
+    }
+
+    @Test
+    void shouldServeTelegramFileIdAndReloadWhenRejected() {
+        // Подготовка - файл отправлен в Telegram и получен file_id
+        when(mediaDownloader.download(URL)).thenReturn(Mono.just(content()));
+        downloadService.processUrl(URL, 1L).block();
+        downloadService.rememberTelegramFile(URL, null, "file-id", "unique-id");
+
+        // Выполнение
+        MediaContent cached = downloadService.processUrl(URL, 2L).block();
+        MediaContent reloaded = downloadService.reloadContent(URL, null, 2L, cached).block();
+
+        // Проверка - повторный запрос получает file_id без файла,
+        // а после отказа Telegram контент загружается заново
+        assertNotNull(cached);
+        assertEquals("file-id", cached.getTelegramFileId());
+        assertNull(cached.getFilePath());
+        assertNotNull(reloaded);
+        assertNull(reloaded.getTelegramFileId());
+        assertEquals("/tmp/test.mp4", reloaded.getFilePath());
+        verify(mediaDownloader, times(2)).download(URL);
+    }
+
+    @Test
+    void shouldFailFastForRecentlyUnavailableContent() {
+        // Подготовка - видео приватное
+        when(mediaDownloader.download(URL)).thenReturn(Mono.error(
+                new ContentUnavailableException("Контент недоступен", ContentUnavailableException.Reason.PRIVATE, null)));
+
+        // Выполнение - пользователь повторяет запрос
+        StepVerifier.create(downloadService.processUrl(URL, 1L))
+                .expectError(ContentUnavailableException.class)
+                .verify();
+        StepVerifier.create(downloadService.processUrl(URL, 1L))
+                .expectError(ContentUnavailableException.class)
+                .verify();
+
+        // Проверка - повторный запрос отклонен по кэшированному отказу
+        verify(mediaDownloader, times(1)).download(URL);
+    }
+
+    @Test
+    void shouldServeUrlVariantsFromOneDownload() {
+        // Подготовка - ключи извлекаются настоящим детектором
+        DownloadService service = newService(new UrlProviderDetector());
+        when(mediaDownloader.download(anyString())).thenReturn(Mono.just(content()));
+
+        // Выполнение - разные формы ссылки на одно видео
+        service.processUrl("https://youtu.be/dQw4w9WgXcQ?si=abc", 1L).block();
+        service.processUrl("https://m.youtube.com/watch?v=dQw4w9WgXcQ&feature=share", 2L).block();
+        service.processUrl("https://www.youtube.com/shorts/dQw4w9WgXcQ", 3L).block();
+
+        // Проверка - видео загружено один раз
+        verify(mediaDownloader, times(1)).download(anyString());
+    }
+
+    @Test
+    void shouldPrefetchCachedContentAndShareItWithUserRequest() {
+        // Подготовка - контент уже в кэше, фоновое обновление завершится по сигналу теста
+        when(mediaDownloader.download(URL)).thenReturn(Mono.just(content()));
+        downloadService.processUrl(URL, 1L).block();
+        Sinks.One<MediaContent> sink = Sinks.one();
+        when(mediaDownloader.download(URL)).thenReturn(sink.asMono());
+
+        // Выполнение
+        List<MediaContent> prefetched = new CopyOnWriteArrayList<>();
+        downloadService.prefetch(URL, null).subscribe(prefetched::add);
+        MediaContent cached = downloadService.processUrl(URL, 2L).block();
+        sink.tryEmitValue(content().toBuilder().title("Refreshed").build());
+
+        // Проверка - запись обновлена загрузкой, а пока она шла, пользователь получил кэш
+        verify(mediaDownloader, times(2)).download(URL);
+        assertEquals("Test Video", cached.getTitle());
+        assertEquals("Refreshed", prefetched.get(0).getTitle());
+        assertEquals("Refreshed", downloadService.processUrl(URL, 3L).block().getTitle());
+    }
+
+    private DownloadService newService(ProviderDetector detector) {
+        InMemoryCacheRepository cacheRepository =
+                new InMemoryCacheRepository(24, 1024, "./downloads", "", new SimpleMeterRegistry());
+        HardLinkContentStore contentStore =
+                new HardLinkContentStore("./downloads", false, Schedulers.immediate(), new SimpleMeterRegistry());
+        return new DownloadService(
+                detector,
+                mediaDownloader,
+                cacheRepository,
+                new InMemoryMetadataRepository(30, 1000, false, 10, 1440, 360, 60, 15),
+                new DownloadScheduler(new InMemoryTaskQueue(60, 1000), 4, 100, 2, 2, 1, new SimpleMeterRegistry()),
+                new StorageManager(cacheRepository, contentStore, "./downloads", "100%", "90%", 60, 100,
+                        Schedulers.immediate()),
+                contentStore,
+                new FileAccessLog("", 1000, 24)
+        );
+    }
+
+    private MediaContent content() {
+        return MediaContent.builder()
+                .url(URL)
+                .type(MediaType.VIDEO)
+                .title("Test Video")
+                .sizeBytes(1000L)
+                .filePath("/tmp/test.mp4")
+                .build();
+    }
+}
@@ -0,0 +1,136 @@
+package top.firlian.downloader.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.scheduler.Schedulers;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+import top.firlian.downloader.util.HardLinkContentStore;
+import top.firlian.downloader.util.InMemoryCacheRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для StorageManager для проверки освобождения места по отметкам заполнения.
+ */
+class StorageManagerTest {
+
+    @TempDir
+    Path downloadDir;
+
+    private InMemoryCacheRepository cacheRepository;
+    private HardLinkContentStore contentStore;
+    private StorageManager storageManager;
+
+    @BeforeEach
+    void setUp() {
+        cacheRepository = new InMemoryCacheRepository(24, 1024, downloadDir.toString(), "", new SimpleMeterRegistry());
+        contentStore = new HardLinkContentStore(downloadDir.toString(), true, Schedulers.immediate(),
+                new SimpleMeterRegistry());
+        storageManager = new StorageManager(cacheRepository, contentStore, downloadDir.toString(),
+                "1MB", "600KB", 60, 100, Schedulers.immediate());
+    }
+
+    @Test
+    void shouldEvictOrphansAndColdFilesFirst() throws IOException {
+        // Подготовка - 1100 КБ при верхней отметке 1024 КБ
+        Path orphan = file("interrupted", 200);
+        Files.setLastModifiedTime(orphan, FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+        MediaContent popular = cached("popular", 300, null);
+        MediaContent cold = cached("cold", 300, null);
+        MediaContent warm = cached("warm", 300, null);
+        for (int i = 0; i < 5; i++) {
+            cacheRepository.get("popular");
+        }
+        cacheRepository.get("warm");
+
+        // Выполнение
+        long freed = storageManager.enforce(0);
+
+        // Проверка - освобождено до нижней отметки: брошенный файл и наименее ценный файл кэша
+        assertEquals(500 * 1024, freed);
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(Path.of(cold.getFilePath())));
+        assertFalse(cacheRepository.get("cold").isPresent());
+        assertTrue(Files.exists(Path.of(popular.getFilePath())));
+        assertEquals(popular, cacheRepository.get("popular").orElseThrow());
+        assertEquals(warm, cacheRepository.get("warm").orElseThrow());
+    }
+
+    @Test
+    void shouldKeepUploadedEntryWithoutFile() throws IOException {
+        // Подготовка
+        MediaContent uploaded = cached("uploaded", 1100, "file-id");
+
+        // Выполнение
+        storageManager.enforce(0);
+
+        // Проверка - файл удален, а запись осталась для отправки по file_id
+        assertFalse(Files.exists(Path.of(uploaded.getFilePath())));
+        MediaContent restored = cacheRepository.get("uploaded").orElseThrow();
+        assertNull(restored.getFilePath());
+        assertEquals("file-id", restored.getTelegramFileId());
+    }
+
+    @Test
+    void shouldFreeSpaceForIncomingDownloadAndSkipActiveDownloads() throws IOException {
+        // Подготовка - недавний файл вне кэша принадлежит выполняющейся загрузке
+        Path active = file("active", 300);
+        MediaContent cold = cached("cold", 300, null);
+
+        // Выполнение - ниже верхней отметки, но новая загрузка ее превысит
+        long idleFreed = storageManager.enforce(0);
+        storageManager.ensureSpace(500 * 1024).block();
+
+        // Проверка
+        assertEquals(0, idleFreed);
+        assertTrue(Files.exists(active));
+        assertFalse(Files.exists(Path.of(cold.getFilePath())));
+        assertFalse(cacheRepository.get("cold").isPresent());
+    }
+
+    @Test
+    void shouldCountDeduplicatedContentOnce() throws IOException {
+        // Подготовка - два файла кэша с одинаковым содержимым по 600 КБ
+        MediaContent original = cached("original", 600, null);
+        MediaContent repost = cached("repost", 600, null);
+        contentStore.deduplicate(original.getFilePath());
+        contentStore.deduplicate(repost.getFilePath());
+
+        // Выполнение
+        long freed = storageManager.enforce(0);
+
+        // Проверка - на диске 600 КБ, что ниже верхней отметки
+        assertEquals(0, freed);
+        assertTrue(Files.exists(Path.of(original.getFilePath())));
+        assertTrue(Files.exists(Path.of(repost.getFilePath())));
+    }
+
+    private Path file(String task, int sizeKb) throws IOException {
+        Path file = Files.createDirectories(downloadDir.resolve(task)).resolve("video.mp4");
+        Files.write(file, new byte[sizeKb * 1024]);
+        return file;
+    }
+
+    private MediaContent cached(String key, int sizeKb, String telegramFileId) throws IOException {
+        MediaContent content = MediaContent.builder()
+                .url("https://example.com/" + key)
+                .type(MediaType.VIDEO)
+                .title(key)
+                .sizeBytes(sizeKb * 1024L)
+                .filePath(file(key, sizeKb).toString())
+                .telegramFileId(telegramFileId)
+                .build();
+        cacheRepository.put(key, content);
+        return content;
+    }
+}
@@ -3,7 +3,9 @@ package top.firlian.downloader.config;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
+import top.firlian.downloader.adapter.out.CircuitBreakingMediaDownloader;
 import top.firlian.downloader.adapter.out.HttpYtDlpMediaDownloader;
 import top.firlian.downloader.adapter.out.YtDlpMediaDownloader;
 import top.firlian.downloader.domain.port.MediaDownloader;
@@ -14,6 +16,7 @@ import static org.junit.jupiter.api.Assertions.*;
  * Тесты для MediaDownloaderConfig для проверки корректного выбора реализации загрузчика.
  */
 @SpringBootTest
+@ActiveProfiles("test")
 @TestPropertySource(properties = {"telegram.bot.enabled=false"})
 class MediaDownloaderConfigTest {
 
@@ -26,6 +29,7 @@ class MediaDownloaderConfigTest {
     }
 
     @SpringBootTest
+    @ActiveProfiles("test")
     @TestPropertySource(properties = {"downloader.ytdlp.mode=local", "telegram.bot.enabled=false"})
     static class LocalModeTest {
 
@@ -35,11 +39,14 @@ class MediaDownloaderConfigTest {
         @Test
         void shouldUseLocalDownloader() {
             assertNotNull(mediaDownloader);
-            assertInstanceOf(YtDlpMediaDownloader.class, mediaDownloader);
+            CircuitBreakingMediaDownloader wrapper =
+                    assertInstanceOf(CircuitBreakingMediaDownloader.class, mediaDownloader);
+            assertInstanceOf(YtDlpMediaDownloader.class, wrapper.delegate());
         }
     }
 
     @SpringBootTest
+    @ActiveProfiles("test")
     @TestPropertySource(properties = {"downloader.ytdlp.mode=http", "telegram.bot.enabled=false"})
     static class HttpModeTest {
 
@@ -49,7 +56,9 @@ class MediaDownloaderConfigTest {
         @Test
         void shouldUseHttpDownloader() {
             assertNotNull(mediaDownloader);
-            assertInstanceOf(HttpYtDlpMediaDownloader.class, mediaDownloader);
+            CircuitBreakingMediaDownloader wrapper =
+                    assertInstanceOf(CircuitBreakingMediaDownloader.class, mediaDownloader);
+            assertInstanceOf(HttpYtDlpMediaDownloader.class, wrapper.delegate());
         }
     }
 }
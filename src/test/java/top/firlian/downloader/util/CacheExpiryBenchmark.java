@@ -0,0 +1,125 @@
+package top.firlian.downloader.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Бенчмарк удаления истекших записей кэша: полный обход всех записей
+ * по расписанию против колеса таймеров Caffeine.
+ * Запуск: {@code ./gradlew benchmark -Dbenchmark.entries=1000000}.
+ * Записи добавляются равномерно в течение суток при сроке жизни 24 часа,
+ * поэтому за каждый час истекает примерно 1/24 записей.
+ * Из времени каждого замера вычитаются паузы сборки мусора, пришедшиеся на него.
+ */
+@Tag("benchmark")
+class CacheExpiryBenchmark {
+
+    private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    @Test
+    void compareSweepWithTimerWheel() {
+        // Подготовка
+        int entries = Integer.getInteger("benchmark.entries", 1_000_000);
+        int hours = Integer.getInteger("benchmark.hours", 6);
+        long insertStepMillis = TTL_MILLIS / entries;
+
+        // Выполнение - полный обход: каждый час просматриваются все записи
+        Cache<String, Long> swept = Caffeine.newBuilder().build();
+        for (int i = 0; i < entries; i++) {
+            swept.put(key(i), i * insertStepMillis);
+        }
+        long sweepMaxNanos = 0;
+        long sweepTotalNanos = 0;
+        for (int hour = 1; hour <= hours; hour++) {
+            long now = TTL_MILLIS + TimeUnit.HOURS.toMillis(hour);
+            long gcBefore = gcMillis();
+            long started = System.nanoTime();
+            swept.asMap().values().removeIf(timestamp -> now - timestamp > TTL_MILLIS);
+            long elapsed = withoutGc(System.nanoTime() - started, gcBefore);
+            sweepMaxNanos = Math.max(sweepMaxNanos, elapsed);
+            sweepTotalNanos += elapsed;
+        }
+        long sweptLeft = swept.estimatedSize();
+        swept.invalidateAll();
+        swept = null;
+        System.gc();
+
+        // Выполнение - колесо таймеров: обслуживание каждую секунду модельного времени
+        AtomicLong nanos = new AtomicLong();
+        InMemoryCacheRepository repository = new InMemoryCacheRepository(24, 2048, "./downloads", "",
+                new SimpleMeterRegistry(), nanos::get, Scheduler.disabledScheduler());
+        for (int i = 0; i < entries; i++) {
+            repository.put(key(i), content(i));
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(insertStepMillis));
+        }
+        nanos.set(TimeUnit.MILLISECONDS.toNanos(TTL_MILLIS));
+        long[] tickNanos = new long[(int) TimeUnit.HOURS.toSeconds(hours)];
+        long wheelTotalNanos = 0;
+        for (int tick = 0; tick < tickNanos.length; tick++) {
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            long gcBefore = gcMillis();
+            long started = System.nanoTime();
+            repository.evictExpired();
+            tickNanos[tick] = withoutGc(System.nanoTime() - started, gcBefore);
+            wheelTotalNanos += tickNanos[tick];
+        }
+        Arrays.sort(tickNanos);
+
+        // Проверка - в обоих случаях остались записи последних суток
+        long wheelLeft = countEntries(repository, entries);
+        System.out.printf("Записей: %d, часов: %d%n", entries, hours);
+        System.out.printf("Полный обход раз в час: максимум %.1f мс, всего %.1f мс, осталось %d%n",
+                sweepMaxNanos / 1e6, sweepTotalNanos / 1e6, sweptLeft);
+        System.out.printf("Колесо таймеров раз в секунду: p99 %.3f мс, максимум %.2f мс, всего %.1f мс, осталось %d%n",
+                tickNanos[tickNanos.length * 99 / 100] / 1e6, tickNanos[tickNanos.length - 1] / 1e6,
+                wheelTotalNanos / 1e6, wheelLeft);
+        assertEquals(sweptLeft, wheelLeft, entries / 1000.0);
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .sum();
+    }
+
+    private static long withoutGc(long elapsedNanos, long gcBeforeMillis) {
+        long gcNanos = TimeUnit.MILLISECONDS.toNanos(gcMillis() - gcBeforeMillis);
+        return Math.max(0, elapsedNanos - gcNanos);
+    }
+
+    private static long countEntries(InMemoryCacheRepository repository, int entries) {
+        long count = 0;
+        for (int i = 0; i < entries; i++) {
+            if (repository.get(key(i)).isPresent()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String key(int i) {
+        return "youtube:video" + i;
+    }
+
+    private static MediaContent content(int i) {
+        return MediaContent.builder()
+                .type(MediaType.VIDEO)
+                .sizeBytes(i)
+                .telegramFileId("file-id")
+                .build();
+    }
+}
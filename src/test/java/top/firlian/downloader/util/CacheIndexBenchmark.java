@@ -0,0 +1,77 @@
+package top.firlian.downloader.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Бенчмарк старта кэша медиа с индексом на диске.
+ * Запуск: {@code ./gradlew benchmark -Dbenchmark.entries=100000}.
+ * Файлы записей не создаются: при старте они не проверяются,
+ * поэтому время восстановления зависит только от размера индекса.
+ */
+@Tag("benchmark")
+class CacheIndexBenchmark {
+
+    /** Размер кэша в мегабайтах, достаточный, чтобы вместить все записи */
+    private static final long CACHE_SIZE_MB = 1_000_000;
+
+    @TempDir
+    Path downloadDir;
+
+    @Test
+    void measureStartupTime() throws IOException {
+        // Подготовка
+        int entries = Integer.getInteger("benchmark.entries", 100_000);
+        int runs = Integer.getInteger("benchmark.runs", 5);
+        String indexFile = downloadDir.resolve(".cache-index").toString();
+        InMemoryCacheRepository repository = new InMemoryCacheRepository(
+                24, CACHE_SIZE_MB, downloadDir.toString(), indexFile, new SimpleMeterRegistry());
+        for (int i = 0; i < entries; i++) {
+            repository.put("youtube:video" + i, content(i));
+        }
+        repository.close();
+        long indexBytes = Files.size(Path.of(indexFile));
+
+        // Выполнение
+        long bestNanos = Long.MAX_VALUE;
+        InMemoryCacheRepository restored = null;
+        for (int run = 0; run < runs; run++) {
+            long started = System.nanoTime();
+            restored = new InMemoryCacheRepository(
+                    24, CACHE_SIZE_MB, downloadDir.toString(), indexFile, new SimpleMeterRegistry());
+            bestNanos = Math.min(bestNanos, System.nanoTime() - started);
+            if (run < runs - 1) {
+                restored.close();
+            }
+        }
+
+        // Проверка
+        System.out.printf("Записей: %d, индекс: %.1f МБ, лучший старт из %d: %d мс%n",
+                entries, indexBytes / (1024.0 * 1024), runs, bestNanos / 1_000_000);
+        assertTrue(restored.get("youtube:video0").isPresent());
+        assertTrue(restored.get("youtube:video" + (entries - 1)).isPresent());
+        restored.close();
+    }
+
+    private MediaContent content(int i) {
+        return MediaContent.builder()
+                .url("https://www.youtube.com/watch?v=video" + i)
+                .type(MediaType.VIDEO)
+                .title("Video " + i)
+                .sizeBytes(1024 * 1024 + i)
+                .filePath(downloadDir.resolve("task-" + i).resolve("video.mp4").toString())
+                // С file_id запись остается пригодной и без файла на диске
+                .telegramFileId("file-id-" + i)
+                .build();
+    }
+}
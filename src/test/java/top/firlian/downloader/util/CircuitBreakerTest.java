@@ -0,0 +1,88 @@
+package top.firlian.downloader.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import top.firlian.downloader.domain.error.DownloadException;
+import top.firlian.downloader.domain.error.DownloadRejectedException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void shouldOpenOnFailureRateAndCloseAfterSuccessfulTrials() {
+        // Подготовка - окно 4 вызова, размыкание при половине ошибок, 2 пробных вызова
+        CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 50, Duration.ofSeconds(10), 2, meterRegistry, now::get);
+
+        // Выполнение - 2 успеха и 2 ошибки
+        call(breaker, false);
+        call(breaker, true);
+        call(breaker, false);
+        call(breaker, true);
+
+        // Проверка - выключатель разомкнут и отклоняет вызовы, не выполняя их
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertThrows(DownloadRejectedException.class, () -> call(breaker, false));
+        assertEquals(4, calls.get());
+
+        // Выполнение - время размыкания истекло, пробные вызовы успешны
+        now.addAndGet(10_000);
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        call(breaker, false);
+
+        // Проверка
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(1.0, meterRegistry.get("downloader.circuit.transitions")
+                .tag("name", "test").tag("from", "half_open").tag("to", "closed").counter().count());
+        assertEquals(1.0, meterRegistry.get("downloader.circuit.rejected").tag("name", "test").counter().count());
+    }
+
+    @Test
+    void shouldReopenOnFailedTrialAndIgnoreRequestErrors() {
+        // Подготовка
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, 2, 100, Duration.ofSeconds(10), 1, meterRegistry, now::get);
+
+        // Выполнение - ошибка запроса, не относящаяся к ресурсу, выключатель не размыкает
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalArgumentException.class, () -> breaker.execute(
+                    () -> Mono.error(new IllegalArgumentException()), error -> false, this::rejected).block());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        call(breaker, true);
+        call(breaker, true);
+        now.addAndGet(10_000);
+        call(breaker, true);
+
+        // Проверка - неудачный пробный вызов снова размыкает выключатель
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1.0, meterRegistry.get("downloader.circuit.state").tag("name", "test").gauge().value());
+        assertFalse(breaker.isCallPermitted());
+    }
+
+    private void call(CircuitBreaker breaker, boolean fail) {
+        try {
+            breaker.execute(() -> {
+                calls.incrementAndGet();
+                return fail ? Mono.error(new DownloadException("Ошибка")) : Mono.just("ok");
+            }, error -> true, this::rejected).block();
+        } catch (DownloadException e) {
+            if (e instanceof DownloadRejectedException) {
+                throw e;
+            }
+        }
+    }
+
+    private DownloadRejectedException rejected() {
+        return new DownloadRejectedException("Отклонено");
+    }
+}
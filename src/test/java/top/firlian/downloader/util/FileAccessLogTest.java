@@ -0,0 +1,66 @@
+package top.firlian.downloader.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import top.firlian.downloader.domain.model.AccessRecord;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileAccessLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRecentAccessOutweighsOldBurst() {
+        // Подготовка - вчерашний всплеск и сегодняшний устойчивый интерес
+        AtomicLong now = new AtomicLong();
+        FileAccessLog accessLog = new FileAccessLog("", 100, 6, now::get);
+        for (int i = 0; i < 8; i++) {
+            accessLog.record("youtube:old", "https://youtu.be/old", null);
+        }
+        now.addAndGet(TimeUnit.HOURS.toMillis(24));
+        for (int i = 0; i < 3; i++) {
+            accessLog.record("youtube:playlist:PL1#2", "https://www.youtube.com/playlist?list=PL1", 2);
+        }
+
+        // Выполнение
+        List<AccessRecord> top = accessLog.top(10);
+
+        // Проверка - за 4 периода полураспада 8 обращений затухли до 0.5
+        assertEquals("youtube:playlist:PL1#2", top.get(0).getKey());
+        assertEquals(2, top.get(0).getItemIndex());
+        assertEquals(3.0, top.get(0).getScore(), 0.001);
+        assertEquals(0.5, top.get(1).getScore(), 0.001);
+    }
+
+    @Test
+    void testTopKeysSurviveRestart() {
+        // Подготовка
+        String file = dir.resolve(".access-log").toString();
+        FileAccessLog accessLog = new FileAccessLog(file, 2, 24, () -> 0L);
+        for (int key = 1; key <= 3; key++) {
+            for (int i = 0; i < key; i++) {
+                accessLog.record("vk:video" + key, "https://vk.com/video" + key, null);
+            }
+        }
+
+        // Выполнение
+        accessLog.close();
+        FileAccessLog restored = new FileAccessLog(file, 2, 24, () -> 0L);
+
+        // Проверка - сохранены только самые популярные ключи
+        List<AccessRecord> top = restored.top(10);
+        assertEquals(2, top.size());
+        assertEquals("vk:video3", top.get(0).getKey());
+        assertEquals("https://vk.com/video3", top.get(0).getUrl());
+        assertNull(top.get(0).getItemIndex());
+        assertEquals(3.0, top.get(0).getScore(), 0.001);
+        assertEquals("vk:video2", top.get(1).getKey());
+    }
+}
@@ -0,0 +1,74 @@
+package top.firlian.downloader.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HardLinkContentStoreTest {
+
+    @TempDir
+    Path downloadDir;
+
+    private HardLinkContentStore contentStore;
+
+    @BeforeEach
+    void setUp() {
+        contentStore = new HardLinkContentStore(downloadDir.toString(), true, Schedulers.immediate(),
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testIdenticalFilesShareContent() throws IOException {
+        // Подготовка - одно видео, загруженное по двум ссылкам, и другое видео
+        Path youtube = file("task-1", "video-abc.mp4", "same content");
+        Path vk = file("task-2", "video-123_456.mp4", "same content");
+        Path other = file("task-3", "other.mp4", "other content");
+
+        // Выполнение
+        contentStore.deduplicate(youtube.toString());
+        contentStore.deduplicate(vk.toString());
+        contentStore.deduplicate(other.toString());
+
+        // Проверка - пути не изменились, а содержимое хранится один раз
+        assertTrue(Files.isSameFile(youtube, vk));
+        assertFalse(Files.isSameFile(youtube, other));
+        assertEquals("same content", Files.readString(vk));
+        long same = "same content".length();
+        long different = "other content".length();
+        assertEquals(same, contentStore.savedBytes());
+        assertEquals((2.0 * same + different) / (same + different), contentStore.dedupRatio(), 0.001);
+    }
+
+    @Test
+    void testBlobIsCollectedAfterLastReference() throws IOException {
+        // Подготовка
+        Path first = file("task-1", "video.mp4", "content");
+        Path second = file("task-2", "video.mp4", "content");
+        contentStore.deduplicate(first.toString());
+        contentStore.deduplicate(second.toString());
+
+        // Выполнение и проверка - блок живет, пока на него ссылается хотя бы один файл
+        Files.delete(first);
+        assertEquals(0, contentStore.collectGarbage());
+        assertEquals("content", Files.readString(second));
+
+        Files.delete(second);
+        assertEquals("content".length(), contentStore.collectGarbage());
+        try (var blobs = Files.walk(downloadDir.resolve(HardLinkContentStore.BLOBS_DIR))) {
+            assertTrue(blobs.noneMatch(Files::isRegularFile));
+        }
+    }
+
+    private Path file(String task, String name, String content) throws IOException {
+        Path file = Files.createDirectories(downloadDir.resolve(task)).resolve(name);
+        return Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,146 @@
+package top.firlian.downloader.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import top.firlian.downloader.domain.model.MediaContent;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Бенчмарк доли попаданий кэша медиа на трассе запросов: ограниченный по размеру
+ * кэш с W-TinyLFU против LRU с тем же бюджетом в байтах.
+ * Запуск: {@code ./gradlew benchmark -Dbenchmark.trace=trace.txt -Dbenchmark.cache-size-mb=10240}.
+ * Трасса - по одному запросу в строке: {@code URL размер_в_байтах}.
+ * Без трассы генерируется синтетическая: частоты URL по закону Ципфа,
+ * популярные короткие ролики и редкие разовые загрузки больших видео.
+ */
+@Tag("benchmark")
+class InMemoryCacheRepositoryBenchmark {
+
+    @Test
+    void compareHitRatioWithLru() throws IOException {
+        // Подготовка
+        long cacheSizeMb = Long.getLong("benchmark.cache-size-mb", 2048);
+        String tracePath = System.getProperty("benchmark.trace");
+        List<Request> trace = tracePath != null
+                ? readTrace(Path.of(tracePath))
+                : syntheticTrace(Integer.getInteger("benchmark.requests", 200_000));
+        assertFalse(trace.isEmpty(), "Трасса пуста");
+
+        // Выполнение
+        InMemoryCacheRepository repository = new InMemoryCacheRepository(
+                24, cacheSizeMb, "./downloads", "", new SimpleMeterRegistry());
+        int tinyLfuHits = 0;
+        for (Request request : trace) {
+            if (repository.get(request.url).isPresent()) {
+                tinyLfuHits++;
+            } else {
+                repository.put(request.url, content(request));
+            }
+        }
+
+        LruCache lru = new LruCache(cacheSizeMb * 1024 * 1024);
+        int lruHits = 0;
+        for (Request request : trace) {
+            if (lru.access(request)) {
+                lruHits++;
+            }
+        }
+
+        // Проверка
+        System.out.printf("Запросов: %d, размер кэша: %d МБ%n", trace.size(), cacheSizeMb);
+        System.out.printf("W-TinyLFU: доля попаданий %.2f%%%n", 100.0 * tinyLfuHits / trace.size());
+        System.out.printf("LRU:       доля попаданий %.2f%%%n", 100.0 * lruHits / trace.size());
+    }
+
+    private static MediaContent content(Request request) {
+        return MediaContent.builder()
+                .url(request.url)
+                .type(MediaType.VIDEO)
+                .title(request.url)
+                .sizeBytes(request.sizeBytes)
+                .build();
+    }
+
+    private static List<Request> readTrace(Path path) throws IOException {
+        List<Request> trace = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length == 2) {
+                trace.add(new Request(parts[0], Long.parseLong(parts[1])));
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Генерирует трассу: 20 000 URL с частотами по закону Ципфа (s = 0.9),
+     * популярные ролики весят 2-20 МБ, каждый двадцатый URL - видео на 0.5-2 ГБ.
+     */
+    private static List<Request> syntheticTrace(int requests) {
+        Random random = new Random(42);
+        int urls = 20_000;
+        long[] sizes = new long[urls];
+        double[] cumulative = new double[urls];
+        double sum = 0;
+        for (int i = 0; i < urls; i++) {
+            sizes[i] = i % 20 == 19
+                    ? (512L + random.nextInt(1536)) * 1024 * 1024
+                    : (2L + random.nextInt(18)) * 1024 * 1024;
+            sum += 1 / Math.pow(i + 1, 0.9);
+            cumulative[i] = sum;
+        }
+
+        List<Request> trace = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            double point = random.nextDouble() * sum;
+            int index = Arrays.binarySearch(cumulative, point);
+            index = index >= 0 ? index : -index - 1;
+            trace.add(new Request("https://www.youtube.com/watch?v=video" + index, sizes[index]));
+        }
+        return trace;
+    }
+
+    private record Request(String url, long sizeBytes) {}
+
+    /**
+     * LRU с ограничением суммарного размера в байтах.
+     */
+    private static final class LruCache {
+
+        private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxBytes;
+        private long totalBytes;
+
+        LruCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        boolean access(Request request) {
+            if (entries.get(request.url) != null) {
+                return true;
+            }
+            entries.put(request.url, request.sizeBytes);
+            totalBytes += request.sizeBytes;
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                totalBytes -= iterator.next().getValue();
+                iterator.remove();
+            }
+            return false;
+        }
+    }
+}
@@ -1,21 +1,33 @@
 package top.firlian.downloader.util;
 
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import top.firlian.downloader.domain.model.MediaContent;
 import top.firlian.downloader.domain.model.MediaType;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class InMemoryCacheRepositoryTest {
 
+    @TempDir
+    Path downloadDir;
+
     private InMemoryCacheRepository cacheRepository;
 
     @BeforeEach
     void setUp() {
-        cacheRepository = new InMemoryCacheRepository(24);
+        cacheRepository = restart();
     }
 
     @Test
@@ -36,9 +48,178 @@ class InMemoryCacheRepositoryTest {
         assertEquals(content, retrieved.get());
     }
 
+    @Test
+    void testPeekDoesNotCountAsHit() throws IOException {
+        // Подготовка
+        MediaContent content = content(1, 1024);
+        cacheRepository.put(url(1), content);
+
+        // Выполнение
+        Optional<MediaContent> peeked = cacheRepository.peek(url(1));
+
+        // Проверка
+        assertEquals(Optional.of(content), peeked);
+        assertEquals(0, cacheRepository.files().get(0).getHits());
+        assertFalse(cacheRepository.peek(url(2)).isPresent());
+    }
+
     @Test
     void testGetNonExistent() {
         Optional<MediaContent> retrieved = cacheRepository.get("https://nonexistent.com");
         assertFalse(retrieved.isPresent());
     }
+
+    @Test
+    void testOneOffLargeFileDoesNotFlushPopularEntries() throws IOException {
+        // Подготовка - популярные записи занимают больше половины кэша в 1 МБ
+        for (int i = 0; i < 10; i++) {
+            cacheRepository.put(url(i), content(i, 60 * 1024));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(cacheRepository.get(url(i)).isPresent());
+            }
+        }
+
+        // Выполнение - разовая загрузка большого файла
+        MediaContent large = content(100, 900 * 1024);
+        cacheRepository.put(url(100), large);
+
+        // Проверка - большой файл не вытеснил популярные записи и удален с диска
+        for (int i = 0; i < 10; i++) {
+            assertTrue(cacheRepository.get(url(i)).isPresent(), "Вытеснена популярная запись " + i);
+        }
+        assertFalse(cacheRepository.get(url(100)).isPresent());
+        assertFalse(Files.exists(Path.of(large.getFilePath())));
+        assertFalse(Files.exists(Path.of(large.getFilePath()).getParent()));
+    }
+
+    @Test
+    void testReplacedEntryFileIsDeleted() throws IOException {
+        MediaContent first = content(1, 1024);
+        MediaContent second = content(2, 1024);
+
+        cacheRepository.put(url(1), first);
+        cacheRepository.put(url(1), first);
+        assertTrue(Files.exists(Path.of(first.getFilePath())));
+
+        cacheRepository.put(url(1), second);
+        assertFalse(Files.exists(Path.of(first.getFilePath())));
+        assertTrue(Files.exists(Path.of(second.getFilePath())));
+        assertEquals(second, cacheRepository.get(url(1)).orElseThrow());
+    }
+
+    @Test
+    void testEntriesSurviveRestart() throws IOException {
+        // Подготовка
+        MediaContent kept = content(1, 1024);
+        MediaContent removed = content(2, 1024);
+        MediaContent uploaded = content(3, 1024).toBuilder()
+                .telegramFileId("file-id")
+                .telegramFileUniqueId("unique-id")
+                .build();
+        cacheRepository.put(url(1), kept);
+        cacheRepository.put(url(2), removed);
+        cacheRepository.put(url(3), uploaded);
+        cacheRepository.remove(url(2));
+        cacheRepository.close();
+
+        // Выполнение
+        InMemoryCacheRepository restarted = restart();
+
+        // Проверка
+        assertEquals(kept, restarted.get(url(1)).orElseThrow());
+        assertFalse(restarted.get(url(2)).isPresent());
+        assertEquals(uploaded, restarted.get(url(3)).orElseThrow());
+    }
+
+    @Test
+    void testRestoredEntriesAreValidatedAgainstFiles() throws IOException {
+        // Подготовка - файлы удалены, пока приложение не работало
+        MediaContent missing = content(1, 1024);
+        MediaContent uploaded = content(2, 1024).toBuilder().telegramFileId("file-id").build();
+        cacheRepository.put(url(1), missing);
+        cacheRepository.put(url(2), uploaded);
+        cacheRepository.close();
+        Files.delete(Path.of(missing.getFilePath()));
+        Files.delete(Path.of(uploaded.getFilePath()));
+
+        // Выполнение
+        InMemoryCacheRepository restarted = restart();
+
+        // Проверка - запись без файла удалена, а запись с file_id осталась без пути
+        assertFalse(restarted.get(url(1)).isPresent());
+        MediaContent restored = restarted.get(url(2)).orElseThrow();
+        assertNull(restored.getFilePath());
+        assertEquals("file-id", restored.getTelegramFileId());
+
+        restarted.close();
+        InMemoryCacheRepository again = restart();
+        assertFalse(again.get(url(1)).isPresent());
+        assertNull(again.get(url(2)).orElseThrow().getFilePath());
+    }
+
+    @Test
+    void testExpiredEntryIsRemovedWithItsFile() throws IOException {
+        // Подготовка
+        AtomicLong nanos = new AtomicLong();
+        InMemoryCacheRepository repository = new InMemoryCacheRepository(24, 1, downloadDir.toString(), "",
+                new SimpleMeterRegistry(), nanos::get, Scheduler.disabledScheduler());
+        MediaContent content = content(1, 1024);
+        repository.put(url(1), content);
+        nanos.addAndGet(TimeUnit.HOURS.toNanos(23));
+        assertTrue(repository.get(url(1)).isPresent());
+
+        // Выполнение - срок жизни истек, чтение его не продлило
+        nanos.addAndGet(TimeUnit.HOURS.toNanos(2));
+        Optional<MediaContent> expired = repository.get(url(1));
+        repository.evictExpired();
+
+        // Проверка
+        assertFalse(expired.isPresent());
+        assertFalse(Files.exists(Path.of(content.getFilePath())));
+    }
+
+    @Test
+    void testReplacedEntryKeepsExpiryOfCacheTicker() throws IOException {
+        // Подготовка - запись с file_id Telegram, время кэша ушло вперед от системного
+        AtomicLong nanos = new AtomicLong();
+        InMemoryCacheRepository repository = new InMemoryCacheRepository(24, 1, downloadDir.toString(), "",
+                new SimpleMeterRegistry(), nanos::get, Scheduler.disabledScheduler());
+        repository.put(url(1), content(1, 1024).toBuilder().telegramFileId("file-1").build());
+        nanos.addAndGet(TimeUnit.HOURS.toNanos(20));
+
+        // Выполнение - замена записи записью без файла не продлевает срок
+        repository.evictFile(url(1));
+        Optional<Duration> expiresIn = repository.expiresIn(url(1));
+        nanos.addAndGet(TimeUnit.HOURS.toNanos(5));
+
+        // Проверка
+        assertEquals(Optional.of(Duration.ofHours(4)), expiresIn);
+        assertFalse(repository.get(url(1)).isPresent());
+    }
+
+    private InMemoryCacheRepository restart() {
+        return new InMemoryCacheRepository(24, 1, downloadDir.toString(),
+                downloadDir.resolve(".cache-index").toString(), new SimpleMeterRegistry());
+    }
+
+    private static String url(int i) {
+        return "https://example.com/video" + i;
+    }
+
+    /**
+     * Создает контент с файлом заданного размера в собственной директории задачи.
+     */
+    private MediaContent content(int i, int sizeBytes) throws IOException {
+        Path file = Files.createDirectories(downloadDir.resolve("task-" + i)).resolve("video.mp4");
+        Files.write(file, new byte[sizeBytes]);
+        return MediaContent.builder()
+                .url(url(i))
+                .type(MediaType.VIDEO)
+                .title("Video " + i)
+                .sizeBytes(sizeBytes)
+                .filePath(file.toString())
+                .build();
+    }
 }
@@ -0,0 +1,44 @@
+package top.firlian.downloader.util;
+
+import org.junit.jupiter.api.Test;
+import top.firlian.downloader.domain.error.ContentUnavailableException;
+import top.firlian.downloader.domain.error.ContentUnavailableException.Reason;
+import top.firlian.downloader.domain.model.MediaItem;
+import top.firlian.downloader.domain.model.MediaMetadata;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryMetadataRepositoryTest {
+
+    @Test
+    void testPutAndGetMetadata() {
+        InMemoryMetadataRepository repository = new InMemoryMetadataRepository(30, 100, false, 10, 1440, 360, 60, 15);
+        MediaMetadata metadata = MediaMetadata.builder()
+                .url("https://www.youtube.com/playlist?list=PL1")
+                .type(MediaType.VIDEO)
+                .title("Playlist")
+                .items(List.of(MediaItem.builder().index(0).title("First").build()))
+                .build();
+
+        repository.put("youtube:playlist:PL1", metadata);
+
+        assertEquals(metadata, repository.get("youtube:playlist:PL1").orElseThrow());
+        assertTrue(repository.get("youtube:playlist:PL2").isEmpty());
+    }
+
+    @Test
+    void testFailureTtlDependsOnReason() {
+        // Приватный контент не кэшируется, удаленный - на сутки
+        InMemoryMetadataRepository repository = new InMemoryMetadataRepository(30, 100, false, 0, 1440, 360, 60, 15);
+        ContentUnavailableException removed = new ContentUnavailableException("Removed", Reason.REMOVED, null);
+
+        repository.putFailure("youtube:a", new ContentUnavailableException("Private", Reason.PRIVATE, null));
+        repository.putFailure("youtube:b", removed);
+
+        assertTrue(repository.getFailure("youtube:a").isEmpty());
+        assertSame(removed, repository.getFailure("youtube:b").orElseThrow());
+    }
+}
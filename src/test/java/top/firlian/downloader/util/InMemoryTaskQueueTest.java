@@ -16,7 +16,7 @@ class InMemoryTaskQueueTest {
 
     @BeforeEach
     void setUp() {
-        taskQueue = new InMemoryTaskQueue();
+        taskQueue = new InMemoryTaskQueue(60, 1000);
     }
 
     @Test
@@ -86,4 +86,77 @@ class InMemoryTaskQueueTest {
         assertEquals(TaskStatus.FAILED, retrieved.get().getStatus());
         assertEquals(errorMsg, retrieved.get().getErrorMessage());
     }
+
+    @Test
+    void testPollTaskByPriorityAndOrder() {
+        DownloadTask first = task("https://example.com/1", Provider.YOUTUBE, DownloadTask.PRIORITY_NORMAL);
+        DownloadTask second = task("https://example.com/2", Provider.VK, DownloadTask.PRIORITY_NORMAL);
+        DownloadTask urgent = task("https://example.com/3", Provider.VK, DownloadTask.PRIORITY_HIGH);
+
+        taskQueue.addTask(first);
+        taskQueue.addTask(second);
+        taskQueue.addTask(urgent);
+
+        assertEquals("https://example.com/3", taskQueue.pollTask(provider -> true).orElseThrow().getUrl());
+        assertEquals("https://example.com/1", taskQueue.pollTask(provider -> true).orElseThrow().getUrl());
+        assertEquals("https://example.com/2", taskQueue.pollTask(provider -> true).orElseThrow().getUrl());
+        assertTrue(taskQueue.pollTask(provider -> true).isEmpty());
+    }
+
+    @Test
+    void testPollTaskSkipsUnavailableProviders() {
+        taskQueue.addTask(task("https://example.com/yt", Provider.YOUTUBE, DownloadTask.PRIORITY_NORMAL));
+        taskQueue.addTask(task("https://example.com/vk", Provider.VK, DownloadTask.PRIORITY_NORMAL));
+
+        Optional<DownloadTask> polled = taskQueue.pollTask(provider -> provider == Provider.VK);
+
+        assertTrue(polled.isPresent());
+        assertEquals("https://example.com/vk", polled.get().getUrl());
+        assertEquals(TaskStatus.DOWNLOADING, polled.get().getStatus());
+        assertNotNull(polled.get().getCreatedAt());
+        assertNotNull(polled.get().getStartedAt());
+        assertEquals(1, taskQueue.pendingCount(Provider.YOUTUBE));
+        assertEquals(0, taskQueue.pendingCount(Provider.VK));
+    }
+
+    @Test
+    void testReAddAfterCompletion() {
+        String url = "https://example.com/video";
+        DownloadTask task = task(url, Provider.YOUTUBE, DownloadTask.PRIORITY_NORMAL);
+
+        taskQueue.addTask(task);
+        taskQueue.pollTask(provider -> true);
+        taskQueue.completeTask(url);
+
+        // Завершенная задача не мешает повторной загрузке того же URL
+        assertTrue(taskQueue.addTask(task));
+        assertEquals(TaskStatus.PENDING, taskQueue.getTask(url).orElseThrow().getStatus());
+    }
+
+    @Test
+    void testFinishedTasksAreEvicted() {
+        InMemoryTaskQueue shortLived = new InMemoryTaskQueue(0, 2);
+        for (int i = 0; i < 3; i++) {
+            String url = "https://example.com/" + i;
+            shortLived.addTask(task(url, Provider.YOUTUBE, DownloadTask.PRIORITY_NORMAL));
+            shortLived.completeTask(url);
+        }
+
+        // Ограничение по количеству вытесняет самую старую задачу
+        assertTrue(shortLived.getTask("https://example.com/0").isEmpty());
+        assertTrue(shortLived.getTask("https://example.com/2").isPresent());
+
+        // Ограничение по времени удаляет все завершенные задачи
+        shortLived.evictFinished();
+        assertTrue(shortLived.getTask("https://example.com/2").isEmpty());
+    }
+
+    private DownloadTask task(String url, Provider provider, int priority) {
+        return DownloadTask.builder()
+                .url(url)
+                .provider(provider)
+                .chatId(12345L)
+                .priority(priority)
+                .build();
+    }
 }
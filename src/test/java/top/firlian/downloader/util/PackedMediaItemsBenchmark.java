@@ -0,0 +1,79 @@
+package top.firlian.downloader.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import top.firlian.downloader.domain.model.MediaItem;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Бенчмарк занимаемой кучи списками элементов плейлистов: обычный список
+ * объектов против упакованного представления в куче и вне ее.
+ * Запуск: {@code ./gradlew benchmark -Dbenchmark.lists=50}.
+ * Память считается по разнице занятой кучи до и после построения
+ * нескольких списков по 10 тысяч элементов.
+ */
+@Tag("benchmark")
+class PackedMediaItemsBenchmark {
+
+    private static final int ITEMS = 10_000;
+
+    @Test
+    void compareHeapPerTenThousandItems() {
+        // Подготовка
+        int lists = Integer.getInteger("benchmark.lists", 50);
+
+        // Выполнение
+        long objects = heapPerList(lists, seed -> items(seed));
+        long packed = heapPerList(lists, seed -> PackedMediaItems.pack(items(seed), false));
+        long offHeap = heapPerList(lists, seed -> PackedMediaItems.pack(items(seed), true));
+
+        // Проверка
+        System.out.printf("Куча на %d элементов: объекты %d КБ, упаковано %d КБ, вне кучи %d КБ%n",
+                ITEMS, objects / 1024, packed / 1024, offHeap / 1024);
+        assertTrue(packed < objects / 2);
+        assertTrue(offHeap < packed);
+        assertEquals(items(0), PackedMediaItems.pack(items(0), true));
+    }
+
+    private static long heapPerList(int lists, IntFunction<List<MediaItem>> factory) {
+        List<List<MediaItem>> retained = new ArrayList<>(lists);
+        long before = usedHeap();
+        for (int i = 0; i < lists; i++) {
+            retained.add(factory.apply(i));
+        }
+        long after = usedHeap();
+        assertEquals(lists, retained.size());
+        return (after - before) / lists;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Плейлист YouTube: одинаковый префикс ссылок, названия на кириллице и латинице.
+     */
+    private static List<MediaItem> items(int seed) {
+        List<MediaItem> items = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            items.add(MediaItem.builder()
+                    .index(i)
+                    .url("https://www.youtube.com/watch?v=" + String.format("%011d", seed * ITEMS + i))
+                    .type(MediaType.VIDEO)
+                    .title("Выпуск " + i + " - Podcast episode about something " + seed)
+                    .sizeBytes(50_000_000L + i * 1_000L)
+                    .build());
+        }
+        return items;
+    }
+}
@@ -0,0 +1,54 @@
+package top.firlian.downloader.util;
+
+import org.junit.jupiter.api.Test;
+import top.firlian.downloader.domain.model.MediaItem;
+import top.firlian.downloader.domain.model.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedMediaItemsTest {
+
+    @Test
+    void testItemsSurvivePacking() {
+        // Подготовка - незаданные поля, отрицательный размер, кириллица и эмодзи
+        List<MediaItem> items = List.of(
+                MediaItem.builder().index(0).url("https://www.instagram.com/p/abc/?img_index=1")
+                        .type(MediaType.PHOTO).title("Закат 🌅").sizeBytes(123_456).build(),
+                MediaItem.builder().index(1).url("https://www.instagram.com/p/abc/?img_index=2")
+                        .type(MediaType.VIDEO).sizeBytes(-1).build(),
+                MediaItem.builder().index(300).title("Без ссылки").build());
+
+        // Выполнение
+        PackedMediaItems heap = PackedMediaItems.pack(items, false);
+        PackedMediaItems offHeap = PackedMediaItems.pack(items, true);
+        PackedMediaItems decoded = PackedMediaItems.decode(heap.encoded());
+
+        // Проверка
+        assertEquals(items, heap);
+        assertEquals(items, offHeap);
+        assertEquals(items, decoded);
+        assertEquals(items.get(2), heap.get(2));
+        assertSame(heap, PackedMediaItems.pack(heap, true));
+    }
+
+    @Test
+    void testPackedFormIsSmallerThanText() {
+        // Подготовка
+        List<MediaItem> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(MediaItem.builder().index(i).url("https://www.youtube.com/watch?v=video" + i)
+                    .type(MediaType.VIDEO).title("Видео " + i).sizeBytes(10_000_000L + i).build());
+        }
+
+        // Выполнение
+        PackedMediaItems packed = PackedMediaItems.pack(items, false);
+
+        // Проверка - общий префикс URL хранится один раз
+        int urlChars = items.stream().mapToInt(item -> item.getUrl().length()).sum();
+        assertTrue(packed.encodedSize() < urlChars, "Размер: " + packed.encodedSize());
+        assertEquals(items, packed);
+    }
+}
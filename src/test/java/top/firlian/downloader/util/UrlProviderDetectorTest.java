@@ -1,8 +1,15 @@
 package top.firlian.downloader.util;
 
 import org.junit.jupiter.api.Test;
+import top.firlian.downloader.domain.model.MediaKey;
 import top.firlian.downloader.domain.model.Provider;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class UrlProviderDetectorTest {
@@ -15,6 +22,7 @@ class UrlProviderDetectorTest {
         assertEquals(Provider.YOUTUBE, detector.detectProvider("https://youtu.be/dQw4w9WgXcQ"));
         assertEquals(Provider.YOUTUBE, detector.detectProvider("https://www.youtube.com/shorts/abc123"));
         assertEquals(Provider.YOUTUBE, detector.detectProvider("http://youtube.com/watch?v=test"));
+        assertEquals(Provider.YOUTUBE, detector.detectProvider("https://m.youtube.com/shorts/abc123"));
     }
 
     @Test
@@ -22,6 +30,8 @@ class UrlProviderDetectorTest {
         assertEquals(Provider.VK, detector.detectProvider("https://vk.com/wall-12345_67890"));
         assertEquals(Provider.VK, detector.detectProvider("https://www.vk.com/video12345_67890"));
         assertEquals(Provider.VK, detector.detectProvider("https://vk.ru/wall123"));
+        assertEquals(Provider.VK, detector.detectProvider("https://m.vk.com/video-1_2"));
+        assertEquals(Provider.VK, detector.detectProvider("https://vkvideo.ru/video-1_2"));
     }
 
     @Test
@@ -37,5 +47,40 @@ class UrlProviderDetectorTest {
         assertEquals(Provider.UNKNOWN, detector.detectProvider("not a url"));
         assertEquals(Provider.UNKNOWN, detector.detectProvider(""));
         assertEquals(Provider.UNKNOWN, detector.detectProvider(null));
+        assertEquals(Provider.UNKNOWN, detector.detectProvider("https://notyoutube.com/watch?v=test"));
+    }
+
+    @Test
+    void testUrlVariantsCollapseToOneKey() throws IOException {
+        String corpus;
+        try (InputStream in = getClass().getResourceAsStream("/media-key-corpus.txt")) {
+            assertNotNull(in);
+            corpus = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        String expected = null;
+        Set<String> groups = new HashSet<>();
+        int checked = 0;
+        for (String line : corpus.split("\n")) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("= ")) {
+                expected = line.substring(2).trim();
+                assertTrue(groups.add(expected), "Повторяющаяся группа: " + expected);
+                continue;
+            }
+            assertEquals(expected, detector.extractKey(line).asString(), line);
+            checked++;
+        }
+        assertTrue(checked > 50);
+    }
+
+    @Test
+    void testItemKeyIncludesIndex() {
+        MediaKey key = detector.extractKey("https://www.youtube.com/playlist?list=PL123");
+
+        assertEquals("youtube:playlist:PL123#2", key.forItem(2).asString());
+        assertEquals("youtube:playlist:PL123", key.forItem(null).asString());
     }
 }
@@ -6,9 +6,15 @@ This service provides an HTTP API for executing yt-dlp commands from a remote ap
 
 import os
 import json
+import shutil
 import subprocess
 import tempfile
-from flask import Flask, request, jsonify, send_file
+import threading
+import time
+import uuid
+from collections import deque
+from concurrent.futures import ThreadPoolExecutor
+from flask import Flask, Response, request, jsonify, send_file, stream_with_context
 from pathlib import Path
 
 app = Flask(__name__)
@@ -17,6 +23,23 @@ app = Flask(__name__)
 DOWNLOAD_DIR = os.environ.get('DOWNLOAD_DIR', '/downloads')
 Path(DOWNLOAD_DIR).mkdir(parents=True, exist_ok=True)
 
+# Download jobs: at most JOB_WORKERS run at once, at most JOB_QUEUE_SIZE wait
+JOB_WORKERS = int(os.environ.get('JOB_WORKERS', '4'))
+JOB_QUEUE_SIZE = int(os.environ.get('JOB_QUEUE_SIZE', '100'))
+JOB_TIMEOUT_SECONDS = int(os.environ.get('JOB_TIMEOUT_SECONDS', '1800'))
+JOB_RETENTION_SECONDS = int(os.environ.get('JOB_RETENTION_SECONDS', '3600'))
+SSE_HEARTBEAT_SECONDS = 15
+
+PROGRESS_PREFIX = 'PROGRESS '
+
+
+class DownloadError(Exception):
+    """Download failed; status is the HTTP status for the synchronous endpoint"""
+
+    def __init__(self, message, status=500):
+        super().__init__(message)
+        self.status = status
+
 
 @app.route('/health', methods=['GET'])
 def health():
@@ -57,7 +80,8 @@ def get_metadata():
     try:
         # Add --cookies-from-browser to try to use browser cookies for authenticated content
         result = subprocess.run(
-            ['yt-dlp', '--dump-json', '--no-warnings', '--no-check-certificates', url],
+            # Playlists are only enumerated and returned as one JSON object with entries
+            ['yt-dlp', '--dump-single-json', '--flat-playlist', '--no-warnings', '--no-check-certificates', url],
             capture_output=True,
             text=True,
             check=True,
@@ -80,91 +104,396 @@ def get_metadata():
         return jsonify({'error': 'Invalid JSON response from yt-dlp'}), 500
 
 
-@app.route('/download', methods=['POST'])
-def download():
+def run_download(url, item_index=None, on_progress=None, timeout=300):
     """
-    Download media from URL
-    Request body: { 
-        "url": "https://...",
-        "itemIndex": 0 (optional)
-    }
-    Returns: { "filePath": "/downloads/...", "fileName": "...", "sizeBytes": 123 }
+    Download media with yt-dlp into a fresh task directory.
+    on_progress(downloaded_bytes, total_bytes) is called for each progress line.
+    Returns the /download response dict, raises DownloadError on failure.
     """
-    data = request.get_json()
-    if not data or 'url' not in data:
-        return jsonify({'error': 'URL is required'}), 400
-    
-    url = data['url']
-    item_index = data.get('itemIndex', 0)
-    
+    # Each download writes into its own task directory so concurrent
+    # downloads never pick up each other's files
+    task_dir = tempfile.mkdtemp(prefix='task-', dir=DOWNLOAD_DIR)
     try:
         # Build output template
-        output_template = os.path.join(DOWNLOAD_DIR, '%(title)s-%(id)s.%(ext)s')
-        
-        # Build command
+        output_template = os.path.join(task_dir, '%(title)s-%(id)s.%(ext)s')
+
+        # Build command; after all post-processing yt-dlp prints the final path
+        # and basic info of the file as one JSON line. --print implies --quiet,
+        # so progress is requested explicitly, one line per update
         cmd = [
             'yt-dlp',
             '--no-warnings',
-            '--no-playlist',
+            '--print', 'after_move:%(.{filepath,title,ext,vcodec,acodec})j',
+            '--progress', '--newline',
+            '--progress-template',
+            'download:' + PROGRESS_PREFIX
+            + '%(progress.downloaded_bytes)s %(progress.total_bytes)s %(progress.total_bytes_estimate)s',
             '-o', output_template,
             url
         ]
-        
-        # Add playlist item selection if needed
-        if item_index > 0:
-            cmd.extend(['--playlist-items', str(item_index + 1)])
-        
-        # Execute download
-        result = subprocess.run(
-            cmd,
-            capture_output=True,
-            text=True,
-            check=True,
-            timeout=300  # 5 minutes timeout
-        )
-        
-        # Find the downloaded file
-        # Parse output to find the file path
-        output_lines = result.stdout.split('\n')
-        downloaded_file = None
-        
-        for line in output_lines:
-            if 'Destination:' in line or 'has already been downloaded' in line:
-                parts = line.split(':', 1)
-                if len(parts) > 1:
-                    downloaded_file = parts[1].strip()
-                    break
-        
-        # If not found in output, find the most recent file
+
+        # Select the playlist item; /metadata treats watch?v=X&list=Y as a playlist,
+        # so --no-playlist must not be combined with the selection or every item
+        # would resolve to video X
+        if item_index is not None:
+            cmd[-1:-1] = ['--playlist-items', str(item_index + 1)]
+        else:
+            cmd[-1:-1] = ['--no-playlist']
+
+        # Execute download, reading progress as it goes
+        process = subprocess.Popen(cmd, stdout=subprocess.PIPE, stderr=subprocess.STDOUT,
+                                   text=True, bufsize=1)
+        timed_out = threading.Event()
+
+        def kill():
+            timed_out.set()
+            process.kill()
+
+        timer = threading.Timer(timeout, kill)
+        timer.start()
+        info = {}
+        output_tail = deque(maxlen=20)
+        try:
+            for line in process.stdout:
+                line = line.strip()
+                if not line:
+                    continue
+                if line.startswith(PROGRESS_PREFIX):
+                    if on_progress:
+                        on_progress(*parse_progress(line[len(PROGRESS_PREFIX):]))
+                    continue
+                if line.startswith('{'):
+                    try:
+                        info = json.loads(line)
+                        continue
+                    except json.JSONDecodeError:
+                        pass
+                output_tail.append(line)
+            return_code = process.wait()
+        finally:
+            timer.cancel()
+
+        if timed_out.is_set():
+            print(f"Timeout downloading {url}")
+            raise DownloadError(f'Download timeout (max {timeout // 60} minutes)', 408)
+        if return_code != 0:
+            error_msg = '\n'.join(output_tail) or f'exit code {return_code}'
+            print(f"Download failed for {url}: {error_msg}")
+            raise DownloadError(f'Download failed: {error_msg}')
+
+        downloaded_file = info.get('filepath')
+
+        # If not reported, the task directory only contains this download
         if not downloaded_file:
-            files = list(Path(DOWNLOAD_DIR).glob('*'))
-            files = [f for f in files if f.is_file() and not f.name.startswith('.')]
+            files = [f for f in Path(task_dir).iterdir()
+                     if f.is_file() and not f.name.startswith('.') and not f.name.endswith('.part')]
             if files:
-                downloaded_file = str(max(files, key=lambda f: f.stat().st_mtime))
-        
+                downloaded_file = str(files[0])
+
         if not downloaded_file:
-            return jsonify({'error': 'Could not determine downloaded file path'}), 500
-        
+            raise DownloadError('Could not determine downloaded file path')
+
         # Get file info
         file_path = Path(downloaded_file)
         if not file_path.exists():
-            return jsonify({'error': f'Downloaded file not found: {downloaded_file}'}), 500
-        
-        return jsonify({
+            raise DownloadError(f'Downloaded file not found: {downloaded_file}')
+
+        return {
             'filePath': str(file_path),
             'fileName': file_path.name,
-            'sizeBytes': file_path.stat().st_size
-        })
-        
-    except subprocess.TimeoutExpired:
-        print(f"Timeout downloading {url}")
-        return jsonify({'error': 'Download timeout (max 5 minutes)'}), 408
-    except subprocess.CalledProcessError as e:
-        error_msg = e.stderr if e.stderr else str(e)
-        print(f"Download failed for {url}: {error_msg}")
-        return jsonify({'error': f'Download failed: {error_msg}'}), 500
+            'sizeBytes': file_path.stat().st_size,
+            'title': info.get('title'),
+            'ext': info.get('ext') or file_path.suffix.lstrip('.') or None,
+            'vcodec': info.get('vcodec'),
+            'acodec': info.get('acodec')
+        }
+    except BaseException:
+        shutil.rmtree(task_dir, ignore_errors=True)
+        raise
+
+
+def parse_progress(text):
+    """Parse 'downloaded total estimate' progress values; yt-dlp prints NA when unknown"""
+    def number(value):
+        try:
+            return int(float(value))
+        except ValueError:
+            return None
+
+    parts = [number(part) for part in text.split()] + [None, None, None]
+    downloaded, total, estimate = parts[:3]
+    return downloaded, total if total is not None else estimate
+
+
+@app.route('/download', methods=['POST'])
+def download():
+    """
+    Download media from URL, holding the request open until it finishes.
+    Prefer POST /jobs for long downloads.
+    Request body: { 
+        "url": "https://...",
+        "itemIndex": 0 (optional)
+    }
+    Returns: { "filePath": "/downloads/...", "fileName": "...", "sizeBytes": 123,
+               "title": "...", "ext": "mp4", "vcodec": "...", "acodec": "..." }
+    """
+    data = request.get_json()
+    if not data or 'url' not in data:
+        return jsonify({'error': 'URL is required'}), 400
+
+    try:
+        return jsonify(run_download(data['url'], data.get('itemIndex')))
+    except DownloadError as e:
+        return jsonify({'error': str(e)}), e.status
+
+
+class Job:
+    """Download job; seq grows with every state change and is the SSE event id"""
+
+    def __init__(self, url, item_index):
+        self.id = uuid.uuid4().hex
+        self.url = url
+        self.item_index = item_index
+        self.status = 'queued'
+        self.downloaded_bytes = None
+        self.total_bytes = None
+        self.result = None
+        self.error = None
+        self.seq = 0
+        self.finished_at = None
+        # Set once the file was streamed via /jobs/<id>/file; otherwise the client reads it
+        # from the shared volume and its cache removal listener owns the file
+        self.streamed = False
+
+    @property
+    def finished(self):
+        return self.status in ('completed', 'failed')
+
+    def to_dict(self):
+        return {
+            'id': self.id,
+            'status': self.status,
+            'downloadedBytes': self.downloaded_bytes,
+            'totalBytes': self.total_bytes,
+            'result': self.result,
+            'error': self.error,
+            'seq': self.seq
+        }
+
+
+class JobManager:
+    """Bounded executor for download jobs with change notifications for SSE streams"""
+
+    def __init__(self, workers, queue_size, retention_seconds, timeout_seconds, runner=run_download):
+        self.executor = ThreadPoolExecutor(max_workers=workers, thread_name_prefix='job')
+        self.capacity = workers + queue_size
+        self.retention_seconds = retention_seconds
+        self.timeout_seconds = timeout_seconds
+        self.runner = runner
+        self.jobs = {}
+        self.changed = threading.Condition()
+
+    def submit(self, url, item_index):
+        """Return an active job for the same media or start a new one; None if the queue is full"""
+        with self.changed:
+            expired = self._expire()
+            existing = next((job for job in self.jobs.values()
+                             if not job.finished and job.url == url and job.item_index == item_index), None)
+            active = sum(1 for job in self.jobs.values() if not job.finished)
+            job = None
+            if existing is None and active < self.capacity:
+                job = Job(url, item_index)
+                self.jobs[job.id] = job
+        remove_job_files(expired)
+        if existing is not None:
+            return existing
+        if job is not None:
+            self.executor.submit(self._run, job)
+        return job
+
+    def get(self, job_id):
+        with self.changed:
+            return self.jobs.get(job_id)
+
+    def mark_streamed(self, job_id):
+        """Remember that the job file was streamed, so it is deleted when the job expires"""
+        with self.changed:
+            job = self.jobs.get(job_id)
+            if job is not None:
+                job.streamed = True
+
+    def remove(self, job_id):
+        """Forget a finished job and delete its files; returns False for unknown or active jobs"""
+        with self.changed:
+            job = self.jobs.get(job_id)
+            if job is None or not job.finished:
+                return False
+            del self.jobs[job_id]
+        remove_job_files([job])
+        return True
+
+    def snapshot(self, job_id):
+        with self.changed:
+            job = self.jobs.get(job_id)
+            return job.to_dict() if job else None
+
+    def wait_for_change(self, job_id, seq, timeout):
+        """Wait until the job state is newer than seq; returns the state or None on timeout"""
+        deadline = time.monotonic() + timeout
+        with self.changed:
+            while True:
+                job = self.jobs.get(job_id)
+                if job is None or job.seq > seq:
+                    return job.to_dict() if job else None
+                remaining = deadline - time.monotonic()
+                if remaining <= 0:
+                    return None
+                self.changed.wait(remaining)
+
+    def _update(self, job, **fields):
+        with self.changed:
+            for name, value in fields.items():
+                setattr(job, name, value)
+            job.seq += 1
+            if job.finished:
+                job.finished_at = time.monotonic()
+            self.changed.notify_all()
+
+    def _run(self, job):
+        self._update(job, status='running')
+        try:
+            result = self.runner(job.url, job.item_index,
+                                 on_progress=lambda done, total: self._update(
+                                     job, downloaded_bytes=done, total_bytes=total),
+                                 timeout=self.timeout_seconds)
+            self._update(job, status='completed', result=result,
+                         downloaded_bytes=result['sizeBytes'], total_bytes=result['sizeBytes'])
+        except DownloadError as e:
+            self._update(job, status='failed', error=str(e))
+        except Exception as e:
+            print(f"Job {job.id} failed for {job.url}: {e}")
+            self._update(job, status='failed', error=f'Download failed: {e}')
+
+    def _expire(self):
+        """
+        Forget finished jobs past retention; returns the streamed ones so their files can be
+        removed outside the lock. Files of the other jobs stay on the shared volume for the client.
+        """
+        now = time.monotonic()
+        expired = [job for job in self.jobs.values()
+                   if job.finished and now - job.finished_at > self.retention_seconds]
+        for job in expired:
+            del self.jobs[job.id]
+        return [job for job in expired if job.streamed]
+
+
+def remove_job_files(jobs_to_remove):
+    """Delete the task directories of finished jobs that produced a file"""
+    for job in jobs_to_remove:
+        if job.result:
+            remove_task_dir(job.result['filePath'])
+
+
+def remove_task_dir(file_path):
+    """Delete the task directory of a downloaded file"""
+    task_dir = Path(file_path).parent
+    if task_dir.name.startswith('task-') and task_dir.parent == Path(DOWNLOAD_DIR):
+        shutil.rmtree(task_dir, ignore_errors=True)
+
+
+jobs = JobManager(JOB_WORKERS, JOB_QUEUE_SIZE, JOB_RETENTION_SECONDS, JOB_TIMEOUT_SECONDS)
+
+
+@app.route('/jobs', methods=['POST'])
+def create_job():
+    """
+    Start a download job and return immediately.
+    Request body: { "url": "https://...", "itemIndex": 0 (optional) }
+    Returns 202: the job state (see GET /jobs/<id>); 429 if the job queue is full
+    """
+    data = request.get_json()
+    if not data or 'url' not in data:
+        return jsonify({'error': 'URL is required'}), 400
+
+    job = jobs.submit(data['url'], data.get('itemIndex'))
+    if job is None:
+        return jsonify({'error': 'Job queue is full'}), 429
+    return jsonify(jobs.snapshot(job.id)), 202
+
+
+@app.route('/jobs/<job_id>', methods=['GET'])
+def get_job(job_id):
+    """
+    Job state: { "id": "...", "status": "queued|running|completed|failed",
+                 "downloadedBytes": 1, "totalBytes": 2, "result": {...}, "error": "...", "seq": 3 }
+    result has the /download response format
+    """
+    state = jobs.snapshot(job_id)
+    if state is None:
+        return jsonify({'error': 'Job not found'}), 404
+    return jsonify(state)
+
+
+@app.route('/jobs/<job_id>', methods=['DELETE'])
+def delete_job(job_id):
+    """Forget a finished job and delete its file once the client has fetched it"""
+    if jobs.get(job_id) is None:
+        return jsonify({'error': 'Job not found'}), 404
+    if not jobs.remove(job_id):
+        return jsonify({'error': 'Job is still running'}), 409
+    return '', 204
+
+
+@app.route('/jobs/<job_id>/file', methods=['GET'])
+def job_file(job_id):
+    """
+    Stream the downloaded file of a completed job, so the client does not need
+    a shared volume. Supports Range requests to resume an interrupted transfer.
+    """
+    job = jobs.get(job_id)
+    if job is None:
+        return jsonify({'error': 'Job not found'}), 404
+    if job.status != 'completed':
+        return jsonify({'error': f'Job is {job.status}'}), 409
+    file_path = Path(job.result['filePath'])
+    if not file_path.exists():
+        return jsonify({'error': 'File not found'}), 404
+    jobs.mark_streamed(job_id)
+    return send_file(file_path, mimetype='application/octet-stream', conditional=True, etag=True)
+
+
+@app.route('/jobs/<job_id>/events', methods=['GET'])
+def job_events(job_id):
+    """
+    Server-sent events with the job state after every change, ending after completed or failed.
+    A reconnecting client sends Last-Event-ID and receives only newer states.
+    """
+    if jobs.get(job_id) is None:
+        return jsonify({'error': 'Job not found'}), 404
+    try:
+        last_seq = int(request.headers.get('Last-Event-ID', '-1'))
+    except ValueError:
+        last_seq = -1
+
+    def stream():
+        seq = last_seq
+        while True:
+            state = jobs.wait_for_change(job_id, seq, SSE_HEARTBEAT_SECONDS)
+            if state is None:
+                if jobs.get(job_id) is None:
+                    return
+                # Heartbeat keeps proxies from closing an idle stream
+                yield ': heartbeat\n\n'
+                continue
+            seq = state['seq']
+            yield f"id: {seq}\nevent: {state['status']}\ndata: {json.dumps(state)}\n\n"
+            if state['status'] in ('completed', 'failed'):
+                return
+
+    return Response(stream_with_context(stream()), mimetype='text/event-stream',
+                    headers={'Cache-Control': 'no-cache', 'X-Accel-Buffering': 'no'})
 
 
 if __name__ == '__main__':
     # Run on all interfaces, port 8090
-    app.run(host='0.0.0.0', port=8090, debug=False)
+    app.run(host='0.0.0.0', port=8090, debug=False, threaded=True)
@@ -0,0 +1,137 @@
+#!/usr/bin/env python3
+"""
+Tests for the yt-dlp HTTP service wrapper.
+yt-dlp itself is replaced with a fake process, so the tests only check
+the commands the service builds and how it handles their output.
+Run with: python3 -m unittest test_app.py
+"""
+
+import io
+import json
+import os
+import shutil
+import tempfile
+import unittest
+from pathlib import Path
+from unittest import mock
+
+os.environ.setdefault('DOWNLOAD_DIR', tempfile.mkdtemp(prefix='ytdlp-service-test-'))
+
+import app  # noqa: E402
+
+
+class FakeProcess:
+    """Pretends to be yt-dlp: writes the output file and prints its JSON info line"""
+
+    def __init__(self, cmd, **kwargs):
+        self.cmd = cmd
+        template = cmd[cmd.index('-o') + 1]
+        file_path = template.replace('%(title)s-%(id)s.%(ext)s', 'video-X.mp4')
+        Path(file_path).write_bytes(b'video')
+        info = {'filepath': file_path, 'title': 'video', 'ext': 'mp4'}
+        self.stdout = io.StringIO(json.dumps(info) + '\n')
+
+    def wait(self):
+        return 0
+
+    def kill(self):
+        pass
+
+
+class RunDownloadTest(unittest.TestCase):
+
+    def setUp(self):
+        self.commands = []
+
+        def popen(cmd, **kwargs):
+            self.commands.append(cmd)
+            return FakeProcess(cmd, **kwargs)
+
+        patcher = mock.patch('app.subprocess.Popen', side_effect=popen)
+        patcher.start()
+        self.addCleanup(patcher.stop)
+
+    def download(self, url, item_index=None):
+        result = app.run_download(url, item_index)
+        self.addCleanup(shutil.rmtree, Path(result['filePath']).parent, True)
+        return result
+
+    def test_selects_playlist_item_of_watch_url_with_list(self):
+        # watch?v=X&list=Y is listed as a playlist by /metadata, so the item
+        # must be taken from the playlist instead of downloading video X
+        url = 'https://www.youtube.com/watch?v=X&list=Y'
+
+        self.download(url, item_index=2)
+
+        cmd = self.commands[0]
+        self.assertNotIn('--no-playlist', cmd)
+        self.assertEqual('3', cmd[cmd.index('--playlist-items') + 1])
+        self.assertEqual(url, cmd[-1])
+
+    def test_downloads_single_video_without_item_index(self):
+        url = 'https://www.youtube.com/watch?v=X&list=Y'
+
+        result = self.download(url)
+
+        cmd = self.commands[0]
+        self.assertIn('--no-playlist', cmd)
+        self.assertNotIn('--playlist-items', cmd)
+        self.assertEqual('video-X.mp4', result['fileName'])
+
+
+class JobManagerTest(unittest.TestCase):
+
+    @staticmethod
+    def runner(url, item_index, on_progress=None, timeout=None):
+        task_dir = Path(tempfile.mkdtemp(prefix='task-', dir=app.DOWNLOAD_DIR))
+        file_path = task_dir / 'video.mp4'
+        file_path.write_bytes(b'video')
+        return {'filePath': str(file_path), 'fileName': file_path.name, 'sizeBytes': 5}
+
+    def setUp(self):
+        self.manager = app.JobManager(workers=1, queue_size=1, retention_seconds=0, timeout_seconds=60,
+                                      runner=self.runner)
+        self.addCleanup(self.manager.executor.shutdown)
+
+    def complete(self, url):
+        job = self.manager.submit(url, None)
+        while not self.manager.get(job.id).finished:
+            self.manager.wait_for_change(job.id, self.manager.snapshot(job.id)['seq'], timeout=5)
+        task_dir = Path(self.manager.snapshot(job.id)['result']['filePath']).parent
+        self.assertTrue(task_dir.exists())
+        return job, task_dir
+
+    def expire(self):
+        # Expired jobs are dropped when the next job is submitted
+        other = self.manager.submit('https://www.youtube.com/watch?v=Z', None)
+        self.manager.executor.shutdown(wait=True)
+        self.addCleanup(self.manager.remove, other.id)
+
+    def test_removes_task_dir_of_expired_streamed_job(self):
+        job, task_dir = self.complete('https://www.youtube.com/watch?v=X')
+        self.manager.mark_streamed(job.id)
+
+        self.expire()
+
+        self.assertIsNone(self.manager.get(job.id))
+        self.assertFalse(task_dir.exists())
+
+    def test_keeps_task_dir_of_expired_job_read_from_shared_volume(self):
+        job, task_dir = self.complete('https://www.youtube.com/watch?v=X')
+        self.addCleanup(shutil.rmtree, task_dir, True)
+
+        self.expire()
+
+        # The client's cache still points at the file and removes it itself
+        self.assertIsNone(self.manager.get(job.id))
+        self.assertTrue(task_dir.exists())
+
+    def test_removes_task_dir_of_released_job(self):
+        job, task_dir = self.complete('https://www.youtube.com/watch?v=X')
+
+        self.assertTrue(self.manager.remove(job.id))
+
+        self.assertFalse(task_dir.exists())
+
+if __name__ == '__main__':
+    unittest.main()